@@ -12,7 +12,12 @@ CREATE TABLE `users` (
   `id` int(11) NOT NULL AUTO_INCREMENT,
   `first_name` varchar(50) NOT NULL,
   `last_name` varchar(50) NOT NULL,
-  PRIMARY KEY (`id`)
+  `last_name_key` varchar(50) GENERATED ALWAYS AS (LOWER(`last_name`)) STORED,
+  `last_name_soundex` varchar(4) GENERATED ALWAYS AS (LEFT(SOUNDEX(UPPER(`last_name`)), 4)) STORED,
+  `version` bigint NOT NULL DEFAULT 0,
+  PRIMARY KEY (`id`),
+  KEY `idx_users_last_name_key_first_name` (`last_name_key`, `first_name`),
+  KEY `idx_users_last_name_soundex_last_name_key` (`last_name_soundex`, `last_name_key`)
 ) ENGINE=InnoDB AUTO_INCREMENT=1 DEFAULT CHARSET=latin1;
 
 
@@ -25,3 +30,48 @@ VALUES
 ('John','Smith'),
 ('Jane','Smith'),
 ('Jan', 'Kowalski');
+
+
+-- Write generation of the `users` table - every write of the apps advances one of the slots (picked at random) in its
+-- transaction, and listings' ETags are derived from the sum of them (needed on every shard, with all of the slots)
+
+DROP TABLE IF EXISTS `users_write_generation`;
+
+CREATE TABLE `users_write_generation` (
+  `slot` int NOT NULL,
+  `generation` bigint NOT NULL,
+  PRIMARY KEY (`slot`)
+) ENGINE=InnoDB;
+
+INSERT INTO `users_write_generation` (slot, generation)
+VALUES
+(0, 0),
+(1, 0),
+(2, 0),
+(3, 0),
+(4, 0),
+(5, 0),
+(6, 0),
+(7, 0),
+(8, 0),
+(9, 0),
+(10, 0),
+(11, 0),
+(12, 0),
+(13, 0),
+(14, 0),
+(15, 0);
+
+
+-- Sequence of user IDs for sharded deployments (app.sharding.*) - used on the primary database (shard 0) only,
+-- further shards need just the `users` table (without the data) and `users_write_generation` with all of its 16 slot
+-- rows above (the CREATE TABLE and INSERT statements of both) - writes fail on a shard without the slots
+
+DROP TABLE IF EXISTS `user_id_sequence`;
+
+CREATE TABLE `user_id_sequence` (
+  `next_id` bigint NOT NULL
+) ENGINE=InnoDB;
+
+INSERT INTO `user_id_sequence` (next_id)
+SELECT COALESCE(MAX(`id`), 0) + 1 FROM `users`;
@@ -0,0 +1,95 @@
+package backbase.task.dto;
+
+import backbase.task.entity.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * mapping of users to UserDto, (snake_case) JSON serialization of users and pages of users, and deserialization and
+ * validation of new users - with an ObjectMapper built like Spring Boot's (without the application context)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class UserDtoBenchmark {
+
+    //users on a page
+    @Param("20")
+    public int pageSize;
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    private final Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
+    private List<User> users;
+
+    private UserDto userDto;
+
+    private Page<UserDto> page;
+
+    private byte[] newUserJson;
+
+    @Setup
+    public void createUsers() throws Exception {
+        users = IntStream.range(0, pageSize)
+                .mapToObj(i -> new User(1_000_000L + i, "First" + i, "Last" + i))
+                .collect(Collectors.toList());
+        userDto = new UserDto(1_000_000L, "Jan", "Kowalski");
+        page = new PageImpl<>(mapPage(), PageRequest.of(10, pageSize, Sort.by("id")), 100_000);
+        newUserJson = objectMapper.writeValueAsBytes(new CreateUserDto("Jan", "Kowalski"));
+    }
+
+    @Benchmark
+    public List<UserDto> mapPage() {
+        return users.stream()
+                .map(user -> new UserDto(user.getId(), user.getFirstName(), user.getLastName()))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public byte[] serializeUser() throws Exception {
+        return objectMapper.writeValueAsBytes(userDto);
+    }
+
+    @Benchmark
+    public byte[] serializePage() throws Exception {
+        return objectMapper.writeValueAsBytes(page);
+    }
+
+    //like a POST of a new user - the body is read and then validated (by @Valid)
+    @Benchmark
+    public void deserializeAndValidateNewUser(Blackhole blackhole) throws Exception {
+        final CreateUserDto newUser = objectMapper.readValue(newUserJson, CreateUserDto.class);
+        final Set<ConstraintViolation<CreateUserDto>> violations = validator.validate(newUser);
+        blackhole.consume(newUser);
+        blackhole.consume(violations);
+    }
+}
@@ -0,0 +1,147 @@
+package backbase.task.service;
+
+import backbase.task.dto.UserDto;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * searches of UsersSearchIndex holding the given number of users - with names made of random syllables, picked with
+ * a skewed distribution (a few names are very common, most are rare, like real ones); every call searches for another
+ * of QUERIES queries of its kind, taken from random users' names. Sampled, so the results include p50/p99/p99.9
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class UsersSearchIndexBenchmark {
+
+    private static final int FIRST_NAMES = 5_000;
+
+    private static final int LAST_NAMES = 200_000;
+
+    private static final int QUERIES = 1024;
+
+    private static final String[] SYLLABLES = {"an", "ba", "ber", "chal", "da", "el", "gen", "ka", "ko", "la", "le", "ma",
+            "mi", "na", "no", "ow", "pi", "rek", "ri", "sen", "ski", "son", "ta", "to", "wak", "wal", "wicz", "zy"};
+
+    @Param("2000000")
+    public int users;
+
+    @Param("20")
+    public int limit;
+
+    private final UsersSearchIndex index = new UsersSearchIndex(true);
+
+    private final Random random = new Random(42);
+
+    private String[] firstNames;
+
+    private String[] lastNames;
+
+    private final String[] prefixes = new String[QUERIES];
+
+    private final String[] shortPrefixes = new String[QUERIES];
+
+    private final String[] substrings = new String[QUERIES];
+
+    private final String[] fullNames = new String[QUERIES];
+
+    private int query;
+
+    @Setup
+    public void buildIndex() {
+        firstNames = names(FIRST_NAMES, 2);
+        lastNames = names(LAST_NAMES, 3);
+
+        final int pageSize = 10_000;
+        index.build(lastId -> {
+            final List<UserDto> page = new ArrayList<>(pageSize);
+            for (long id = lastId + 1; id <= Math.min(lastId + pageSize, users); id++) {
+                page.add(new UserDto(id, skewed(firstNames), skewed(lastNames)));
+            }
+            return new SliceImpl<>(page, PageRequest.of(0, pageSize), lastId + pageSize < users);
+        });
+
+        for (int i = 0; i < QUERIES; i++) {
+            final String lastName = skewed(lastNames);
+            prefixes[i] = lastName.substring(0, 4);
+            shortPrefixes[i] = lastName.substring(0, 1);
+            final int start = 1 + random.nextInt(lastName.length() - 4);
+            substrings[i] = lastName.substring(start, start + 3);
+            fullNames[i] = skewed(firstNames).substring(0, 3) + " " + lastName.substring(0, 5);
+        }
+    }
+
+    @Benchmark
+    public Optional<List<UserDto>> searchPrefix() {
+        return index.search(prefixes[next()], limit);
+    }
+
+    @Benchmark
+    public Optional<List<UserDto>> searchShortPrefix() {
+        return index.search(shortPrefixes[next()], limit);
+    }
+
+    @Benchmark
+    public Optional<List<UserDto>> searchSubstring() {
+        return index.search(substrings[next()], limit);
+    }
+
+    @Benchmark
+    public Optional<List<UserDto>> searchFirstAndLastName() {
+        return index.search(fullNames[next()], limit);
+    }
+
+    //renames a random user, as an update does
+    @Benchmark
+    public void put() {
+        index.put(1 + random.nextInt(users), skewed(firstNames), skewed(lastNames));
+    }
+
+    private int next() {
+        query = (query + 1) % QUERIES;
+        return query;
+    }
+
+    //the first names are the most common ones
+    private String skewed(String[] names) {
+        final double uniform = random.nextDouble();
+        return names[(int) (names.length * uniform * uniform * uniform)];
+    }
+
+    //distinct capitalized names of at least the given number of syllables
+    private String[] names(int count, int minSyllables) {
+        final Set<String> names = new LinkedHashSet<>();
+        while (names.size() < count) {
+            final StringBuilder name = new StringBuilder();
+            final int syllables = minSyllables + random.nextInt(3);
+            for (int i = 0; i < syllables; i++) {
+                name.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            name.setCharAt(0, Character.toUpperCase(name.charAt(0)));
+            names.add(name.toString());
+        }
+        return names.toArray(String[]::new);
+    }
+}
@@ -0,0 +1,144 @@
+package backbase.task.service;
+
+import backbase.task.MainApplication;
+import backbase.task.db.UsersRepository;
+import backbase.task.dto.UserDto;
+import backbase.task.entity.User;
+import backbase.task.entity.UsersWriteGeneration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * read paths of UsersService (with its transactions, caches and repositories) against an in-memory H2 database
+ * of the given number of users - without caching by default (caches of size 0, so every call queries the database),
+ * -p cached=true measures cache hits instead where the paths are cached
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class UsersServiceBenchmark {
+
+    private static final int PAGE_SIZE = 20;
+
+    private static final int LOOKUP_SIZE = 100;
+
+    private static final int LAST_NAMES = 500;
+
+    @Param("10000")
+    public int users;
+
+    @Param("false")
+    public boolean cached;
+
+    private ConfigurableApplicationContext context;
+
+    private UsersService usersService;
+
+    private List<Long> ids;
+
+    @Setup
+    public void startApplication() {
+        //as command line arguments - they override application.properties (of the MySQL database)
+        context = new SpringApplicationBuilder(MainApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--app.datasource.jdbc-url=jdbc:h2:mem:jmh;DB_CLOSE_DELAY=-1",
+                        "--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+                        "--spring.jpa.hibernate.ddl-auto=create",
+                        "--spring.cache.caffeine.spec=maximumSize=" + (cached ? 10_000 : 0),
+                        "--app.users.count-refresh-ms=3600000",
+                        "--app.users.search.enabled=false",
+                        "--app.slow-query-log.threshold=1m",
+                        "--logging.level.root=WARN");
+        usersService = context.getBean(UsersService.class);
+
+        //slots of the write generation, advanced by the inserts below (created by sql-script/UsersDatabase.sql on MySQL)
+        context.getBean(JdbcTemplate.class).update("insert into users_write_generation (slot, generation) "
+                + "select x, 0 from system_range(0, ?)", UsersWriteGeneration.SLOTS - 1);
+
+        final UsersRepository usersRepository = context.getBean(UsersRepository.class);
+        ids = new ArrayList<>(users);
+        for (int from = 0; from < users; from += 10_000) {
+            ids.addAll(usersRepository.insertAll(IntStream.range(from, Math.min(from + 10_000, users))
+                    .mapToObj(i -> new User("First" + i, "Last" + (i % LAST_NAMES)))
+                    .collect(Collectors.toList())));
+        }
+    }
+
+    @TearDown
+    public void stopApplication() {
+        context.close();
+    }
+
+    @Benchmark
+    public Optional<UserDto> findById() {
+        return usersService.findById(randomId());
+    }
+
+    //a page from the middle, with the count
+    @Benchmark
+    public Page<UserDto> findAllPage() {
+        final Pageable pageable = PageRequest.of(users / PAGE_SIZE / 2, PAGE_SIZE, Sort.by("id"));
+        return usersService.findAll(pageable);
+    }
+
+    @Benchmark
+    public Slice<UserDto> findAllAfter() {
+        return usersService.findAllAfter(randomId(), PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<UserDto> findAllById() {
+        return usersService.findAllById(ThreadLocalRandom.current()
+                .longs(LOOKUP_SIZE, 0, ids.size())
+                .mapToObj(i -> ids.get((int) i))
+                .collect(Collectors.toList()));
+    }
+
+    @Benchmark
+    public List<UserDto> findByLastName() {
+        return usersService.findByLastName(randomLastName());
+    }
+
+    @Benchmark
+    public List<String> findFirstNamesByLastName() {
+        return usersService.findFirstNamesByLastName(randomLastName());
+    }
+
+    private long randomId() {
+        return ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+    }
+
+    private static String randomLastName() {
+        return "Last" + ThreadLocalRandom.current().nextInt(LAST_NAMES);
+    }
+}
@@ -0,0 +1,46 @@
+package backbase.task.config;
+
+import org.springframework.boot.autoconfigure.cache.CacheProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/**
+ * in-process Caffeine caches (W-TinyLFU eviction) - names, sizes and TTLs are set by spring.cache.* properties;
+ * applied outside of transactions, so that cache hits don't begin any
+ */
+@Configuration
+@EnableCaching(order = Ordered.LOWEST_PRECEDENCE - 1)
+@EnableConfigurationProperties(CacheProperties.class)
+public class CacheConfig {
+
+    public static final String USERS_CACHE = "users";
+
+    //keyed by case-folded last name (see User.lastNameKey)
+    public static final String USERS_BY_LAST_NAME_CACHE = "usersByLastName";
+
+    public static final String FIRST_NAMES_BY_LAST_NAME_CACHE = "firstNamesByLastName";
+
+    //transaction aware - evictions made within a transaction are deferred until it commits, otherwise a concurrent
+    //read could cache the old, not yet overwritten row again right after the eviction (and for the same reason
+    //evictions are repeated once a lagging replica has caught up with the write)
+    @Bean
+    public CacheManager cacheManager(CacheProperties cacheProperties, ReplicationLag replicationLag) {
+        final CaffeineCacheManager caffeineCacheManager = new CaffeineCacheManager() {
+            @Override
+            protected Cache adaptCaffeineCache(String name, com.github.benmanes.caffeine.cache.Cache<Object, Object> cache) {
+                return replicationLag.decorate(super.adaptCaffeineCache(name, cache));
+            }
+        };
+        caffeineCacheManager.setCacheSpecification(cacheProperties.getCaffeine().getSpec());
+        caffeineCacheManager.setCacheNames(cacheProperties.getCacheNames());
+
+        return new TransactionAwareCacheManagerProxy(caffeineCacheManager);
+    }
+}
@@ -1,20 +1,114 @@
 package backbase.task.config;
 
+import backbase.task.db.UserShards;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.jdbc.DataSourceBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.function.UnaryOperator;
 
 @Configuration
 @EnableJpaRepositories(basePackages = {"${spring.data.jpa.repository.packages}"})
 public class DataSourceConfig {
 
+    //primary database - takes all writes
     @Bean
     @ConfigurationProperties(prefix = "app.datasource")
     public DataSource appDataSource() {
         return DataSourceBuilder.create().build();
     }
+
+    //optional read replica of the primary database - takes read-only transactions
+    @Bean
+    @ConditionalOnProperty(prefix = "app.datasource.replica", name = "jdbc-url")
+    @ConfigurationProperties(prefix = "app.datasource.replica")
+    public DataSource replicaDataSource() {
+        return DataSourceBuilder.create().build();
+    }
+
+    //optional further shards - users are spread over them and the primary database by their IDs (see UserShards);
+    //an alternative to the read replica, not to be combined with it
+    @Bean
+    @ConditionalOnProperty(prefix = "app.sharding.shards[0]", name = "jdbc-url")
+    @ConfigurationProperties(prefix = "app.sharding")
+    public ShardRoutingDataSource shardRoutingDataSource(@Qualifier("appDataSource") DataSource appDataSource,
+                                                         @Value("${app.virtual-threads.enabled:false}") boolean virtualThreads) {
+        return new ShardRoutingDataSource(appDataSource, poolGuard(virtualThreads));
+    }
+
+    //data source used by JPA and JDBC - routes between the primary and the replica (everything goes to the primary
+    //without a replica), or between the shards; all statements are timed for the slow query log
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("appDataSource") DataSource appDataSource,
+                                 @Qualifier("replicaDataSource") ObjectProvider<DataSource> replicaDataSource,
+                                 ObjectProvider<ShardRoutingDataSource> shardRoutingDataSource,
+                                 SlowQueryLog slowQueryLog,
+                                 @Value("${app.virtual-threads.enabled:false}") boolean virtualThreads) {
+        final ShardRoutingDataSource shards = shardRoutingDataSource.getIfAvailable();
+        if (shards != null && replicaDataSource.getIfAvailable() != null) {
+            throw new IllegalStateException("Read replica (app.datasource.replica) can't be combined with sharding (app.sharding.shards)");
+        }
+
+        final DataSource routingDataSource;
+        if (shards != null) {
+            routingDataSource = shards;
+        } else {
+            //guarded once, when the primary takes the replica's reads too
+            final DataSource primary = poolGuard(virtualThreads).apply(appDataSource);
+            final DataSource replica = replicaDataSource.getIfAvailable();
+            routingDataSource = new ReadWriteRoutingDataSource(primary, replica == null ? primary : poolGuard(virtualThreads).apply(replica));
+        }
+        return new StatementTimingDataSource(new LazyConnectionDataSourceProxy(routingDataSource), slowQueryLog);
+    }
+
+    //with virtual threads, requests are no longer limited by Tomcat's thread pool - so the connection pools are
+    //(by ConnectionLimitingDataSource) instead
+    private static UnaryOperator<DataSource> poolGuard(boolean virtualThreads) {
+        return virtualThreads ? ConnectionLimitingDataSource::of : UnaryOperator.identity();
+    }
+
+    @Bean
+    public SlowQueryLog slowQueryLog(@Value("${app.slow-query-log.threshold:200ms}") Duration threshold,
+                                     @Value("${app.slow-query-log.top-size:20}") int topSize,
+                                     @Value("${app.slow-query-log.window:10m}") Duration window) {
+        return new SlowQueryLog(threshold, topSize, window);
+    }
+
+    @Bean
+    public UserShards userShards(ObjectProvider<ShardRoutingDataSource> shardRoutingDataSource, JdbcTemplate jdbcTemplate,
+                                 PlatformTransactionManager transactionManager,
+                                 @Value("${app.sharding.id-block-size:100}") int idBlockSize) {
+        final int shards = shardRoutingDataSource.getIfAvailable() == null ? 1 : shardRoutingDataSource.getObject().shardCount();
+        return new UserShards(shards, idBlockSize, jdbcTemplate, transactionManager);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "app.datasource.replica", name = "jdbc-url")
+    public ReadYourWritesFilter readYourWritesFilter(@Value("${app.read-your-writes.window:5s}") Duration window) {
+        return new ReadYourWritesFilter(window);
+    }
+
+    @Bean
+    public ReplicationLag replicationLag(@Value("${app.read-your-writes.window:5s}") Duration window,
+                                         @Qualifier("replicaDataSource") ObjectProvider<DataSource> replicaDataSource,
+                                         ObjectProvider<TaskScheduler> taskScheduler) {
+        if (replicaDataSource.getIfAvailable() == null) {
+            return ReplicationLag.none();
+        }
+        return ReplicationLag.of(window, taskScheduler.getObject());
+    }
 }
@@ -0,0 +1,164 @@
+package backbase.task.config;
+
+import backbase.task.dto.CursorPageDto;
+import backbase.task.dto.SliceDto;
+import backbase.task.dto.UserDto;
+import backbase.task.dto.UsersLookupDto;
+import backbase.task.entity.User;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.CodeSignature;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.ResponseEntity;
+
+import javax.servlet.http.HttpServletResponse;
+import javax.validation.ConstraintViolationException;
+import java.util.Optional;
+
+/**
+ * emits FlightRecorderEvents around UsersController handlers and UsersService methods - outermost, so that cache hits
+ * and transactions are within them; when the events aren't enabled it just proceeds (JFR turns isEnabled into
+ * a constant false, so the unused event doesn't even get allocated); calls ending with an exception are recorded too,
+ * with its class (and requests with the status their exception is answered with)
+ */
+@Aspect
+@Order(Ordered.HIGHEST_PRECEDENCE)
+class FlightRecorderAspect {
+
+    @Around("execution(public * backbase.task.controller.UsersController.*(..))"
+            + " && !@annotation(org.springframework.web.bind.annotation.ExceptionHandler)")
+    public Object recordRequest(ProceedingJoinPoint joinPoint) throws Throwable {
+        final FlightRecorderEvents.RequestEvent event = new FlightRecorderEvents.RequestEvent();
+        if (!event.isEnabled()) {
+            return joinPoint.proceed();
+        }
+
+        event.begin();
+        Object result = null;
+        Throwable failure = null;
+        try {
+            result = joinPoint.proceed();
+            return result;
+        } catch (Throwable e) {
+            failure = e;
+            throw e;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                final Object body = result instanceof ResponseEntity ? ((ResponseEntity<?>) result).getBody() : result;
+                event.handler = joinPoint.getSignature().getName();
+                event.userId = userId(joinPoint, body);
+                event.lastNameKey = lastNameKey(joinPoint, body);
+                event.rows = rows(body);
+                event.status = failure != null ? failureStatus(failure)
+                        : result instanceof ResponseEntity ? ((ResponseEntity<?>) result).getStatusCodeValue() : 0;
+                event.exception = exception(failure);
+                event.commit();
+            }
+        }
+    }
+
+    @Around("execution(public * backbase.task.service.UsersService.*(..))")
+    public Object recordServiceCall(ProceedingJoinPoint joinPoint) throws Throwable {
+        final FlightRecorderEvents.ServiceEvent event = new FlightRecorderEvents.ServiceEvent();
+        if (!event.isEnabled()) {
+            return joinPoint.proceed();
+        }
+
+        event.begin();
+        Object result = null;
+        Throwable failure = null;
+        try {
+            result = joinPoint.proceed();
+            return result;
+        } catch (Throwable e) {
+            failure = e;
+            throw e;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                final Object value = result instanceof Optional ? ((Optional<?>) result).orElse(null) : result;
+                event.method = joinPoint.getSignature().getName();
+                event.userId = userId(joinPoint, value);
+                event.lastNameKey = lastNameKey(joinPoint, value);
+                event.rows = rows(result);
+                event.exception = exception(failure);
+                event.commit();
+            }
+        }
+    }
+
+    //status the exception handlers of UsersController (or Spring's default one) answer the exception with
+    private static int failureStatus(Throwable failure) {
+        if (failure instanceof OptimisticLockingFailureException) {
+            return HttpServletResponse.SC_PRECONDITION_FAILED;
+        }
+        if (failure instanceof ConstraintViolationException) {
+            return HttpServletResponse.SC_BAD_REQUEST;
+        }
+        return HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+    }
+
+    private static String exception(Throwable failure) {
+        return failure == null ? null : failure.getClass().getName();
+    }
+
+    //"id" argument, or the ID of the single user returned
+    private static long userId(ProceedingJoinPoint joinPoint, Object result) {
+        final Object id = argument(joinPoint, "id");
+        if (id instanceof Long) {
+            return (Long) id;
+        }
+        if (result instanceof UserDto && ((UserDto) result).getId() != null) {
+            return ((UserDto) result).getId();
+        }
+        if (result instanceof User && ((User) result).getId() != null) {
+            return ((User) result).getId();
+        }
+        return 0;
+    }
+
+    //"lastName" argument, or the last name of the single user returned - case-folded, like the last_name_key column
+    private static String lastNameKey(ProceedingJoinPoint joinPoint, Object result) {
+        final Object lastName = argument(joinPoint, "lastName");
+        if (lastName instanceof String) {
+            return User.lastNameKey((String) lastName);
+        }
+        if (result instanceof UserDto && ((UserDto) result).getLastName() != null) {
+            return User.lastNameKey(((UserDto) result).getLastName());
+        }
+        if (result instanceof User && ((User) result).getLastName() != null) {
+            return User.lastNameKey(((User) result).getLastName());
+        }
+        return null;
+    }
+
+    private static Object argument(ProceedingJoinPoint joinPoint, String name) {
+        final String[] names = ((CodeSignature) joinPoint.getSignature()).getParameterNames();
+        for (int i = 0; names != null && i < names.length; i++) {
+            if (name.equals(names[i])) {
+                return joinPoint.getArgs()[i];
+            }
+        }
+        return null;
+    }
+
+    private static long rows(Object result) {
+        if (result instanceof UsersLookupDto) {
+            return ((UsersLookupDto) result).getUsers().size();
+        }
+        if (result instanceof CursorPageDto) {
+            return ((CursorPageDto<?>) result).getContent().size();
+        }
+        if (result instanceof SliceDto) {
+            return ((SliceDto<?>) result).getContent().size();
+        }
+        if (result instanceof UserDto || result instanceof User) {
+            return 1;
+        }
+        return MetricsConfig.rows(result);
+    }
+}
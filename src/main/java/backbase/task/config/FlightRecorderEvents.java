@@ -0,0 +1,98 @@
+package backbase.task.config;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events of requests, service methods and JDBC statements - recorded (with the duration and
+ * the thread, so that they can be matched with allocation, lock and CPU samples) only while a recording enables them
+ * (e.g. -XX:StartFlightRecording or jcmd JFR.start); user ID is 0 and last name key null when the call isn't about one
+ */
+public final class FlightRecorderEvents {
+
+    public static final String REQUEST = "backbase.task.Request";
+
+    public static final String SERVICE = "backbase.task.Service";
+
+    public static final String STATEMENT = "backbase.task.Statement";
+
+    private FlightRecorderEvents() {
+    }
+
+    @Name(REQUEST)
+    @Label("Users Request")
+    @Description("Handling of a request by UsersController")
+    @Category({"Users", "Web"})
+    public static class RequestEvent extends Event {
+
+        @Label("Handler")
+        String handler;
+
+        @Label("User ID")
+        long userId;
+
+        @Label("Last Name Key")
+        String lastNameKey;
+
+        @Label("Rows")
+        @Description("Users (or names) in the response, -1 if it doesn't list any")
+        long rows;
+
+        @Label("Status")
+        int status;
+
+        @Label("Exception")
+        @Description("Class of the exception the handler ended with, null if it returned")
+        String exception;
+    }
+
+    @Name(SERVICE)
+    @Label("Users Service")
+    @Description("Call of a UsersService method (including cache lookups and transactions)")
+    @Category({"Users", "Service"})
+    public static class ServiceEvent extends Event {
+
+        @Label("Method")
+        String method;
+
+        @Label("User ID")
+        long userId;
+
+        @Label("Last Name Key")
+        String lastNameKey;
+
+        @Label("Rows")
+        @Description("Users (or names) returned, -1 if the method doesn't return any")
+        long rows;
+
+        @Label("Exception")
+        @Description("Class of the exception the method ended with, null if it returned")
+        String exception;
+    }
+
+    @Name(STATEMENT)
+    @Label("Users Statement")
+    @Description("JDBC statement, from its execution until its rows are fetched (or it's closed)")
+    @Category({"Users", "JDBC"})
+    public static class StatementEvent extends Event {
+
+        @Label("SQL")
+        String sql;
+
+        @Label("Shard")
+        int shard;
+
+        @Label("Rows")
+        @Description("Rows fetched by a query, or rows changed by an update")
+        long rows;
+
+        @Label("Database Time")
+        @Description("Time spent in the driver - executing the statement and fetching its rows")
+        @Timespan
+        long databaseTime;
+    }
+}
@@ -0,0 +1,101 @@
+package backbase.task.config;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * meters on top of the ones Spring Boot records by itself (http.server.requests per endpoint,
+ * spring.data.repository.invocations per repository method, hikaricp.* of pools and hibernate.* statistics) -
+ * percentiles of all the timers are set by management.metrics.distribution.* properties; also the aspect emitting
+ * Java Flight Recorder events of requests and service methods (see FlightRecorderEvents)
+ */
+@Configuration
+public class MetricsConfig {
+
+    public static final String SERVICE_TIMER = "users.service";
+
+    public static final String REPOSITORY_ROWS = "users.repository.rows";
+
+    //times methods of classes annotated with @Timed (UsersService)
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry meterRegistry) {
+        return new TimedAspect(meterRegistry);
+    }
+
+    @Bean
+    public FlightRecorderAspect flightRecorderAspect() {
+        return new FlightRecorderAspect();
+    }
+
+    //number of rows returned by every repository method (entities, DTOs or names) - not recorded for counts,
+    //modifying queries and streams
+    @Bean
+    public static BeanPostProcessor repositoryRowsMetrics(ObjectProvider<MeterRegistry> meterRegistry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof RepositoryFactoryBeanSupport) {
+                    ((RepositoryFactoryBeanSupport<?, ?, ?>) bean).addRepositoryFactoryCustomizer(repositoryFactory -> repositoryFactory
+                            .addRepositoryProxyPostProcessor((proxyFactory, repositoryInformation) -> proxyFactory
+                                    .addAdvice(rowsRecorder(meterRegistry, repositoryInformation.getRepositoryInterface()))));
+                }
+                return bean;
+            }
+        };
+    }
+
+    //pools of further shards aren't beans of their own, so Spring Boot doesn't bind them like the primary's
+    //(bound only if they haven't started yet - pools can't get metrics afterwards)
+    @Bean
+    public MeterBinder shardPoolMetrics(ObjectProvider<ShardRoutingDataSource> shardRoutingDataSource) {
+        return meterRegistry -> shardRoutingDataSource.ifAvailable(shards -> shards.getShards()
+                .stream()
+                .filter(pool -> pool.getHikariPoolMXBean() == null && pool.getMetricRegistry() == null)
+                .forEach(pool -> pool.setMetricRegistry(meterRegistry)));
+    }
+
+    //summaries are registered on the first call of each method - further calls only record their rows
+    private static MethodInterceptor rowsRecorder(ObjectProvider<MeterRegistry> meterRegistry, Class<?> repositoryInterface) {
+        final Map<Method, DistributionSummary> summaries = new ConcurrentHashMap<>();
+        return invocation -> {
+            final Object result = invocation.proceed();
+            final long rows = rows(result);
+            if (rows >= 0) {
+                summaries.computeIfAbsent(invocation.getMethod(), method -> DistributionSummary.builder(REPOSITORY_ROWS)
+                                .tag("repository", repositoryInterface.getSimpleName())
+                                .tag("method", method.getName())
+                                .register(meterRegistry.getObject()))
+                        .record(rows);
+            }
+            return result;
+        };
+    }
+
+    static long rows(Object result) {
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        }
+        if (result instanceof Slice) {
+            return ((Slice<?>) result).getNumberOfElements();
+        }
+        if (result instanceof Optional) {
+            return ((Optional<?>) result).isPresent() ? 1 : 0;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,34 @@
+package backbase.task.config;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * sends read-only transactions to the replica and everything else (writes, reads in read-write transactions and
+ * statements outside transactions) to the primary - as do all requests that must read their own writes (see ReadYourWrites)
+ */
+class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+    enum Target {
+        PRIMARY, REPLICA
+    }
+
+    ReadWriteRoutingDataSource(DataSource primary, DataSource replica) {
+        setTargetDataSources(Map.<Object, Object>of(Target.PRIMARY, primary, Target.REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    //called when the connection is actually needed - so it has to be wrapped in LazyConnectionDataSourceProxy,
+    //as transaction managers obtain it before marking the transaction as read-only
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly() && !ReadYourWrites.isRequired()) {
+            return Target.REPLICA;
+        }
+        return Target.PRIMARY;
+    }
+}
@@ -0,0 +1,25 @@
+package backbase.task.config;
+
+/**
+ * marks the current request as one that must read its own (or its client's recent) writes - so from the primary
+ * and not from caches possibly loaded from the lagging replica (see ReadYourWritesFilter)
+ */
+public final class ReadYourWrites {
+
+    private static final ThreadLocal<Boolean> REQUIRED = new ThreadLocal<>();
+
+    private ReadYourWrites() {
+    }
+
+    public static boolean isRequired() {
+        return Boolean.TRUE.equals(REQUIRED.get());
+    }
+
+    static void require(boolean required) {
+        REQUIRED.set(required);
+    }
+
+    static void reset() {
+        REQUIRED.remove();
+    }
+}
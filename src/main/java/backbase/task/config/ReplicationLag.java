@@ -0,0 +1,122 @@
+package backbase.task.config;
+
+import org.springframework.cache.Cache;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Callable;
+
+/**
+ * bound of the replica's lag behind the primary (app.read-your-writes.window) - reads from the replica made right after
+ * a write may still miss it, so whatever is derived from them (cached users) is invalidated once more when the lag
+ * has passed; does nothing when there's no replica
+ */
+public class ReplicationLag {
+
+    private final Duration window;
+
+    private final TaskScheduler taskScheduler;
+
+    private ReplicationLag(Duration window, TaskScheduler taskScheduler) {
+        this.window = window;
+        this.taskScheduler = taskScheduler;
+    }
+
+    static ReplicationLag none() {
+        return new ReplicationLag(Duration.ZERO, null);
+    }
+
+    static ReplicationLag of(Duration window, TaskScheduler taskScheduler) {
+        return new ReplicationLag(window, taskScheduler);
+    }
+
+    /**
+     * @return true if there is a replica (so reads may lag behind writes)
+     */
+    public boolean isActive() {
+        return taskScheduler != null;
+    }
+
+    /**
+     * @param invalidation invalidation just made after a write - repeated once the replica has caught up with the write
+     */
+    public void repeatAfterLag(Runnable invalidation) {
+        if (isActive()) {
+            taskScheduler.schedule(invalidation, Instant.now().plus(window));
+        }
+    }
+
+    //evictions from the cache are repeated after the lag, as the evicted entries may be loaded from the lagging replica again
+    Cache decorate(Cache cache) {
+        return isActive() ? new ReplicationLagAwareCache(cache) : cache;
+    }
+
+    private class ReplicationLagAwareCache implements Cache {
+
+        private final Cache target;
+
+        ReplicationLagAwareCache(Cache target) {
+            this.target = target;
+        }
+
+        @Override
+        public String getName() {
+            return target.getName();
+        }
+
+        @Override
+        public Object getNativeCache() {
+            return target.getNativeCache();
+        }
+
+        @Override
+        public ValueWrapper get(Object key) {
+            return target.get(key);
+        }
+
+        @Override
+        public <T> T get(Object key, Class<T> type) {
+            return target.get(key, type);
+        }
+
+        @Override
+        public <T> T get(Object key, Callable<T> valueLoader) {
+            return target.get(key, valueLoader);
+        }
+
+        @Override
+        public void put(Object key, Object value) {
+            target.put(key, value);
+        }
+
+        @Override
+        public ValueWrapper putIfAbsent(Object key, Object value) {
+            return target.putIfAbsent(key, value);
+        }
+
+        @Override
+        public void evict(Object key) {
+            target.evict(key);
+            repeatAfterLag(() -> target.evict(key));
+        }
+
+        @Override
+        public boolean evictIfPresent(Object key) {
+            repeatAfterLag(() -> target.evict(key));
+            return target.evictIfPresent(key);
+        }
+
+        @Override
+        public void clear() {
+            target.clear();
+            repeatAfterLag(target::clear);
+        }
+
+        @Override
+        public boolean invalidate() {
+            repeatAfterLag(target::invalidate);
+            return target.invalidate();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package backbase.task.config;
+
+import backbase.task.db.UserShards;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * sends statements to the shard selected for the current thread (see UserShards) - the primary database is shard 0,
+ * further shards are bound from app.sharding.shards[n].* (Hikari properties, like app.datasource.*) and closed with it
+ */
+class ShardRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+
+    private final DataSource primary;
+
+    //applied to the pool of every shard (see DataSourceConfig.poolGuard)
+    private final UnaryOperator<DataSource> poolGuard;
+
+    private List<HikariDataSource> shards = new ArrayList<>();
+
+    ShardRoutingDataSource(DataSource primary, UnaryOperator<DataSource> poolGuard) {
+        this.primary = primary;
+        this.poolGuard = poolGuard;
+    }
+
+    public List<HikariDataSource> getShards() {
+        return shards;
+    }
+
+    public void setShards(List<HikariDataSource> shards) {
+        this.shards = shards;
+    }
+
+    int shardCount() {
+        return 1 + shards.size();
+    }
+
+    //called once the shards are bound
+    @Override
+    public void afterPropertiesSet() {
+        final DataSource guardedPrimary = poolGuard.apply(primary);
+        final Map<Object, Object> targetDataSources = new HashMap<>();
+        targetDataSources.put(0, guardedPrimary);
+        for (int shard = 1; shard < shardCount(); shard++) {
+            targetDataSources.put(shard, poolGuard.apply(shards.get(shard - 1)));
+        }
+        setTargetDataSources(targetDataSources);
+        setDefaultTargetDataSource(guardedPrimary);
+        setLenientFallback(false);
+        super.afterPropertiesSet();
+    }
+
+    //called when the connection is actually needed - wrapped in LazyConnectionDataSourceProxy (like ReadWriteRoutingDataSource),
+    //so that transactions started before selecting the shard don't end up on shard 0
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return UserShards.currentShard();
+    }
+
+    @Override
+    public void close() {
+        shards.forEach(HikariDataSource::close);
+    }
+}
@@ -0,0 +1,228 @@
+package backbase.task.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * statements timed by StatementTimingDataSource - the ones slower than the threshold are logged with their bind parameters,
+ * and the most expensive ones (by total time, normalized so that statements differing only in literals or lengths
+ * of IN lists count as one) over the last one or two windows are served at /actuator/slowqueries
+ */
+@Endpoint(id = "slowqueries")
+public class SlowQueryLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(SlowQueryLog.class);
+
+    //bounds memory taken by statements of a window (and by normalized statements) - further ones aren't ranked
+    private static final int MAX_STATEMENTS = 1000;
+
+    private static final int MAX_LOGGED_VALUE_LENGTH = 100;
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMERIC_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern IN_LIST = Pattern.compile("(?i)\\bin\\s*\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final long thresholdNanos;
+
+    private final int topSize;
+
+    private final long windowNanos;
+
+    private final Map<String, String> normalizedStatements = new ConcurrentHashMap<>();
+
+    private volatile Window currentWindow = new Window(System.nanoTime());
+
+    private volatile Window previousWindow = new Window(System.nanoTime());
+
+    public SlowQueryLog(Duration threshold, int topSize, Duration window) {
+        this.thresholdNanos = threshold.toNanos();
+        this.topSize = topSize;
+        this.windowNanos = window.toNanos();
+    }
+
+    /**
+     * @param sql executed statement
+     * @param parameters its bind parameters, by their indexes
+     * @param rows rows fetched by a query, or rows changed by an update
+     * @param nanos time of the execution and of fetching the rows
+     */
+    void record(String sql, Map<Integer, Object> parameters, long rows, long nanos) {
+        if (nanos >= thresholdNanos) {
+            logger.warn("Slow statement ({} ms, {} rows): {} {}", Duration.ofNanos(nanos).toMillis(), rows, sql, format(parameters));
+        }
+
+        final Statistics statistics = window(System.nanoTime()).statistics(sql);
+        if (statistics != null) {
+            statistics.record(rows, nanos);
+        }
+    }
+
+    /**
+     * @return the most expensive statements (by total time) of the current and the previous window
+     */
+    @ReadOperation
+    public List<StatementSummary> statements() {
+        final Map<String, StatementSummary> summaries = new HashMap<>();
+        for (Window window : List.of(previousWindow, currentWindow)) {
+            window.statistics.forEach((statement, statistics) -> summaries.merge(statement, statistics.summary(statement), StatementSummary::plus));
+        }
+
+        return summaries.values()
+                .stream()
+                .sorted(Comparator.comparingDouble(StatementSummary::getTotalMillis).reversed())
+                .limit(topSize)
+                .collect(Collectors.toList());
+    }
+
+    //rolls the windows when the current one is over (statements recorded in the old one meanwhile count as the previous window's)
+    private Window window(long now) {
+        final Window window = currentWindow;
+        if (now - window.start < windowNanos) {
+            return window;
+        }
+        synchronized (this) {
+            if (currentWindow == window) {
+                previousWindow = window;
+                currentWindow = new Window(now);
+            }
+            return currentWindow;
+        }
+    }
+
+    //literals (normally bound as parameters anyway) and IN lists replaced by "?"
+    static String normalize(String sql) {
+        return WHITESPACE.matcher(IN_LIST.matcher(NUMERIC_LITERAL.matcher(STRING_LITERAL.matcher(sql.trim())
+                .replaceAll("?")).replaceAll("?")).replaceAll("in (?)")).replaceAll(" ");
+    }
+
+    //memoized, as the same statements repeat
+    private String normalizedStatement(String sql) {
+        final String statement = normalizedStatements.get(sql);
+        if (statement != null) {
+            return statement;
+        }
+        final String normalized = normalize(sql);
+        if (normalizedStatements.size() < MAX_STATEMENTS) {
+            normalizedStatements.put(sql, normalized);
+        }
+        return normalized;
+    }
+
+    private static String format(Map<Integer, Object> parameters) {
+        return parameters.entrySet()
+                .stream()
+                .map(parameter -> parameter.getKey() + "=" + abbreviate(String.valueOf(parameter.getValue())))
+                .collect(Collectors.joining(", ", "[", "]"));
+    }
+
+    private static String abbreviate(String value) {
+        return value.length() <= MAX_LOGGED_VALUE_LENGTH ? value : value.substring(0, MAX_LOGGED_VALUE_LENGTH) + "...";
+    }
+
+    private final class Window {
+
+        private final long start;
+
+        private final Map<String, Statistics> statistics = new ConcurrentHashMap<>();
+
+        private Window(long start) {
+            this.start = start;
+        }
+
+        private Statistics statistics(String sql) {
+            final String statement = normalizedStatement(sql);
+            final Statistics existing = statistics.get(statement);
+            if (existing != null || statistics.size() >= MAX_STATEMENTS) {
+                return existing;
+            }
+            return statistics.computeIfAbsent(statement, key -> new Statistics());
+        }
+    }
+
+    private static final class Statistics {
+
+        private final LongAdder executions = new LongAdder();
+
+        private final LongAdder rows = new LongAdder();
+
+        private final LongAdder totalNanos = new LongAdder();
+
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        private void record(long rows, long nanos) {
+            executions.increment();
+            this.rows.add(rows);
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        private StatementSummary summary(String statement) {
+            return new StatementSummary(statement, executions.sum(), rows.sum(), totalNanos.sum(), maxNanos.get());
+        }
+    }
+
+    //read by the actuator endpoint
+    public static final class StatementSummary {
+
+        private final String statement;
+
+        private final long executions;
+
+        private final long rows;
+
+        private final long totalNanos;
+
+        private final long maxNanos;
+
+        private StatementSummary(String statement, long executions, long rows, long totalNanos, long maxNanos) {
+            this.statement = statement;
+            this.executions = executions;
+            this.rows = rows;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        private StatementSummary plus(StatementSummary other) {
+            return new StatementSummary(statement, executions + other.executions, rows + other.rows,
+                    totalNanos + other.totalNanos, Math.max(maxNanos, other.maxNanos));
+        }
+
+        public String getStatement() {
+            return statement;
+        }
+
+        public long getExecutions() {
+            return executions;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public double getTotalMillis() {
+            return totalNanos / 1e6;
+        }
+
+        public double getMaxMillis() {
+            return maxNanos / 1e6;
+        }
+
+        public double getMeanMillis() {
+            return executions == 0 ? 0 : totalNanos / 1e6 / executions;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package backbase.task.config;
+
+import backbase.task.db.UserShards;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * times every statement executed through its connections (and the fetching of their rows) and counts the rows
+ * fetched (or changed) - reported to the SlowQueryLog once a query's result set is consumed or closed, or once an update
+ * is executed (and emitted as a FlightRecorderEvents.StatementEvent, when enabled); JDK proxies of the JDBC interfaces,
+ * so all other calls pass through unchanged
+ */
+class StatementTimingDataSource extends DelegatingDataSource {
+
+    private static final Set<String> EXECUTE_METHODS = Set.of("execute", "executeQuery", "executeUpdate", "executeLargeUpdate",
+            "executeBatch", "executeLargeBatch");
+
+    private final SlowQueryLog slowQueryLog;
+
+    StatementTimingDataSource(DataSource targetDataSource, SlowQueryLog slowQueryLog) {
+        super(targetDataSource);
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return timed(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return timed(super.getConnection(username, password));
+    }
+
+    private Connection timed(Connection connection) {
+        return proxy(Connection.class, (proxy, method, args) -> {
+            final Object result = invoke(connection, method, args);
+            if (result instanceof Statement) {
+                final String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+                return timed((Statement) result, sql);
+            }
+            return result;
+        });
+    }
+
+    private Statement timed(Statement statement, String sql) {
+        final Class<? extends Statement> type = statement instanceof CallableStatement ? CallableStatement.class
+                : statement instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+        return proxy(type, new TimedStatement(statement, sql));
+    }
+
+    //proxies equal only to themselves (not to their targets, which they'd delegate equals to)
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<? extends T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(StatementTimingDataSource.class.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if ("equals".equals(method.getName()) && method.getParameterCount() == 1) {
+                return proxy == args[0];
+            }
+            if ("hashCode".equals(method.getName()) && method.getParameterCount() == 0) {
+                return System.identityHashCode(proxy);
+            }
+            return handler.invoke(proxy, method, args);
+        });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    //collects bind parameters and times executions - the latest execution is reported, at the latest, when the statement
+    //is executed again or closed
+    private final class TimedStatement implements InvocationHandler {
+
+        private final Statement statement;
+
+        private final String sql;
+
+        private final Map<Integer, Object> parameters = new TreeMap<>();
+
+        private Execution execution;
+
+        private TimedStatement(Statement statement, String sql) {
+            this.statement = statement;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            final String name = method.getName();
+
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                parameters.put((Integer) args[0], "setNull".equals(name) ? null : args[1]);
+            } else if ("clearParameters".equals(name)) {
+                parameters.clear();
+            } else if (EXECUTE_METHODS.contains(name)) {
+                return execute(method, args);
+            } else if ("getResultSet".equals(name)) {
+                final ResultSet resultSet = (ResultSet) StatementTimingDataSource.invoke(statement, method, args);
+                return execution == null || resultSet == null ? resultSet : execution.fetching(resultSet);
+            } else if ("close".equals(name)) {
+                reportExecution();
+            }
+            return StatementTimingDataSource.invoke(statement, method, args);
+        }
+
+        private Object execute(Method method, Object[] args) throws Throwable {
+            reportExecution();
+            execution = new Execution(args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sql,
+                    new TreeMap<>(parameters));
+
+            final long start = System.nanoTime();
+            final Object result = StatementTimingDataSource.invoke(statement, method, args);
+            execution.nanos += System.nanoTime() - start;
+
+            if (result instanceof ResultSet) {
+                return execution.fetching((ResultSet) result);
+            }
+            if (result instanceof int[]) {
+                for (int rows : (int[]) result) {
+                    execution.rows += Math.max(rows, 0);
+                }
+            } else if (result instanceof long[]) {
+                for (long rows : (long[]) result) {
+                    execution.rows += Math.max(rows, 0);
+                }
+            } else if (result instanceof Number) {
+                execution.rows = Math.max(((Number) result).longValue(), 0);
+            }
+            if (!Boolean.TRUE.equals(result)) {
+                //an update (or a batch of them) - nothing more to wait for
+                reportExecution();
+            }
+            return result;
+        }
+
+        private void reportExecution() {
+            if (execution != null) {
+                execution.report();
+                execution = null;
+            }
+        }
+    }
+
+    //a single execution of a statement - reported once
+    private final class Execution {
+
+        private final String sql;
+
+        private final Map<Integer, Object> parameters;
+
+        private long nanos;
+
+        private long rows;
+
+        private boolean reported;
+
+        private final FlightRecorderEvents.StatementEvent event = new FlightRecorderEvents.StatementEvent();
+
+        private Execution(String sql, Map<Integer, Object> parameters) {
+            this.sql = sql;
+            this.parameters = parameters;
+            event.begin();
+        }
+
+        //times and counts rows of the given result set, reporting the execution once they're all fetched (or it's closed)
+        private ResultSet fetching(ResultSet resultSet) {
+            return proxy(ResultSet.class, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "next":
+                        final long start = System.nanoTime();
+                        final Object hasRow = invoke(resultSet, method, args);
+                        nanos += System.nanoTime() - start;
+                        if (Boolean.TRUE.equals(hasRow)) {
+                            rows++;
+                        } else {
+                            report();
+                        }
+                        return hasRow;
+                    case "close":
+                        report();
+                        return invoke(resultSet, method, args);
+                    default:
+                        return invoke(resultSet, method, args);
+                }
+            });
+        }
+
+        private void report() {
+            if (!reported && sql != null) {
+                reported = true;
+                slowQueryLog.record(sql, parameters, rows, nanos);
+                if (event.shouldCommit()) {
+                    event.sql = sql;
+                    event.shard = UserShards.currentShard();
+                    event.rows = rows;
+                    event.databaseTime = nanos;
+                    event.commit();
+                }
+            }
+        }
+    }
+}
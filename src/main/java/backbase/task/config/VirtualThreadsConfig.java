@@ -0,0 +1,42 @@
+package backbase.task.config;
+
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * opt-in mode (app.virtual-threads.enabled=true) for Java 21+ runtimes - requests are served on virtual threads,
+ * a thread per request instead of Tomcat's pool of server.tomcat.threads.max threads, so requests waiting for
+ * the database don't hold up the others (connection pools are then guarded by ConnectionLimitingDataSource,
+ * see DataSourceConfig); the app still targets Java 11, so virtual threads are created reflectively
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadsConfig {
+
+    //not a bean of its own, so that it doesn't replace Spring Boot's task executor - and it needs no shutdown,
+    //as it has no threads of its own (and virtual threads don't keep the JVM running)
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadsCustomizer() {
+        final ExecutorService executor = newVirtualThreadPerTaskExecutor();
+        return protocolHandler -> protocolHandler.setExecutor(executor);
+    }
+
+    static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | InvocationTargetException e) {
+            //missing before Java 19, a preview feature before Java 21
+            throw new IllegalStateException("Virtual threads (app.virtual-threads.enabled) need Java 21 or newer, running on "
+                    + Runtime.version(), e);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Can't create virtual threads", e);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package backbase.task.controller;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * opaque cursor used by keyset pagination - wraps the last seen user ID,
+ * so clients can't rely on (or tamper with) its format
+ */
+public final class KeysetCursor {
+
+    private static final String PREFIX = "id:";
+
+    private KeysetCursor() {
+    }
+
+    public static String encode(long lastId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((PREFIX + lastId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param cursor cursor returned by a previous page (empty cursor means the first page)
+     * @return last seen user ID
+     * @throws IllegalArgumentException when the cursor is malformed
+     */
+    public static long decode(String cursor) {
+        if (cursor.isEmpty()) {
+            return 0L;
+        }
+
+        final String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        if (!decoded.startsWith(PREFIX)) {
+            throw new IllegalArgumentException("Malformed cursor: " + cursor);
+        }
+
+        final long lastId = Long.parseLong(decoded.substring(PREFIX.length()));
+        if (lastId < 0) {
+            throw new IllegalArgumentException("Malformed cursor: " + cursor);
+        }
+        return lastId;
+    }
+}
@@ -0,0 +1,33 @@
+package backbase.task.controller;
+
+/**
+ * strong ETag of a single user - its quoted version, changed by every update of the user
+ */
+public final class UserETag {
+
+    private static final String ANY = "*";
+
+    private UserETag() {
+    }
+
+    public static String of(long version) {
+        return "\"" + version + "\"";
+    }
+
+    /**
+     * @param ifMatch value of the If-Match header (null when there's no such header)
+     * @return version the user must have to be changed, or null when any version will do (no header or "*")
+     * @throws IllegalArgumentException when the header can't match any user's ETag (e.g. a weak or malformed one)
+     */
+    public static Long expectedVersion(String ifMatch) {
+        if (ifMatch == null || ifMatch.trim().equals(ANY)) {
+            return null;
+        }
+
+        final String eTag = ifMatch.trim();
+        if (eTag.length() < 3 || eTag.charAt(0) != '"' || eTag.charAt(eTag.length() - 1) != '"') {
+            throw new IllegalArgumentException("Not a user's ETag: " + ifMatch);
+        }
+        return Long.parseLong(eTag.substring(1, eTag.length() - 1));
+    }
+}
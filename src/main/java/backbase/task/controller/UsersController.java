@@ -1,96 +1,289 @@
 package backbase.task.controller;
 
 import backbase.task.dto.CreateUserDto;
+import backbase.task.dto.CursorPageDto;
 import backbase.task.dto.PatchUserDto;
+import backbase.task.dto.SliceDto;
 import backbase.task.dto.UserDto;
+import backbase.task.dto.UsersLookupDto;
 import backbase.task.entity.User;
+import backbase.task.service.UsersExportFormat;
 import backbase.task.service.UsersService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
+import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import javax.servlet.http.HttpServletResponse;
+import javax.validation.ConstraintViolationException;
 import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api")
+@Validated
 public class UsersController {
 
+    static final int MAX_PAGE_SIZE = 2000;
+
+    static final int MAX_BATCH_SIZE = 10000;
+
+    static final int MAX_SEARCH_LIMIT = 100;
+
     private final UsersService usersService;
 
-    public UsersController(UsersService usersService) {
+    private final ObjectMapper objectMapper;
+
+    private final int maxLookupIds;
+
+    public UsersController(UsersService usersService, ObjectMapper objectMapper,
+                           @Value("${app.users.lookup-max-ids:1000}") int maxLookupIds) {
         this.usersService = usersService;
+        this.objectMapper = objectMapper;
+        this.maxLookupIds = maxLookupIds;
     }
 
     /**
      * @return list of all users (with Pageable interface - enabling pagination and sorting)
      * including users' IDs in returned JSON - needed for updating/patching and deleting users
+     * (304 without reading the listing when the ETag given in If-None-Match is still current - true for all listings below,
+     * but for the cached lookups by last name, whose ETags are derived from their responses)
      */
     @GetMapping("/users")
-    public ResponseEntity<Page<UserDto>> findAll(Pageable pageable) {
+    public ResponseEntity<Page<UserDto>> findAll(Pageable pageable, WebRequest request) {
+
+        final String eTag = listingETag();
+        if (request.checkNotModified(eTag)) {
+            return notModified(eTag);
+        }
+
+        return ResponseEntity.ok().eTag(eTag).body(usersService.findAll(pageable));
+    }
+
+    /**
+     * count-free variant of findAll (enabled by adding ?count=false to the URL) - skips the SELECT COUNT(*) query,
+     * reporting only whether there is a next page and a periodically refreshed, approximate number of all users
+     * @return slice of users (with Pageable interface - enabling pagination and sorting)
+     */
+    @GetMapping(value = "/users", params = {"count=false", "!after", "!ids"})
+    public ResponseEntity<SliceDto<UserDto>> findAllWithoutCount(Pageable pageable, WebRequest request) {
+
+        final String eTag = listingETag();
+        if (request.checkNotModified(eTag)) {
+            return notModified(eTag);
+        }
+
+        final Slice<UserDto> slice = usersService.findAllSlice(pageable);
+        final OptionalLong approximateCount = usersService.approximateCount();
+
+        return ResponseEntity.ok().eTag(eTag).body(new SliceDto<>(slice.getContent(), slice.getNumber(), slice.getSize(), slice.hasNext(),
+                approximateCount.isPresent() ? approximateCount.getAsLong() : null));
+    }
+
+    /**
+     * keyset (seek) pagination - each page costs the same regardless of how deep it is
+     * @param after cursor returned as "next_cursor" by the previous page (empty for the first page)
+     * @param size number of users per page
+     * @return page of users ordered by ID, with a cursor to the next page (null on the last page)
+     */
+    @GetMapping(value = "/users", params = {"after", "!ids"})
+    public ResponseEntity<CursorPageDto<UserDto>> findAllAfter(@RequestParam String after,
+                                                               @RequestParam(defaultValue = "20") int size,
+                                                               WebRequest request) {
+
+        final long lastId;
+        try {
+            lastId = KeysetCursor.decode(after);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        final String eTag = listingETag();
+        if (request.checkNotModified(eTag)) {
+            return notModified(eTag);
+        }
+
+        final Slice<UserDto> slice = usersService.findAllAfter(lastId, size);
+        final List<UserDto> users = slice.getContent();
+        final String nextCursor = slice.hasNext() ? KeysetCursor.encode(users.get(users.size() - 1).getId()) : null;
 
-        return ResponseEntity.ok(usersService
-                .findAll(pageable)
-                .map(user -> new UserDto(user.getId(), user.getFirstName(), user.getLastName())));
+        return ResponseEntity.ok().eTag(eTag).body(new CursorPageDto<>(users, size, nextCursor));
     }
 
     /**
      * @param id id of the requested user
-     * @return requested user
+     * @return requested user with its ETag (304 without the body when the ETag given in If-None-Match is still current)
      */
     @GetMapping("/users/{id}")
     public ResponseEntity<UserDto> findById(@PathVariable(required = true) Long id) {
         return usersService.findById(id)
-                .map(user -> ResponseEntity.ok(new UserDto(user.getId(), user.getFirstName(), user.getLastName())))
+                .map(UsersController::okWithETag)
                 .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
+    /**
+     * multi-get - looks up many users with a single query, instead of calling api/users/{id} for each of them
+     * @param ids IDs of users, comma separated (by adding ?ids={id},{id},... to the URL) - up to app.users.lookup-max-ids of them
+     * @return found users in the order of the requested IDs (each user once), with the IDs of missing users as "missing_ids"
+     */
+    @GetMapping(value = "/users", params = {"ids", "!after"})
+    public ResponseEntity<UsersLookupDto> findAllById(@RequestParam List<Long> ids, WebRequest request) {
+
+        if (!isValidLookup(ids)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        final String eTag = listingETag();
+        if (request.checkNotModified(eTag)) {
+            return notModified(eTag);
+        }
+
+        return ResponseEntity.ok().eTag(eTag).body(lookup(ids));
+    }
+
+    /**
+     * variant of the above for lists of IDs too long for a URL
+     * @param ids JSON array of IDs of users
+     * @return found users in the order of the requested IDs (each user once), with the IDs of missing users as "missing_ids"
+     */
+    @PostMapping("/users/lookup")
+    public ResponseEntity<UsersLookupDto> lookupUsers(@RequestBody List<Long> ids) {
+
+        if (!isValidLookup(ids)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        return ResponseEntity.ok(lookup(ids));
+    }
+
+    /**
+     * multi-gets (?ids=) can't be paged - combined with a cursor (which would be ambiguous otherwise), they're rejected
+     * with 400; ?count=false is ignored by multi-gets, just like by keyset pages
+     */
+    @GetMapping(value = "/users", params = {"ids", "after"})
+    public ResponseEntity<Void> findAllByIdAfter() {
+        return ResponseEntity.badRequest().build();
+    }
+
+    /**
+     * bulk export of all users (ordered by ID), streamed straight from the database to the response
+     * @param format "ndjson" (one JSON object per line - default) or "csv"
+     */
+    @GetMapping("/users/export")
+    public void exportUsers(@RequestParam(defaultValue = "ndjson") String format,
+                            HttpServletResponse response) throws IOException {
+
+        final Optional<UsersExportFormat> exportFormat = UsersExportFormat.fromName(format);
+
+        if (exportFormat.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+
+        export(exportFormat.get(), response);
+    }
+
+    private void export(UsersExportFormat format, HttpServletResponse response) throws IOException {
+
+        response.setContentType(format.getMediaType());
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                ContentDisposition.attachment().filename(format.getFileName()).build().toString());
+
+        usersService.export(format, response.getOutputStream());
+    }
+
     /**
      * mapping for 1st endpoint from the requirements
      * @param lastName user's last name (by adding ?lastName={lastName} to the URL)
+     * @param fuzzy whether to also return users with similar last names - sounding alike and a few letters away
+     * (see UsersService.findByLastNameFuzzy), closest ones first
      * @return list of users with requested last name
-     * with duplicate first and last name pairs (as they represent different users, based on IDs) - .distinct() may be uncommented to modify it
+     * with duplicate first and last name pairs (as they represent different users, based on IDs)
      */
     @GetMapping("/users-by-lastname")
-    public ResponseEntity<List<UserDto>> getUsersByLastName(@RequestParam(required = true) String lastName) {
+    public ResponseEntity<List<UserDto>> getUsersByLastName(@RequestParam(required = true) String lastName,
+                                                            @RequestParam(defaultValue = "false") boolean fuzzy,
+                                                            WebRequest request) throws JsonProcessingException {
 
         if (lastName.isEmpty()) {
             return ResponseEntity.ok(Collections.emptyList());
         }
 
-        final List<UserDto> users = usersService.findByLastName(lastName)
-                .stream()
-                .map(user -> new UserDto(user.getFirstName(), user.getLastName()))
-                //          .distinct()
-                .collect(Collectors.toList());
-
-        return ResponseEntity.ok(users);
+        return okWithContentETag(fuzzy ? usersService.findByLastNameFuzzy(lastName) : usersService.findByLastName(lastName), request);
     }
 
     /**
      * mapping for 2nd endpoint from the requirements
      * @param lastName user's last name (by adding ?lastName={lastName} to the URL)
      * @return list of users' first names only for the given last name
-     * with distinct first names for a given last name - .distinct() may be commented out to modify it
+     * with distinct first names for a given last name (in order of their first appearance), computed by the database
      */
     @GetMapping("/users-firstnames-by-lastname")
-    public ResponseEntity<List<String>> getFirstNamesByLastName(@RequestParam(required = true) String lastName) {
+    public ResponseEntity<List<String>> getFirstNamesByLastName(@RequestParam(required = true) String lastName, WebRequest request)
+            throws JsonProcessingException {
 
         if (lastName.isEmpty()) {
             return ResponseEntity.ok(Collections.emptyList());
         }
 
-        final List<String> users = usersService.findByLastName(lastName)
-                .stream()
-                .map(User::getFirstName)
-                .distinct()
-                .collect(Collectors.toList());
+        return okWithContentETag(usersService.findFirstNamesByLastName(lastName), request);
+    }
+
+    /**
+     * type-ahead search by first and last names, answered from memory (see UsersSearchIndex)
+     * @param q whitespace-separated terms, each matched case-insensitively as a prefix (or a substring, if it has 3+ letters)
+     * of the first or last name
+     * @param limit maximum number of users to return (up to MAX_SEARCH_LIMIT)
+     * @return best matching users first (exact names, then prefixes, then substrings) - 503 while the search index is
+     * still being built after a start
+     */
+    @GetMapping("/users/search")
+    public ResponseEntity<List<UserDto>> searchUsers(@RequestParam String q, @RequestParam(defaultValue = "20") int limit,
+                                                     WebRequest request) {
 
-        return ResponseEntity.ok(users);
+        if (limit < 1 || limit > MAX_SEARCH_LIMIT) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        if (q.isBlank()) {
+            return ResponseEntity.ok(Collections.emptyList());
+        }
+
+        //the index isn't the database, so its results have their own version - read before searching, like the listings' one
+        final String eTag = "\"" + usersService.searchVersion() + "\"";
+        if (request.checkNotModified(eTag)) {
+            return notModified(eTag);
+        }
+
+        return usersService.search(q, limit)
+                .map(users -> ResponseEntity.ok().eTag(eTag).body(users))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
     }
 
     /**
@@ -106,27 +299,63 @@ public class UsersController {
         return ResponseEntity.ok(new UserDto(user.getId(), user.getFirstName(), user.getLastName()));
     }
 
+    /**
+     * bulk variant of the above - all users are validated first and then inserted in JDBC batches, in a single transaction
+     * @param newUsers users' first names and last names (up to 10000 users per request)
+     * @return added users with their generated IDs (in the order of the request)
+     */
+    @PostMapping("/users/batch")
+    public ResponseEntity<List<UserDto>> addUsers(@RequestBody @Size(min = 1, max = MAX_BATCH_SIZE)
+                                                  List<@NotNull @Valid CreateUserDto> newUsers) {
+
+        final List<User> users = usersService.saveAll(newUsers
+                .stream()
+                .map(newUser -> new User(newUser.getFirstName(), newUser.getLastName()))
+                .collect(Collectors.toList()));
+
+        return ResponseEntity.ok(users
+                .stream()
+                .map(user -> new UserDto(user.getId(), user.getFirstName(), user.getLastName()))
+                .collect(Collectors.toList()));
+    }
+
     /**
      * @param updatedUser user's id, first name and last name (requires providing all user's fields)
-     * @return updated user
+     * @param ifMatch ETag of the user (from its GET) - when given, the user is updated only if it hasn't changed since
+     * @return updated user (with its new ETag, when If-Match was given), 412 if the user has changed in the meantime
      */
     @PutMapping("/users/{id}")
-    public ResponseEntity<UserDto> updateUser(@RequestBody @Valid CreateUserDto updatedUser, @PathVariable Long id) {
+    public ResponseEntity<UserDto> updateUser(@RequestBody @Valid CreateUserDto updatedUser, @PathVariable Long id,
+                                              @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        final Long expectedVersion;
+        try {
+            expectedVersion = UserETag.expectedVersion(ifMatch);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+        }
 
-        return usersService.update(id, updatedUser)
-                .map(user -> ResponseEntity.ok(new UserDto(user.getId(), user.getFirstName(), user.getLastName())))
+        return usersService.update(id, updatedUser, expectedVersion)
+                .map(UsersController::okWithETag)
                 .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
     /**
      * @param updatedUser user's id, first name and last name (doesn't require providing all the user's fields)
-     * @return patched user
+     * @param ifMatch ETag of the user (from its GET) - when given, the user is patched only if it hasn't changed since
+     * @return patched user with its new ETag, 412 if the user has changed in the meantime
      */
     @PatchMapping("/users/{id}")
-    public ResponseEntity<UserDto> patchUser(@RequestBody @Valid PatchUserDto updatedUser, @PathVariable Long id) {
+    public ResponseEntity<UserDto> patchUser(@RequestBody @Valid PatchUserDto updatedUser, @PathVariable Long id,
+                                             @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        final Long expectedVersion;
+        try {
+            expectedVersion = UserETag.expectedVersion(ifMatch);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+        }
 
-        return usersService.patch(id, updatedUser)
-                .map(user -> ResponseEntity.ok(new UserDto(user.getId(), user.getFirstName(), user.getLastName())))
+        return usersService.patch(id, updatedUser, expectedVersion)
+                .map(UsersController::okWithETag)
                 .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
@@ -136,14 +365,66 @@ public class UsersController {
     @DeleteMapping("/users/{id}")
     public ResponseEntity<?> deleteUser(@PathVariable Long id) {
 
-        final Optional<User> userToDelete = usersService.findById(id);
-
-        if (userToDelete.isEmpty()) {
+        if (!usersService.deleteById(id)) {
             return ResponseEntity.notFound().build();
         }
 
-        usersService.deleteById(id);
-
         return ResponseEntity.ok().build();
     }
+
+    //listings change only on writes, so they share the ETag derived from the write generation (a single small query per
+    //shard, shared by all app instances) - read before the listing itself
+    private String listingETag() {
+        return "\"" + usersService.writeGeneration() + "\"";
+    }
+
+    //lookups by last name come from the caches of this instance, which may be older than the write generation - until
+    //their eviction after the commit, or its repeat after the replica's lag (and writes of other instances don't evict
+    //them at all), so their ETag is a digest of the response itself, read (mostly from the cache) whatever ETag is given
+    private <T> ResponseEntity<T> okWithContentETag(T body, WebRequest request) throws JsonProcessingException {
+        final String eTag = "\"" + DigestUtils.md5DigestAsHex(objectMapper.writeValueAsBytes(body)) + "\"";
+        if (request.checkNotModified(eTag)) {
+            return notModified(eTag);
+        }
+        return ResponseEntity.ok().eTag(eTag).body(body);
+    }
+
+    //empty IDs (as in ?ids=1,,2) are converted to nulls
+    private boolean isValidLookup(List<Long> ids) {
+        return !ids.isEmpty() && ids.size() <= maxLookupIds && !ids.contains(null);
+    }
+
+    private UsersLookupDto lookup(List<Long> ids) {
+        final List<Long> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        final List<UserDto> users = usersService.findAllById(distinctIds);
+
+        final Set<Long> foundIds = users.stream().map(UserDto::getId).collect(Collectors.toSet());
+        final List<Long> missingIds = distinctIds.stream().filter(id -> !foundIds.contains(id)).collect(Collectors.toList());
+
+        return new UsersLookupDto(users, missingIds);
+    }
+
+    private static <T> ResponseEntity<T> notModified(String eTag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+    }
+
+    //single user's response - with its ETag, unless its version isn't known
+    private static ResponseEntity<UserDto> okWithETag(UserDto user) {
+        if (user.getVersion() == null) {
+            return ResponseEntity.ok(user);
+        }
+        return ResponseEntity.ok().eTag(UserETag.of(user.getVersion())).body(user);
+    }
+
+    //user changed since the version given in If-Match
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public void handleOptimisticLockingFailure(OptimisticLockingFailureException e, HttpServletResponse response) throws IOException {
+        response.sendError(HttpServletResponse.SC_PRECONDITION_FAILED, e.getMessage());
+    }
+
+    //constraint violations of method-validated parameters (e.g. users in a batch) are client errors, just like invalid request bodies
+    @ExceptionHandler(ConstraintViolationException.class)
+    public void handleConstraintViolation(ConstraintViolationException e, HttpServletResponse response) throws IOException {
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+    }
 }
@@ -0,0 +1,191 @@
+package backbase.task.db;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * users spread over several databases (shards) by a hash of their IDs - all of them with the same schema, with shard 0
+ * (the primary database) also holding the sequence that IDs are allocated from; with a single shard (no sharding
+ * configured) everything below runs directly on the calling thread
+ */
+public class UserShards implements DisposableBean {
+
+    //per shard - bounds the number of concurrent scatter-gather queries, not the shards' connection pools
+    private static final int QUERY_THREADS_PER_SHARD = 4;
+
+    private static final ThreadLocal<Integer> CURRENT_SHARD = new ThreadLocal<>();
+
+    private final int count;
+
+    private final int idBlockSize;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate newTransaction;
+
+    private final ExecutorService executor;
+
+    //block of allocated, not yet used IDs - from nextId (inclusive) to idBlockEnd (exclusive)
+    private long nextId;
+
+    private long idBlockEnd;
+
+    public UserShards(int count, int idBlockSize, JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        if (count < 1 || idBlockSize < 1) {
+            throw new IllegalArgumentException("Number of shards and ID block size must be positive");
+        }
+        this.count = count;
+        this.idBlockSize = idBlockSize;
+        this.jdbcTemplate = jdbcTemplate;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        final AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = count == 1 ? null : Executors.newFixedThreadPool(count * QUERY_THREADS_PER_SHARD, runnable -> {
+            final Thread thread = new Thread(runnable, "user-shards-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return shard that statements of the current thread go to (0 unless set by onShard)
+     */
+    public static int currentShard() {
+        final Integer shard = CURRENT_SHARD.get();
+        return shard == null ? 0 : shard;
+    }
+
+    public boolean isSharded() {
+        return count > 1;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    /**
+     * @param id user's ID
+     * @return shard holding the user - IDs are scrambled (Fibonacci hashing) first, so that consecutive ones,
+     * allocated together, are spread over all shards
+     */
+    public int shardOf(long id) {
+        return Math.floorMod(Long.hashCode(id * 0x9E3779B97F4A7C15L), count);
+    }
+
+    /**
+     * runs the given work with its statements going to the given shard - only those that open a connection,
+     * so it has to start the transaction (or be its first statement), as a transaction stays on its connection
+     */
+    public <T> T onShard(int shard, Supplier<T> work) {
+        if (!isSharded()) {
+            return work.get();
+        }
+
+        final Integer previousShard = CURRENT_SHARD.get();
+        CURRENT_SHARD.set(shard);
+        try {
+            return work.get();
+        } finally {
+            if (previousShard == null) {
+                CURRENT_SHARD.remove();
+            } else {
+                CURRENT_SHARD.set(previousShard);
+            }
+        }
+    }
+
+    //as above, on the shard holding the given user
+    public <T> T onShardOf(long id, Supplier<T> work) {
+        return onShard(shardOf(id), work);
+    }
+
+    /**
+     * runs the given work on all shards in parallel (each in a thread, and so in transactions, of its own)
+     * @param work work to run, given the number of the shard it runs on
+     * @return results of all shards, in the order of shards
+     */
+    public <T> List<T> onEveryShard(IntFunction<T> work) {
+        if (!isSharded()) {
+            return Collections.singletonList(work.apply(0));
+        }
+
+        final List<Future<T>> futures = new ArrayList<>(count);
+        for (int shard = 0; shard < count; shard++) {
+            final int currentShard = shard;
+            futures.add(executor.submit(() -> onShard(currentShard, () -> work.apply(currentShard))));
+        }
+
+        final List<T> results = new ArrayList<>(count);
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for shards", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * allocates globally unique user IDs (hi/lo) - blocks of them are reserved in the sequence on shard 0
+     * (a single UPDATE each, so also safe with many app instances) and handed out from memory
+     * @param number number of IDs to allocate
+     * @return allocated IDs, ascending (IDs of a block left unused at shutdown are skipped)
+     */
+    public synchronized List<Long> allocateIds(int number) {
+        final List<Long> ids = new ArrayList<>(number);
+        while (ids.size() < number) {
+            if (nextId == idBlockEnd) {
+                reserveIdBlock(Math.max(idBlockSize, number - ids.size()));
+            }
+            ids.add(nextId++);
+        }
+        return ids;
+    }
+
+    //in a transaction of its own - it mustn't join (and so end up on the shard of) a transaction of the caller
+    private void reserveIdBlock(int size) {
+        final Long blockEnd = onShard(0, () -> newTransaction.execute(status -> {
+            if (jdbcTemplate.update("update user_id_sequence set next_id = next_id + ?", size) != 1) {
+                throw new IllegalStateException("Table user_id_sequence on shard 0 must have exactly one row");
+            }
+            return jdbcTemplate.queryForObject("select next_id from user_id_sequence", Long.class);
+        }));
+
+        idBlockEnd = blockEnd;
+        nextId = blockEnd - size;
+    }
+
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -1,16 +1,82 @@
 package backbase.task.db;
 
+import backbase.task.dto.UserDto;
 import backbase.task.entity.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
-public interface UsersRepository extends JpaRepository<User, Long> {
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
+public interface UsersRepository extends JpaRepository<User, Long>, UsersRepositoryCustom {
 
     Page<User> findAll(Pageable pageable);
 
-    List<User> findByLastNameIgnoreCase(String lastName);
+    //read-only queries below build UserDto directly (constructor expressions) - no managed entities, so no
+    //persistence context snapshots, dirty checking or entity-to-DTO copying
+
+    @Query(value = "select new backbase.task.dto.UserDto(u.id, u.firstName, u.lastName) from User u",
+            countQuery = "select count(u) from User u")
+    Page<UserDto> findAllProjectedBy(Pageable pageable);
+
+    //count-free variant of findAllProjectedBy(Pageable) - fetches one extra row to tell whether there is a next page
+    @Query("select new backbase.task.dto.UserDto(u.id, u.firstName, u.lastName) from User u")
+    Slice<UserDto> findAllBy(Pageable pageable);
+
+    //keyset pagination - seeks on the primary key, so no OFFSET scan and no COUNT query is needed
+    @Query("select new backbase.task.dto.UserDto(u.id, u.firstName, u.lastName) from User u where u.id > :id")
+    Slice<UserDto> findByIdGreaterThan(@Param("id") Long id, Pageable pageable);
+
+    @Query("select new backbase.task.dto.UserDto(u.id, u.firstName, u.lastName, u.version) from User u where u.id = :id")
+    Optional<UserDto> findProjectedById(@Param("id") Long id);
+
+    //multi-get - a primary key lookup per ID in a single statement (IN lists are padded to powers of 2, see
+    //hibernate.query.in_clause_parameter_padding, so that lists of similar lengths share their statement and plan)
+    @Query("select new backbase.task.dto.UserDto(u.id, u.firstName, u.lastName) from User u where u.id in :ids")
+    List<UserDto> findProjectedByIdIn(@Param("ids") Collection<Long> ids);
+
+    //compares the indexed last_name_key column with the case-folded parameter (instead of upper(last_name) = upper(?),
+    //which can't use an index) - returns users without IDs
+    @Query("select new backbase.task.dto.UserDto(u.firstName, u.lastName) from User u where u.lastNameKey = lower(:lastName) order by u.id")
+    List<UserDto> findByLastNameIgnoreCase(@Param("lastName") String lastName);
+
+    //as above, with IDs - lets results of several shards be merged in ID order
+    @Query("select new backbase.task.dto.UserDto(u.id, u.firstName, u.lastName) from User u where u.lastNameKey = lower(:lastName) order by u.id")
+    List<UserDto> findWithIdsByLastNameIgnoreCase(@Param("lastName") String lastName);
+
+    //distinct case-folded last names sounding like the given one - covered by the (last_name_soundex, last_name_key)
+    //index, so only the index entries of a single phonetic key are read, whatever the number of users (the key is cut
+    //like the column's - substring of JPQL, as LEFT is a keyword of it)
+    @Query("select distinct u.lastNameKey from User u where u.lastNameSoundex = substring(soundex(upper(:lastName)), 1, 4)")
+    List<String> findLastNameKeysSoundingLike(@Param("lastName") String lastName);
+
+    @Query("select new backbase.task.dto.UserDto(u.id, u.firstName, u.lastName) from User u where u.lastNameKey in :lastNameKeys order by u.id")
+    List<UserDto> findWithIdsByLastNameKeyIn(@Param("lastNameKeys") Collection<String> lastNameKeys);
+
+    //distinct first names (in order of their first appearance) computed by the database - covered by the
+    //(last_name_key, first_name) index, so no user rows are read and no entities are created
+    @Query("select u.firstName from User u where u.lastNameKey = lower(:lastName) group by u.firstName order by min(u.id)")
+    List<String> findDistinctFirstNamesByLastNameIgnoreCase(@Param("lastName") String lastName);
+
+    //last name of the user, read by its primary key and locked until the end of the transaction - so that it's the one
+    //overwritten (or deleted) by the following statement of a write, whose caches are evicted by it
+    @Query(value = "select last_name from users where id = :id for update", nativeQuery = true)
+    Optional<String> findLastNameForUpdateById(@Param("id") Long id);
+
+    //server-side cursor over all users - DTO projection keeps the persistence context empty, however many rows are read
+    //(has to be consumed within a transaction and closed afterwards)
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    @Query("select new backbase.task.dto.UserDto(u.id, u.firstName, u.lastName) from User u order by u.id")
+    Stream<UserDto> streamAllBy();
 
 }
@@ -0,0 +1,54 @@
+package backbase.task.db;
+
+import backbase.task.entity.User;
+
+import java.util.List;
+
+//operations implemented outside of Spring Data JPA (see UsersRepositoryCustomImpl)
+public interface UsersRepositoryCustom {
+
+    /**
+     * inserts all given users with JDBC batches (IDENTITY IDs prevent Hibernate from batching inserts)
+     * @param users users to insert (without IDs)
+     * @return generated IDs, in the order of the given users
+     */
+    List<Long> insertAll(List<User> users);
+
+    /**
+     * as above, for users with IDs allocated up front (see UserShards)
+     * @param users users to insert (with IDs)
+     * @return number of inserted users
+     */
+    int insertAllWithIds(List<User> users);
+
+    /**
+     * updates given names of the user with a single UPDATE statement (without reading the user first),
+     * incrementing its version
+     * @param id id of the user to update
+     * @param firstName new first name (or null to leave it unchanged)
+     * @param lastName new last name (or null to leave it unchanged)
+     * @param expectedVersion version the user must have to be updated (or null to update any version)
+     * @return number of updated users - 0 if there is no user with the given id (and version)
+     * @throws IllegalArgumentException when neither name is given
+     */
+    int updateNames(long id, String firstName, String lastName, Long expectedVersion);
+
+    /**
+     * deletes the user with a single DELETE statement (deleteById would load the entity first)
+     * @param id id of the user to delete
+     * @return number of deleted users - 0 if there is no user with the given id
+     */
+    int deleteByIdReturningCount(long id);
+
+    /**
+     * advances the write generation of the current shard (see UsersWriteGeneration) - every write above does it in its
+     * transaction, so it's advanced exactly when the write is committed, and seen by all app instances together with it
+     * @throws IllegalStateException when the slots of users_write_generation are missing
+     */
+    void advanceWriteGeneration();
+
+    /**
+     * @return write generation of the current shard - grows with every committed write
+     */
+    long writeGeneration();
+}
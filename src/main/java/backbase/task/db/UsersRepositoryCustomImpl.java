@@ -0,0 +1,165 @@
+package backbase.task.db;
+
+import backbase.task.entity.User;
+import backbase.task.entity.UsersWriteGeneration;
+import org.springframework.dao.DataRetrievalFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaUpdate;
+import javax.persistence.criteria.ParameterExpression;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Root;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class UsersRepositoryCustomImpl implements UsersRepositoryCustom {
+
+    static final int JDBC_BATCH_SIZE = 500;
+
+    private static final String INSERT_USER = "insert into users (first_name, last_name) values (?, ?)";
+
+    private static final String INSERT_USER_WITH_ID = "insert into users (id, first_name, last_name) values (?, ?, ?)";
+
+    private static final String ADVANCE_WRITE_GENERATION = "update users_write_generation set generation = generation + 1 where slot = ?";
+
+    private static final String SELECT_WRITE_GENERATION = "select coalesce(sum(generation), 0) from users_write_generation";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public UsersRepositoryCustomImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    @Transactional
+    public List<Long> insertAll(List<User> users) {
+        final List<Long> ids = new ArrayList<>(users.size());
+
+        jdbcTemplate.execute(connection -> connection.prepareStatement(INSERT_USER, Statement.RETURN_GENERATED_KEYS),
+                (PreparedStatement statement) -> {
+                    for (int from = 0; from < users.size(); from += JDBC_BATCH_SIZE) {
+                        for (User user : users.subList(from, Math.min(from + JDBC_BATCH_SIZE, users.size()))) {
+                            statement.setString(1, user.getFirstName());
+                            statement.setString(2, user.getLastName());
+                            statement.addBatch();
+                        }
+                        statement.executeBatch();
+
+                        try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
+                            while (generatedKeys.next()) {
+                                ids.add(generatedKeys.getLong(1));
+                            }
+                        }
+                    }
+                    return null;
+                });
+
+        if (ids.size() != users.size()) {
+            throw new DataRetrievalFailureException("Expected " + users.size() + " generated IDs, got " + ids.size());
+        }
+        advanceWriteGeneration();
+        return ids;
+    }
+
+    //transactional on its own - sharded inserts run in a thread per shard, outside of the caller's transaction
+    @Override
+    @Transactional
+    public int insertAllWithIds(List<User> users) {
+        jdbcTemplate.batchUpdate(INSERT_USER_WITH_ID, users, JDBC_BATCH_SIZE, (statement, user) -> {
+            statement.setLong(1, user.getId());
+            statement.setString(2, user.getFirstName());
+            statement.setString(3, user.getLastName());
+        });
+        if (!users.isEmpty()) {
+            advanceWriteGeneration();
+        }
+        return users.size();
+    }
+
+    //sets only the given columns - and the version, which (unlike in entity updates) isn't handled by Hibernate here;
+    //all values are bound as parameters, as numeric literals would be inlined into the query (making its text
+    //and so its plan differ for every user and version)
+    @Override
+    @Transactional
+    public int updateNames(long id, String firstName, String lastName, Long expectedVersion) {
+        if (firstName == null && lastName == null) {
+            throw new IllegalArgumentException("Nothing to update for user " + id);
+        }
+
+        final CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        final CriteriaUpdate<User> update = criteriaBuilder.createCriteriaUpdate(User.class);
+        final Root<User> user = update.from(User.class);
+        final ParameterExpression<String> firstNameParameter = criteriaBuilder.parameter(String.class);
+        final ParameterExpression<String> lastNameParameter = criteriaBuilder.parameter(String.class);
+        final ParameterExpression<Long> idParameter = criteriaBuilder.parameter(Long.class);
+        final ParameterExpression<Long> versionParameter = criteriaBuilder.parameter(Long.class);
+
+        if (firstName != null) {
+            update.set(user.<String>get("firstName"), firstNameParameter);
+        }
+        if (lastName != null) {
+            update.set(user.<String>get("lastName"), lastNameParameter);
+        }
+        final Path<Long> version = user.get("version");
+        update.set(version, criteriaBuilder.sum(version, 1L));
+
+        if (expectedVersion == null) {
+            update.where(criteriaBuilder.equal(user.get("id"), idParameter));
+        } else {
+            update.where(criteriaBuilder.equal(user.get("id"), idParameter), criteriaBuilder.equal(version, versionParameter));
+        }
+
+        final Query query = entityManager.createQuery(update).setParameter(idParameter, id);
+        if (firstName != null) {
+            query.setParameter(firstNameParameter, firstName);
+        }
+        if (lastName != null) {
+            query.setParameter(lastNameParameter, lastName);
+        }
+        if (expectedVersion != null) {
+            query.setParameter(versionParameter, expectedVersion);
+        }
+        final int updated = query.executeUpdate();
+        if (updated > 0) {
+            advanceWriteGeneration();
+        }
+        return updated;
+    }
+
+    @Override
+    @Transactional
+    public int deleteByIdReturningCount(long id) {
+        final int deleted = entityManager.createQuery("delete from User u where u.id = :id").setParameter("id", id).executeUpdate();
+        if (deleted > 0) {
+            advanceWriteGeneration();
+        }
+        return deleted;
+    }
+
+    @Override
+    @Transactional
+    public void advanceWriteGeneration() {
+        final int slot = ThreadLocalRandom.current().nextInt(UsersWriteGeneration.SLOTS);
+        if (jdbcTemplate.update(ADVANCE_WRITE_GENERATION, slot) != 1) {
+            throw new IllegalStateException("Table users_write_generation must have a row for every slot (0 to "
+                    + (UsersWriteGeneration.SLOTS - 1) + "), slot " + slot + " is missing");
+        }
+    }
+
+    @Override
+    public long writeGeneration() {
+        return jdbcTemplate.queryForObject(SELECT_WRITE_GENERATION, Long.class);
+    }
+}
@@ -0,0 +1,73 @@
+//DTO class for retrieving keyset (cursor based) pages of users
+package backbase.task.dto;
+
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+
+import java.util.List;
+import java.util.Objects;
+
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+public class CursorPageDto<T> {
+
+    private List<T> content;
+
+    private int size;
+
+    private String nextCursor;
+
+    public CursorPageDto() {
+    }
+
+    public CursorPageDto(List<T> content, int size, String nextCursor) {
+        this.content = content;
+        this.size = size;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    public void setContent(List<T> content) {
+        this.content = content;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    @Override
+    public String toString() {
+        return "CursorPageDto{" +
+                "content=" + content +
+                ", size=" + size +
+                ", nextCursor='" + nextCursor + '\'' +
+                '}';
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        CursorPageDto<?> that = (CursorPageDto<?>) o;
+        return size == that.size && Objects.equals(content, that.content) && Objects.equals(nextCursor, that.nextCursor);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(content, size, nextCursor);
+    }
+}
@@ -0,0 +1,101 @@
+//DTO class for retrieving pages of users without counting all of them (count-free Slice)
+package backbase.task.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+
+import java.util.List;
+import java.util.Objects;
+
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+public class SliceDto<T> {
+
+    private List<T> content;
+
+    private int number;
+
+    private int size;
+
+    private boolean hasNext;
+
+    //refreshed in the background - may lag behind the actual number of users
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long approximateTotalElements;
+
+    public SliceDto() {
+    }
+
+    public SliceDto(List<T> content, int number, int size, boolean hasNext, Long approximateTotalElements) {
+        this.content = content;
+        this.number = number;
+        this.size = size;
+        this.hasNext = hasNext;
+        this.approximateTotalElements = approximateTotalElements;
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    public void setContent(List<T> content) {
+        this.content = content;
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    public void setNumber(int number) {
+        this.number = number;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+    }
+
+    public boolean isHasNext() {
+        return hasNext;
+    }
+
+    public void setHasNext(boolean hasNext) {
+        this.hasNext = hasNext;
+    }
+
+    public Long getApproximateTotalElements() {
+        return approximateTotalElements;
+    }
+
+    public void setApproximateTotalElements(Long approximateTotalElements) {
+        this.approximateTotalElements = approximateTotalElements;
+    }
+
+    @Override
+    public String toString() {
+        return "SliceDto{" +
+                "content=" + content +
+                ", number=" + number +
+                ", size=" + size +
+                ", hasNext=" + hasNext +
+                ", approximateTotalElements=" + approximateTotalElements +
+                '}';
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        SliceDto<?> that = (SliceDto<?>) o;
+        return number == that.number && size == that.size && hasNext == that.hasNext
+                && Objects.equals(content, that.content) && Objects.equals(approximateTotalElements, that.approximateTotalElements);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(content, number, size, hasNext, approximateTotalElements);
+    }
+}
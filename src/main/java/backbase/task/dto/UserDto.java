@@ -1,6 +1,7 @@
 //DTO class for retrieving users
 package backbase.task.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.PropertyNamingStrategies;
 import com.fasterxml.jackson.databind.annotation.JsonNaming;
@@ -17,6 +18,10 @@ public class UserDto {
 
     private String lastName;
 
+    //sent in the ETag header, not in the body - and not a part of equals, as it's not always known
+    @JsonIgnore
+    private Long version;
+
     public UserDto() {
     }
 
@@ -31,6 +36,13 @@ public class UserDto {
         this.lastName = lastName;
     }
 
+    public UserDto(Long id, String firstName, String lastName, Long version) {
+        this.id = id;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.version = version;
+    }
+
     public Long getId() {
         return id;
     }
@@ -55,12 +67,21 @@ public class UserDto {
         this.lastName = lastName;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     @Override
     public String toString() {
         return "GetUserDto{" +
                 "id=" + id +
                 ", firstName='" + firstName + '\'' +
                 ", lastName='" + lastName + '\'' +
+                ", version=" + version +
                 '}';
     }
 
@@ -0,0 +1,61 @@
+//DTO class for retrieving many users by their IDs at once
+package backbase.task.dto;
+
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+
+import java.util.List;
+import java.util.Objects;
+
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+public class UsersLookupDto {
+
+    private List<UserDto> users;
+
+    private List<Long> missingIds;
+
+    public UsersLookupDto() {
+    }
+
+    public UsersLookupDto(List<UserDto> users, List<Long> missingIds) {
+        this.users = users;
+        this.missingIds = missingIds;
+    }
+
+    public List<UserDto> getUsers() {
+        return users;
+    }
+
+    public void setUsers(List<UserDto> users) {
+        this.users = users;
+    }
+
+    public List<Long> getMissingIds() {
+        return missingIds;
+    }
+
+    public void setMissingIds(List<Long> missingIds) {
+        this.missingIds = missingIds;
+    }
+
+    @Override
+    public String toString() {
+        return "UsersLookupDto{" +
+                "users=" + users +
+                ", missingIds=" + missingIds +
+                '}';
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        UsersLookupDto that = (UsersLookupDto) o;
+        return Objects.equals(users, that.users) && Objects.equals(missingIds, that.missingIds);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(users, missingIds);
+    }
+}
@@ -2,9 +2,12 @@
 package backbase.task.entity;
 
 import javax.persistence.*;
+import java.util.Locale;
 
 @Entity
-@Table(name = "users")
+@Table(name = "users", indexes = {
+        @Index(name = "idx_users_last_name_key_first_name", columnList = "last_name_key, first_name"),
+        @Index(name = "idx_users_last_name_soundex_last_name_key", columnList = "last_name_soundex, last_name_key")})
 public class User {
 
     @Id
@@ -18,6 +21,26 @@ public class User {
     @Column(name = "last_name", nullable = false)
     private String lastName;
 
+    //case-folded last name, computed by the database on every insert and update (so it can't get out of sync)
+    //and indexed for case-insensitive lookups - used in queries only, hence no getter
+    @Column(name = "last_name_key", insertable = false, updatable = false,
+            columnDefinition = "varchar(50) generated always as (lower(last_name))")
+    private String lastNameKey;
+
+    //phonetic key of the last name (names that sound alike - Smith and Smyth - share it), also computed by the database
+    //and indexed together with last_name_key for fuzzy lookups - of the upper-cased name, as H2 keeps the case of
+    //its first letter (MySQL doesn't), cut to the standard 4 characters, as MySQL doesn't cut it (H2 does); used in
+    //queries only, hence no getter
+    @Column(name = "last_name_soundex", insertable = false, updatable = false,
+            columnDefinition = "varchar(4) generated always as (left(soundex(upper(last_name)), 4))")
+    private String lastNameSoundex;
+
+    //incremented on every update (also by the bulk UPDATE statements) - exposed as the user's ETag
+    //so that concurrent updates can be rejected instead of silently overwriting each other
+    @Version
+    @Column(name = "version", nullable = false, columnDefinition = "bigint default 0")
+    private Long version;
+
     public User() {
     }
 
@@ -32,6 +55,14 @@ public class User {
         this.lastName = lastName;
     }
 
+    /**
+     * @param lastName last name
+     * @return case-folded last name - the same for all case variants of the given last name
+     */
+    public static String lastNameKey(String lastName) {
+        return lastName.toLowerCase(Locale.ROOT);
+    }
+
     public Long getId() {
         return id;
     }
@@ -56,6 +87,10 @@ public class User {
         this.lastName = last_name;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
     @Override
     public String toString() {
         return "User{" +
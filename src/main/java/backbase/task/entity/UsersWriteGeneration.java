@@ -0,0 +1,24 @@
+//ORM class mapping the counter of writes to the users table (one row per slot) - only for the schema, as the counter
+//is read and advanced by plain SQL (see UsersRepositoryCustomImpl)
+package backbase.task.entity;
+
+import javax.persistence.*;
+
+@Entity
+@Table(name = "users_write_generation")
+public class UsersWriteGeneration {
+
+    //every write advances one of the slots, picked at random - so that concurrent writes (of all app instances) rarely
+    //wait for each other's row lock; the write generation is the sum of all of them
+    public static final int SLOTS = 16;
+
+    @Id
+    @Column(name = "slot", nullable = false)
+    private Integer slot;
+
+    @Column(name = "generation", nullable = false)
+    private Long generation;
+
+    protected UsersWriteGeneration() {
+    }
+}
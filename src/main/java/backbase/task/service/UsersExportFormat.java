@@ -0,0 +1,134 @@
+package backbase.task.service;
+
+import backbase.task.dto.UserDto;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * formats supported by the bulk export - each one writes a single user per line, so the export can be streamed
+ */
+public enum UsersExportFormat {
+
+    NDJSON("application/x-ndjson", "users.ndjson") {
+        @Override
+        RowWriter rowWriter(Writer writer, ObjectMapper objectMapper) throws IOException {
+            final JsonGenerator generator = objectMapper.getFactory().createGenerator(writer);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            return new RowWriter() {
+                @Override
+                public void write(UserDto user) throws IOException {
+                    objectMapper.writeValue(generator, user);
+                    generator.writeRaw('\n');
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    generator.flush();
+                }
+            };
+        }
+
+        @Override
+        public String line(UserDto user, ObjectMapper objectMapper) throws JsonProcessingException {
+            return objectMapper.writeValueAsString(user) + '\n';
+        }
+    },
+
+    CSV("text/csv", "users.csv") {
+        @Override
+        RowWriter rowWriter(Writer writer, ObjectMapper objectMapper) throws IOException {
+            writer.write(header());
+            return new RowWriter() {
+                @Override
+                public void write(UserDto user) throws IOException {
+                    writer.write(String.valueOf(user.getId()));
+                    writer.write(',');
+                    writer.write(escape(user.getFirstName()));
+                    writer.write(',');
+                    writer.write(escape(user.getLastName()));
+                    writer.write('\n');
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    writer.flush();
+                }
+            };
+        }
+
+        @Override
+        public String header() {
+            return "id,first_name,last_name\n";
+        }
+
+        @Override
+        public String line(UserDto user, ObjectMapper objectMapper) {
+            return user.getId() + "," + escape(user.getFirstName()) + "," + escape(user.getLastName()) + '\n';
+        }
+    };
+
+    private final String mediaType;
+
+    private final String fileName;
+
+    UsersExportFormat(String mediaType, String fileName) {
+        this.mediaType = mediaType;
+        this.fileName = fileName;
+    }
+
+    /**
+     * @param name name of the format (case-insensitive)
+     * @return matching format, or empty one for unsupported names
+     */
+    public static Optional<UsersExportFormat> fromName(String name) {
+        return Arrays.stream(values())
+                .filter(format -> format.name().equalsIgnoreCase(name))
+                .findFirst();
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    abstract RowWriter rowWriter(Writer writer, ObjectMapper objectMapper) throws IOException;
+
+    //header and lines below are for exports that don't write to a Writer (e.g. the reactive one, see src/reactive)
+
+    /**
+     * @return first line of the export (with the line break), empty if the format has none
+     */
+    public String header() {
+        return "";
+    }
+
+    /**
+     * @return user as a line of the export (with the line break)
+     */
+    public abstract String line(UserDto user, ObjectMapper objectMapper) throws JsonProcessingException;
+
+    //quotes the value (RFC 4180) only when it contains a separator, a quote or a line break
+    private static String escape(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    interface RowWriter {
+
+        void write(UserDto user) throws IOException;
+
+        void flush() throws IOException;
+    }
+}
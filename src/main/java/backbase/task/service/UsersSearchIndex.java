@@ -0,0 +1,626 @@
+package backbase.task.service;
+
+import backbase.task.dto.UserDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongFunction;
+import java.util.regex.Pattern;
+
+/**
+ * in-memory index of users' first and last names for type-ahead search - every distinct name is kept once, with the
+ * (sorted) IDs of its users; case-folded names are kept sorted (for prefixes) and in trigram postings (for substrings),
+ * so a search reads only the names matching it, never all users. Built in the background from all users and kept up
+ * to date by UsersService after every committed write (writes made around the app, e.g. by SQL scripts, aren't noticed
+ * until a restart); names no user has anymore stay in the index (unmatched) until a restart
+ */
+@Component
+public class UsersSearchIndex implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(UsersSearchIndex.class);
+
+    private static final Duration BUILD_RETRY_DELAY = Duration.ofSeconds(30);
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    //shorter terms match names by prefix only - a substring of one or two letters is a part of most names anyway
+    private static final int TRIGRAM = 3;
+
+    //bound of the names and users a search reads - reached only when most of them are ruled out (e.g. by the other
+    //terms of "jo smith" with many Smiths, or names sharing a common trigram with a substring but not containing it),
+    //then the search returns the matches found so far
+    static final int MAX_SCANNED = 2_000;
+
+    private static final long[] NO_USERS = new long[0];
+
+    private static final Name[] NO_NAMES = new Name[0];
+
+    //alphabetical, case-insensitively first
+    private static final Comparator<Name> NAME_ORDER = Comparator.comparing((Name name) -> name.key).thenComparing(name -> name.value);
+
+    private final boolean enabled;
+
+    //distinguishes versions of indexes of different app instances (and restarts), as each of them has its own one
+    private final String instance = Long.toString(ThreadLocalRandom.current().nextLong() >>> 1, Character.MAX_RADIX);
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    //all of the below are guarded by the lock
+
+    private final Map<String, Name> namesByValue = new HashMap<>();
+
+    private final List<Name> namesById = new ArrayList<>();
+
+    //case-folded name -> its variants (e.g. "McDonald" and "Mcdonald")
+    private final NavigableMap<String, List<Name>> namesByKey = new TreeMap<>();
+
+    //trigram of case-folded names -> names containing it, alphabetically (sorted once the index is built, so that
+    //a search can stop at the first names containing it - until then, names are just appended)
+    private final Map<Long, NameList> namesByTrigram = new HashMap<>();
+
+    private final UserNames userNames = new UserNames();
+
+    //users deleted while the index is being built - so that the build doesn't add them back from an older page
+    private Set<Long> deletedWhileBuilding = new HashSet<>();
+
+    //advanced by every change of the index
+    private long version;
+
+    private volatile boolean built;
+
+    private volatile Thread builder;
+
+    public UsersSearchIndex(@Value("${app.users.search.enabled:true}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * builds the index in a background thread, retrying until it succeeds (e.g. once the database is reachable) -
+     * writes made meanwhile (through put and remove) are applied as well
+     * @param usersAfter page of users (ordered by ID) after the given ID
+     */
+    public void buildInBackground(LongFunction<Slice<UserDto>> usersAfter) {
+        if (!enabled || builder != null) {
+            return;
+        }
+        final Thread thread = new Thread(() -> build(usersAfter), "users-search-index");
+        thread.setDaemon(true);
+        builder = thread;
+        thread.start();
+    }
+
+    @Override
+    public void destroy() {
+        final Thread thread = builder;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * adds the user, or changes its names
+     */
+    public void put(long id, String firstName, String lastName) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            removeNow(id);
+            addNow(id, firstName, lastName);
+            version++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long id) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            removeNow(id);
+            if (deletedWhileBuilding != null) {
+                deletedWhileBuilding.add(id);
+            }
+            version++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * users whose first or last names match every term of the query (case-insensitively) - ranked by how its most
+     * selective term (starting the names of the fewest users) matches a name: names equal to it first, then names
+     * starting with it, then names containing it (terms of 3+ letters only), alphabetically within each group and
+     * by user ID within a name; other terms must match the first or last name of the user in the same way - by prefix,
+     * or by substring if they have 3+ letters (see MAX_SCANNED)
+     * @param query whitespace-separated terms
+     * @param limit maximum number of users to return
+     * @return matching users, or empty until the index is built
+     */
+    public Optional<List<UserDto>> search(String query, int limit) {
+        if (!built) {
+            return Optional.empty();
+        }
+
+        final String[] terms = WHITESPACE.split(key(query.trim()));
+        if (terms[0].isEmpty()) {
+            return Optional.of(List.of());
+        }
+        //of equally selective terms, the longest one
+        Arrays.sort(terms, (term, otherTerm) -> otherTerm.length() - term.length());
+
+        lock.readLock().lock();
+        try {
+            final int selectiveTerm = terms.length == 1 ? 0 : mostSelectiveTerm(terms);
+            final String otherTerm = terms[0];
+            terms[0] = terms[selectiveTerm];
+            terms[selectiveTerm] = otherTerm;
+            final Matches matches = new Matches(terms[0], Arrays.copyOfRange(terms, 1, terms.length), limit);
+
+            //equal names sort right before the ones they're a prefix of
+            for (List<Name> names : namesStartingWith(terms[0]).values()) {
+                for (Name name : names) {
+                    if (matches.addUsersOf(name)) {
+                        return Optional.of(matches.users);
+                    }
+                }
+            }
+            if (terms[0].length() >= TRIGRAM) {
+                addUsersOfNamesContaining(matches);
+            }
+            return Optional.of(matches.users);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return opaque version of the index - the same for as long as its search results can't change (it's updated
+     * after writes are committed, so it's more up to date than the database's write generation for searches)
+     */
+    public String version() {
+        lock.readLock().lock();
+        try {
+            return instance + "." + version;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of users in the index
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return userNames.size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //adds pages of users that aren't in the index yet (they may have been put, changed or deleted since the page was read)
+    void build(LongFunction<Slice<UserDto>> usersAfter) {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                final long start = System.nanoTime();
+                long lastId = 0;
+                Slice<UserDto> page;
+                do {
+                    page = usersAfter.apply(lastId);
+                    addAllAbsent(page.getContent());
+                    if (page.hasContent()) {
+                        lastId = page.getContent().get(page.getNumberOfElements() - 1).getId();
+                    }
+                } while (page.hasNext());
+                finishBuild();
+                logger.info("Search index of {} users built in {} ms", size(), Duration.ofNanos(System.nanoTime() - start).toMillis());
+                return;
+            } catch (RuntimeException e) {
+                logger.warn("Building the search index failed - retrying in {} s", BUILD_RETRY_DELAY.toSeconds(), e);
+                try {
+                    Thread.sleep(BUILD_RETRY_DELAY.toMillis());
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void addAllAbsent(List<UserDto> users) {
+        lock.writeLock().lock();
+        try {
+            for (UserDto user : users) {
+                if (!userNames.contains(user.getId()) && !deletedWhileBuilding.contains(user.getId())) {
+                    addNow(user.getId(), user.getFirstName(), user.getLastName());
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void finishBuild() {
+        lock.writeLock().lock();
+        try {
+            namesByTrigram.values().forEach(NameList::sort);
+            deletedWhileBuilding = null;
+            built = true;
+            version++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void addNow(long id, String firstName, String lastName) {
+        final Name first = name(firstName);
+        final Name last = name(lastName);
+        first.addUser(id, last);
+        if (last != first) {
+            last.addUser(id, first);
+        }
+        userNames.put(id, (long) first.id << 32 | last.id);
+    }
+
+    private void removeNow(long id) {
+        final long names = userNames.remove(id);
+        if (names != UserNames.MISSING) {
+            namesById.get((int) (names >>> 32)).removeUser(id);
+            namesById.get((int) names).removeUser(id);
+        }
+    }
+
+    //the interned name, added to the index if it's new
+    private Name name(String value) {
+        final Name existingName = namesByValue.get(value);
+        if (existingName != null) {
+            return existingName;
+        }
+
+        final Name name = new Name(namesById.size(), value, key(value));
+        namesByValue.put(value, name);
+        namesById.add(name);
+        final List<Name> variants = namesByKey.computeIfAbsent(name.key, key -> new ArrayList<>(1));
+        variants.add(name);
+        variants.sort(NAME_ORDER);
+        for (int i = 0; i + TRIGRAM <= name.key.length(); i++) {
+            final NameList names = namesByTrigram.computeIfAbsent(trigram(name.key, i), trigram -> new NameList());
+            if (built) {
+                names.insert(name);
+            } else {
+                names.append(name);
+            }
+        }
+        return name;
+    }
+
+    //index of the term starting the names of the fewest users - counted only up to the fewest users so far
+    //(and up to MAX_SCANNED), so that common terms are cheap to rule out
+    private int mostSelectiveTerm(String[] terms) {
+        int selectiveTerm = 0;
+        int fewestUsers = MAX_SCANNED;
+        for (int i = 0; i < terms.length; i++) {
+            final int users = usersOfNamesStartingWith(terms[i], fewestUsers);
+            if (users < fewestUsers) {
+                selectiveTerm = i;
+                fewestUsers = users;
+            }
+        }
+        return selectiveTerm;
+    }
+
+    private int usersOfNamesStartingWith(String term, int bound) {
+        int users = 0;
+        for (List<Name> names : namesStartingWith(term).values()) {
+            for (Name name : names) {
+                users += name.userCount;
+                if (users >= bound) {
+                    return users;
+                }
+            }
+        }
+        return users;
+    }
+
+    private NavigableMap<String, List<Name>> namesStartingWith(String term) {
+        return namesByKey.subMap(term, true, term + Character.MAX_VALUE, false);
+    }
+
+    //names containing the term, but not starting with it (those are found by prefix), alphabetically - the candidates
+    //are the names containing its rarest trigram
+    private void addUsersOfNamesContaining(Matches matches) {
+        final String term = matches.term;
+        NameList rarest = null;
+        for (int i = 0; i + TRIGRAM <= term.length(); i++) {
+            final NameList names = namesByTrigram.get(trigram(term, i));
+            if (names == null) {
+                return;
+            }
+            if (rarest == null || names.size < rarest.size) {
+                rarest = names;
+            }
+        }
+
+        for (int i = 0; i < rarest.size && matches.scanned++ < MAX_SCANNED; i++) {
+            final Name name = rarest.names[i];
+            if (!name.key.startsWith(term) && name.key.contains(term) && matches.addUsersOf(name)) {
+                return;
+            }
+        }
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    private static long trigram(String key, int start) {
+        return (long) key.charAt(start) << 32 | (long) key.charAt(start + 1) << 16 | key.charAt(start + 2);
+    }
+
+    //results of a search - distinct users matching all other terms, up to the limit
+    private final class Matches {
+
+        private final String term;
+
+        private final String[] otherTerms;
+
+        private final int limit;
+
+        private final List<UserDto> users = new ArrayList<>();
+
+        private int scanned;
+
+        private Matches(String term, String[] otherTerms, int limit) {
+            this.term = term;
+            this.otherTerms = otherTerms;
+            this.limit = limit;
+        }
+
+        //true once there are enough users (or enough have been read)
+        private boolean addUsersOf(Name name) {
+            for (int i = 0; i < name.userCount && users.size() < limit && scanned < MAX_SCANNED; i++, scanned++) {
+                addIfMatching(name.users[i], name, name.otherNames[i]);
+            }
+            return users.size() >= limit || scanned >= MAX_SCANNED;
+        }
+
+        //users whose other name ranks before the given one have been found by it already
+        private void addIfMatching(long id, Name foundName, Name otherName) {
+            if (otherName != foundName && ranksBefore(otherName, foundName)) {
+                return;
+            }
+            for (String otherTerm : otherTerms) {
+                if (!matches(foundName, otherTerm) && !matches(otherName, otherTerm)) {
+                    return;
+                }
+            }
+            final long names = userNames.get(id);
+            users.add(new UserDto(id, namesById.get((int) (names >>> 32)).value, namesById.get((int) names).value));
+        }
+
+        private boolean ranksBefore(Name name, Name otherName) {
+            final int rank = rank(name);
+            final int otherRank = rank(otherName);
+            return rank < otherRank || rank == otherRank && NAME_ORDER.compare(name, otherName) < 0;
+        }
+
+        //0 - found by prefix, 1 - by substring, 2 - not found
+        private int rank(Name name) {
+            if (name.key.startsWith(term)) {
+                return 0;
+            }
+            return matches(name, term) ? 1 : 2;
+        }
+    }
+
+    //the same rule for every term of a query, whether it's the one names are found by or not
+    private static boolean matches(Name name, String term) {
+        return name.key.startsWith(term) || term.length() >= TRIGRAM && name.key.contains(term);
+    }
+
+    //distinct name with the IDs of its users (sorted, so that they're returned in a stable order) and their other names
+    //(the last name of a user with this first name and vice versa) - so that searches don't have to look users up
+    private static final class Name {
+
+        private final int id;
+
+        private final String value;
+
+        private final String key;
+
+        private long[] users = NO_USERS;
+
+        private Name[] otherNames = NO_NAMES;
+
+        private int userCount;
+
+        private Name(int id, String value, String key) {
+            this.id = id;
+            this.value = value;
+            this.key = key;
+        }
+
+        //IDs mostly come in ascending order, so they're mostly appended
+        private void addUser(long userId, Name otherName) {
+            int index = Arrays.binarySearch(users, 0, userCount, userId);
+            if (index >= 0) {
+                return;
+            }
+            index = -index - 1;
+            if (userCount == users.length) {
+                users = Arrays.copyOf(users, Math.max(4, userCount + (userCount >> 1)));
+                otherNames = Arrays.copyOf(otherNames, users.length);
+            }
+            System.arraycopy(users, index, users, index + 1, userCount - index);
+            System.arraycopy(otherNames, index, otherNames, index + 1, userCount - index);
+            users[index] = userId;
+            otherNames[index] = otherName;
+            userCount++;
+        }
+
+        private void removeUser(long userId) {
+            final int index = Arrays.binarySearch(users, 0, userCount, userId);
+            if (index < 0) {
+                return;
+            }
+            System.arraycopy(users, index + 1, users, index, userCount - index - 1);
+            System.arraycopy(otherNames, index + 1, otherNames, index, userCount - index - 1);
+            userCount--;
+            otherNames[userCount] = null;
+            if (userCount == 0) {
+                users = NO_USERS;
+                otherNames = NO_NAMES;
+            }
+        }
+    }
+
+    private static final class NameList {
+
+        private Name[] names = new Name[4];
+
+        private int size;
+
+        //the same name comes in a row, when it has the same trigram more than once
+        private void append(Name name) {
+            if (size > 0 && names[size - 1] == name) {
+                return;
+            }
+            if (size == names.length) {
+                names = Arrays.copyOf(names, size + (size >> 1));
+            }
+            names[size++] = name;
+        }
+
+        private void insert(Name name) {
+            int index = Arrays.binarySearch(names, 0, size, name, NAME_ORDER);
+            if (index >= 0) {
+                return;
+            }
+            index = -index - 1;
+            if (size == names.length) {
+                names = Arrays.copyOf(names, size + (size >> 1));
+            }
+            System.arraycopy(names, index, names, index + 1, size - index);
+            names[index] = name;
+            size++;
+        }
+
+        private void sort() {
+            Arrays.sort(names, 0, size, NAME_ORDER);
+        }
+    }
+
+    //user ID -> IDs of its first and last name (packed into a long) - an open-addressing table of two arrays, taking
+    //about 30 bytes per user instead of the ~90 of a HashMap<Long, Long> entry; there is no user 0, so 0 marks free slots
+    private static final class UserNames {
+
+        private static final long MISSING = -1;
+
+        private long[] ids = new long[16];
+
+        private long[] names = new long[16];
+
+        private int size;
+
+        private long get(long id) {
+            for (int slot = slot(id); ; slot = next(slot)) {
+                if (ids[slot] == id) {
+                    return names[slot];
+                }
+                if (ids[slot] == 0) {
+                    return MISSING;
+                }
+            }
+        }
+
+        private boolean contains(long id) {
+            return get(id) != MISSING;
+        }
+
+        private void put(long id, long userNames) {
+            if ((size + 1) * 3L > ids.length * 2L) {
+                resize();
+            }
+            int slot = slot(id);
+            while (ids[slot] != 0 && ids[slot] != id) {
+                slot = next(slot);
+            }
+            if (ids[slot] == 0) {
+                size++;
+            }
+            ids[slot] = id;
+            names[slot] = userNames;
+        }
+
+        //the following entries of the same cluster are shifted back into the freed slot, where they belong
+        private long remove(long id) {
+            int slot = slot(id);
+            while (ids[slot] != id) {
+                if (ids[slot] == 0) {
+                    return MISSING;
+                }
+                slot = next(slot);
+            }
+            final long removedNames = names[slot];
+            size--;
+
+            int free = slot;
+            for (int next = next(free); ids[next] != 0; next = next(next)) {
+                final int home = slot(ids[next]);
+                //whether the entry's home slot is cyclically outside (free, next] - then it may move to the free slot
+                final boolean movable = free <= next ? home <= free || home > next : home <= free && home > next;
+                if (movable) {
+                    ids[free] = ids[next];
+                    names[free] = names[next];
+                    free = next;
+                }
+            }
+            ids[free] = 0;
+            names[free] = 0;
+            return removedNames;
+        }
+
+        private void resize() {
+            final long[] oldIds = ids;
+            final long[] oldNames = names;
+            ids = new long[oldIds.length * 2];
+            names = new long[oldIds.length * 2];
+            size = 0;
+            for (int i = 0; i < oldIds.length; i++) {
+                if (oldIds[i] != 0) {
+                    put(oldIds[i], oldNames[i]);
+                }
+            }
+        }
+
+        private int slot(long id) {
+            return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & (ids.length - 1);
+        }
+
+        private int next(int slot) {
+            return (slot + 1) & (ids.length - 1);
+        }
+    }
+}
@@ -1,62 +1,627 @@
 package backbase.task.service;
 
+import backbase.task.config.MetricsConfig;
+import backbase.task.db.UserShards;
 import backbase.task.db.UsersRepository;
 import backbase.task.dto.CreateUserDto;
 import backbase.task.dto.PatchUserDto;
+import backbase.task.dto.UserDto;
 import backbase.task.entity.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import static backbase.task.config.CacheConfig.FIRST_NAMES_BY_LAST_NAME_CACHE;
+import static backbase.task.config.CacheConfig.USERS_BY_LAST_NAME_CACHE;
+import static backbase.task.config.CacheConfig.USERS_CACHE;
+
+//every public method is timed (users.service, tagged by method) - cache hits are answered before reaching the timer
+//(they're counted by cache.gets instead)
 @Service
+@Timed(MetricsConfig.SERVICE_TIMER)
 public class UsersService {
 
+    private static final int EXPORT_FLUSH_EVERY_ROWS = 1000;
+
+    //longest IN list of a multi-get query - longer lists of IDs are looked up in several queries
+    static final int LOOKUP_CHUNK_SIZE = 1000;
+
+    //users read per query while building the search index
+    private static final int SEARCH_INDEX_PAGE_SIZE = 10_000;
+
+    private static final String NOT_READING_OWN_WRITES = "!T(backbase.task.config.ReadYourWrites).isRequired()";
+
     private final UsersRepository usersRepository;
 
-    public UsersService(UsersRepository usersRepository) {
+    private final ObjectMapper objectMapper;
+
+    private final CacheManager cacheManager;
+
+    private final UserShards userShards;
+
+    private final UsersSearchIndex searchIndex;
+
+    private volatile Long approximateCount;
+
+    public UsersService(UsersRepository usersRepository, ObjectMapper objectMapper, CacheManager cacheManager,
+                        UserShards userShards, UsersSearchIndex searchIndex) {
         this.usersRepository = usersRepository;
+        this.objectMapper = objectMapper;
+        this.cacheManager = cacheManager;
+        this.userShards = userShards;
+        this.searchIndex = searchIndex;
+    }
+
+    //read-only transactions below are served by the read replica, if there is one;
+    //with shards, single users are read from their shards and the rest is gathered from all shards in parallel
+
+    //with shards, every shard returns its first offset + size users, merged in memory - so deep pages get costly
+    //(unlike keyset pages of findAllAfter)
+    @Transactional(readOnly = true)
+    public Page<UserDto> findAll(Pageable pageable) {
+        if (!userShards.isSharded()) {
+            return usersRepository.findAllProjectedBy(pageable);
+        }
+
+        final List<Page<UserDto>> pages = userShards.onEveryShard(shard -> usersRepository.findAllProjectedBy(leadingRowsOf(pageable)));
+
+        return new PageImpl<>(merge(pages, comparatorOf(pageable.getSort()), pageable.getOffset(), pageable.getPageSize()),
+                pageable, pages.stream().mapToLong(Page::getTotalElements).sum());
+    }
+
+    @Transactional(readOnly = true)
+    public Slice<UserDto> findAllSlice(Pageable pageable) {
+        if (!userShards.isSharded()) {
+            return usersRepository.findAllBy(pageable);
+        }
+
+        final List<Slice<UserDto>> slices = userShards.onEveryShard(shard -> usersRepository.findAllBy(leadingRowsOf(pageable)));
+
+        return mergedSlice(slices, comparatorOf(pageable.getSort()), pageable);
+    }
+
+    /**
+     * @return number of users as of the last background refresh (empty until the first refresh completes)
+     */
+    public OptionalLong approximateCount() {
+        final Long count = approximateCount;
+        return count == null ? OptionalLong.empty() : OptionalLong.of(count);
+    }
+
+    @Scheduled(fixedDelayString = "${app.users.count-refresh-ms:60000}")
+    @Transactional(readOnly = true)
+    public void refreshApproximateCount() {
+        approximateCount = userShards.onEveryShard(shard -> usersRepository.count()).stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * @return opaque version of all users' data - the same for as long as no user is created, changed or deleted
+     * (it must be read before the data it describes, so that it's never newer than them); made of the write generations
+     * of all shards, advanced by every write committed by any app instance (writes made around the apps, e.g. by SQL
+     * scripts, aren't noticed) - so it's the same on every instance; the approximate count of count-free listings isn't
+     * a part of it (it's refreshed by every instance on its own, and it's approximate anyway)
+     */
+    //read from the replica, if there is one - like the listings it describes
+    @Transactional(readOnly = true)
+    public String writeGeneration() {
+        return String.valueOf(userShards.onEveryShard(shard -> usersRepository.writeGeneration()).stream().mapToLong(Long::longValue).sum());
+    }
+
+    //with shards, every shard seeks past the same ID, so a page costs at most size + 1 users per shard however deep it is
+    @Transactional(readOnly = true)
+    public Slice<UserDto> findAllAfter(long lastId, int size) {
+        final Pageable pageable = PageRequest.of(0, size, Sort.by("id"));
+        if (!userShards.isSharded()) {
+            return usersRepository.findByIdGreaterThan(lastId, pageable);
+        }
+
+        final List<Slice<UserDto>> slices = userShards.onEveryShard(shard -> usersRepository.findByIdGreaterThan(lastId, pageable));
+
+        return mergedSlice(slices, Comparator.comparing(UserDto::getId), pageable);
+    }
+
+    //built once the app is ready, in the background - searches find nothing (return empty) until it's built
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildSearchIndex() {
+        searchIndex.buildInBackground(lastId -> findAllAfter(lastId, SEARCH_INDEX_PAGE_SIZE));
+    }
+
+    /**
+     * type-ahead search of users by their first and last names, answered from the in-memory UsersSearchIndex
+     * @param query whitespace-separated terms, each matched case-insensitively as a prefix (or a substring, if it has
+     * 3+ letters) of the first or last name
+     * @param limit maximum number of users to return
+     * @return best matching users first, or empty while the index isn't built yet
+     */
+    public Optional<List<UserDto>> search(String query, int limit) {
+        return searchIndex.search(query, limit);
+    }
+
+    /**
+     * @return opaque version of search results - of the in-memory index they come from (rather than the write
+     * generation, as the index is updated only after writes are committed, and by every app instance on its own)
+     */
+    public String searchVersion() {
+        return searchIndex.version();
     }
 
-    public Page<User> findAll(Pageable pageable) {
-        return usersRepository.findAll(pageable);
+    //sync - concurrent misses load the user once, and an eviction waits for an in-flight load instead of being overtaken by it;
+    //requests reading their own writes skip the caches below, as they may hold users loaded from the lagging replica
+    @Cacheable(cacheNames = USERS_CACHE, sync = true, condition = NOT_READING_OWN_WRITES)
+    @Transactional(readOnly = true)
+    public Optional<UserDto> findById(long id) {
+        return userShards.onShardOf(id, () -> usersRepository.findProjectedById(id));
     }
 
-    public Optional<User> findById(long id) {
-        return usersRepository.findById(id);
+    /**
+     * multi-get - looks up all users with a query per shard (and per LOOKUP_CHUNK_SIZE IDs)
+     * @param ids IDs of users to find
+     * @return users with the given IDs, in the order of the IDs (without missing users)
+     */
+    @Transactional(readOnly = true)
+    public List<UserDto> findAllById(List<Long> ids) {
+        final Map<Integer, List<Long>> idsByShard = ids.stream().distinct().collect(Collectors.groupingBy(userShards::shardOf));
+
+        final Map<Long, UserDto> usersById = new HashMap<>();
+        userShards.onEveryShard(shard -> findAllByIdInChunks(idsByShard.getOrDefault(shard, List.of())))
+                .forEach(users -> users.forEach(user -> usersById.put(user.getId(), user)));
+
+        return ids.stream()
+                .map(usersById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
     }
 
+    //evicts a possibly cached "not found" entry for the new ID; the write generation is advanced by the repository's
+    //write methods (see UsersRepositoryCustom), but for JPA's save
+    @CacheEvict(cacheNames = USERS_CACHE, key = "#result.id")
+    @Transactional
     public User save(User user) {
-        return usersRepository.save(user);
+        final User savedUser = userShards.isSharded() ? insertOnShard(user) : saveAndAdvanceWriteGeneration(user);
+        evictLastNames(user.getLastName());
+        afterCommit(() -> searchIndex.put(savedUser.getId(), savedUser.getFirstName(), savedUser.getLastName()));
+        return savedUser;
     }
 
-    public Optional<User> update(long id, CreateUserDto updateUserDto) {
-        return findById(id).map(user -> {
-            user.setFirstName(updateUserDto.getFirstName());
-            user.setLastName(updateUserDto.getLastName());
-            return usersRepository.save(user);
-        });
+    /**
+     * saves all users in a single transaction (with shards - a transaction per shard), using JDBC batch inserts
+     * @param users users to save (without IDs)
+     * @return saved users with their generated IDs
+     */
+    @Transactional
+    public List<User> saveAll(List<User> users) {
+        final List<Long> ids = userShards.isSharded() ? insertOnShards(users) : usersRepository.insertAll(users);
+
+        final Cache usersCache = cacheManager.getCache(USERS_CACHE);
+        final List<User> savedUsers = new ArrayList<>(users.size());
+        for (int i = 0; i < users.size(); i++) {
+            savedUsers.add(new User(ids.get(i), users.get(i).getFirstName(), users.get(i).getLastName()));
+            usersCache.evict(ids.get(i));
+        }
+        evictLastNames(users.stream().map(User::getLastName).toArray(String[]::new));
+        afterCommit(() -> savedUsers.forEach(user -> searchIndex.put(user.getId(), user.getFirstName(), user.getLastName())));
+        return savedUsers;
     }
 
-    public Optional<User> patch(long id, PatchUserDto patchUserDto) {
-        return findById(id).map(user -> {
-            if (patchUserDto.getFirstName() != null) {
-                user.setFirstName(patchUserDto.getFirstName());
+    /**
+     * @param id id of the user to update
+     * @param updateUserDto new first and last name
+     * @param expectedVersion version the user must have to be updated (or null to update any version)
+     * @return updated user (with its new version, if the expected one was given), or empty if there is no such user
+     * @throws OptimisticLockingFailureException when the user has a different version than expected
+     */
+    //single UPDATE statement - the response is built from the request, as it sets every column; the old last name
+    //is read (and locked) first in the same transaction, so that only its cached lookups and the new one's are evicted
+    @CacheEvict(cacheNames = USERS_CACHE, key = "#id")
+    @Transactional
+    public Optional<UserDto> update(long id, CreateUserDto updateUserDto, Long expectedVersion) {
+        return userShards.onShardOf(id, () -> updateOnShard(id, updateUserDto, expectedVersion));
+    }
+
+    private Optional<UserDto> updateOnShard(long id, CreateUserDto updateUserDto, Long expectedVersion) {
+        final Optional<String> oldLastName = usersRepository.findLastNameForUpdateById(id);
+
+        if (usersRepository.updateNames(id, updateUserDto.getFirstName(), updateUserDto.getLastName(), expectedVersion) == 0) {
+            return notUpdated(id, expectedVersion);
+        }
+
+        evictLastNames(oldLastName.orElse(null), updateUserDto.getLastName());
+        afterCommit(() -> searchIndex.put(id, updateUserDto.getFirstName(), updateUserDto.getLastName()));
+        return Optional.of(new UserDto(id, updateUserDto.getFirstName(), updateUserDto.getLastName(), nextVersion(expectedVersion)));
+    }
+
+    /**
+     * @param id id of the user to patch
+     * @param patchUserDto first and/or last name to set
+     * @param expectedVersion version the user must have to be patched (or null to patch any version)
+     * @return patched user (with its new version, unless it sets every column and the expected one wasn't given),
+     * or empty if there is no such user
+     * @throws OptimisticLockingFailureException when the user has a different version than expected
+     */
+    //single UPDATE statement of the given columns - the rest of the user is read back in the same transaction
+    //(as there's no UPDATE ... RETURNING in MySQL), unless the patch sets every column; a changed last name is read
+    //(and locked) before the update, so that only the old and the new one's cached lookups are evicted
+    @CacheEvict(cacheNames = USERS_CACHE, key = "#id")
+    @Transactional
+    public Optional<UserDto> patch(long id, PatchUserDto patchUserDto, Long expectedVersion) {
+        return userShards.onShardOf(id, () -> patchOnShard(id, patchUserDto, expectedVersion));
+    }
+
+    private Optional<UserDto> patchOnShard(long id, PatchUserDto patchUserDto, Long expectedVersion) {
+        final String firstName = patchUserDto.getFirstName();
+        final String lastName = patchUserDto.getLastName();
+
+        if (firstName == null && lastName == null) {
+            final Optional<UserDto> user = usersRepository.findProjectedById(id);
+            if (expectedVersion != null && user.isPresent() && !expectedVersion.equals(user.get().getVersion())) {
+                throw versionConflict(id, expectedVersion);
             }
-            if (patchUserDto.getLastName() != null) {
-                user.setLastName(patchUserDto.getLastName());
+            return user;
+        }
+
+        final Optional<String> oldLastName = lastName == null ? Optional.empty() : usersRepository.findLastNameForUpdateById(id);
+
+        if (usersRepository.updateNames(id, firstName, lastName, expectedVersion) == 0) {
+            return notUpdated(id, expectedVersion);
+        }
+
+        if (firstName != null && lastName != null) {
+            evictLastNames(oldLastName.orElse(null), lastName);
+            afterCommit(() -> searchIndex.put(id, firstName, lastName));
+            return Optional.of(new UserDto(id, firstName, lastName, nextVersion(expectedVersion)));
+        }
+
+        final Optional<UserDto> patchedUser = usersRepository.findProjectedById(id);
+        patchedUser.ifPresent(user -> afterCommit(() -> searchIndex.put(id, user.getFirstName(), user.getLastName())));
+        if (lastName == null) {
+            //last name unchanged - the one read back is the old one as well
+            patchedUser.map(UserDto::getLastName).ifPresent(this::evictLastNames);
+        } else {
+            evictLastNames(oldLastName.orElse(null), lastName);
+        }
+        return patchedUser;
+    }
+
+    /**
+     * @param id id of the user to delete
+     * @return true if the user was deleted, false if there was no user with the given id
+     */
+    //the user's last name is read (and locked) first, so that only its cached lookups are evicted
+    @CacheEvict(cacheNames = USERS_CACHE, key = "#id")
+    @Transactional
+    public boolean deleteById(long id) {
+        return userShards.onShardOf(id, () -> deleteOnShard(id));
+    }
+
+    private boolean deleteOnShard(long id) {
+        final Optional<String> lastName = usersRepository.findLastNameForUpdateById(id);
+
+        if (usersRepository.deleteByIdReturningCount(id) == 0) {
+            return false;
+        }
+
+        lastName.ifPresent(this::evictLastNames);
+        afterCommit(() -> searchIndex.remove(id));
+        return true;
+    }
+
+    @Cacheable(cacheNames = USERS_BY_LAST_NAME_CACHE, key = "T(backbase.task.entity.User).lastNameKey(#lastName)", sync = true,
+            condition = NOT_READING_OWN_WRITES)
+    @Transactional(readOnly = true)
+    public List<UserDto> findByLastName(String lastName) {
+        if (!userShards.isSharded()) {
+            return usersRepository.findByLastNameIgnoreCase(lastName);
+        }
+
+        return gatherByLastName(lastName)
+                .stream()
+                .map(user -> new UserDto(user.getFirstName(), user.getLastName()))
+                .collect(Collectors.toList());
+    }
+
+    @Cacheable(cacheNames = FIRST_NAMES_BY_LAST_NAME_CACHE, key = "T(backbase.task.entity.User).lastNameKey(#lastName)", sync = true,
+            condition = NOT_READING_OWN_WRITES)
+    @Transactional(readOnly = true)
+    public List<String> findFirstNamesByLastName(String lastName) {
+        if (!userShards.isSharded()) {
+            return usersRepository.findDistinctFirstNamesByLastNameIgnoreCase(lastName);
+        }
+
+        return gatherByLastName(lastName)
+                .stream()
+                .map(UserDto::getFirstName)
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * fuzzy lookup - users whose last names sound like the given one (share its Soundex key, so Smyth finds Smith)
+     * and are at most maxEditDistance letters away from it (so Kowalsky finds Kowalski, but not Kohlhase); edit distances
+     * are computed only for the distinct last names of a single phonetic key, read from an index, never for all users
+     * @param lastName last name, possibly misspelled
+     * @return users without IDs - closest last names first, then in ID order (of all shards)
+     */
+    @Transactional(readOnly = true)
+    public List<UserDto> findByLastNameFuzzy(String lastName) {
+        final String lastNameKey = User.lastNameKey(lastName);
+        final int maxDistance = maxEditDistance(lastNameKey);
+
+        final Map<String, Integer> distances = new HashMap<>();
+        userShards.onEveryShard(shard -> usersRepository.findLastNameKeysSoundingLike(lastName))
+                .stream()
+                .flatMap(List::stream)
+                .forEach(candidate -> {
+                    final int distance = editDistance(lastNameKey, candidate, maxDistance);
+                    if (distance <= maxDistance) {
+                        distances.put(candidate, distance);
+                    }
+                });
+        if (distances.isEmpty()) {
+            return List.of();
+        }
+
+        return userShards.onEveryShard(shard -> usersRepository.findWithIdsByLastNameKeyIn(distances.keySet()))
+                .stream()
+                .flatMap(List::stream)
+                .sorted(Comparator.<UserDto>comparingInt(user -> distances.get(User.lastNameKey(user.getLastName())))
+                        .thenComparing(UserDto::getId))
+                .map(user -> new UserDto(user.getFirstName(), user.getLastName()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * streams all users (ordered by ID) to the given output stream, row by row from a server-side cursor
+     * (with shards - keyset pages gathered from all shards) and flushing periodically - memory use doesn't depend
+     * on the number of users
+     * @param format format of the export
+     * @param outputStream stream to write to (not closed by this method)
+     */
+    @Transactional(readOnly = true)
+    public void export(UsersExportFormat format, OutputStream outputStream) throws IOException {
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        final UsersExportFormat.RowWriter rowWriter = format.rowWriter(writer, objectMapper);
+
+        if (userShards.isSharded()) {
+            long lastId = 0;
+            Slice<UserDto> page;
+            do {
+                page = findAllAfter(lastId, EXPORT_FLUSH_EVERY_ROWS);
+                for (UserDto user : page) {
+                    rowWriter.write(user);
+                    lastId = user.getId();
+                }
+                rowWriter.flush();
+            } while (page.hasNext());
+            return;
+        }
+
+        try (Stream<UserDto> users = usersRepository.streamAllBy()) {
+            int rows = 0;
+            for (Iterator<UserDto> iterator = users.iterator(); iterator.hasNext(); ) {
+                rowWriter.write(iterator.next());
+                if (++rows % EXPORT_FLUSH_EVERY_ROWS == 0) {
+                    rowWriter.flush();
+                }
             }
-            return usersRepository.save(user);
-        });
+        }
+        rowWriter.flush();
+    }
+
+    //version after a successful conditional update - unknown (without reading the user) for unconditional ones
+    private static Long nextVersion(Long expectedVersion) {
+        return expectedVersion == null ? null : expectedVersion + 1;
+    }
+
+    //result of an UPDATE that changed no rows - distinguishes a missing user from a version conflict
+    private Optional<UserDto> notUpdated(long id, Long expectedVersion) {
+        if (expectedVersion != null && userShards.onShardOf(id, () -> usersRepository.existsById(id))) {
+            throw versionConflict(id, expectedVersion);
+        }
+        return Optional.empty();
     }
 
-    public void deleteById(long id) {
-        usersRepository.deleteById(id);
+    private static OptimisticLockingFailureException versionConflict(long id, long expectedVersion) {
+        return new OptimisticLockingFailureException("User " + id + " has been modified - it's not in version " + expectedVersion + " anymore");
     }
 
-    public List<User> findByLastName(String lastName) {
-        return usersRepository.findByLastNameIgnoreCase(lastName);
+    private List<UserDto> findAllByIdInChunks(List<Long> ids) {
+        final List<UserDto> users = new ArrayList<>(ids.size());
+        for (int from = 0; from < ids.size(); from += LOOKUP_CHUNK_SIZE) {
+            users.addAll(usersRepository.findProjectedByIdIn(ids.subList(from, Math.min(from + LOOKUP_CHUNK_SIZE, ids.size()))));
+        }
+        return users;
+    }
+
+    //new user with an ID allocated up front, inserted into its shard
+    private User insertOnShard(User user) {
+        final User newUser = new User(userShards.allocateIds(1).get(0), user.getFirstName(), user.getLastName());
+        userShards.onShardOf(newUser.getId(), () -> usersRepository.insertAllWithIds(List.of(newUser)));
+        return newUser;
+    }
+
+    //new users with IDs allocated up front, inserted into all their shards in parallel
+    private List<Long> insertOnShards(List<User> users) {
+        final List<Long> ids = userShards.allocateIds(users.size());
+
+        final Map<Integer, List<User>> usersByShard = new HashMap<>();
+        for (int i = 0; i < users.size(); i++) {
+            usersByShard.computeIfAbsent(userShards.shardOf(ids.get(i)), shard -> new ArrayList<>())
+                    .add(new User(ids.get(i), users.get(i).getFirstName(), users.get(i).getLastName()));
+        }
+        userShards.onEveryShard(shard -> usersRepository.insertAllWithIds(usersByShard.getOrDefault(shard, List.of())));
+        return ids;
+    }
+
+    //users with the given last name from all shards, merged in ID order
+    private List<UserDto> gatherByLastName(String lastName) {
+        return userShards.onEveryShard(shard -> usersRepository.findWithIdsByLastNameIgnoreCase(lastName))
+                .stream()
+                .flatMap(List::stream)
+                .sorted(Comparator.comparing(UserDto::getId))
+                .collect(Collectors.toList());
+    }
+
+    //edits tolerated by fuzzy lookups - one per 3 letters, up to 2 (so short names have to be spelled almost right,
+    //as nearly every other short name is a couple of edits away)
+    static int maxEditDistance(String lastName) {
+        return Math.min(2, lastName.length() / 3);
+    }
+
+    //Levenshtein distance between the given strings - or max + 1, as soon as it's known to be greater than max
+    //(rows of the distance matrix are computed only while some of their cells are still within max)
+    static int editDistance(String a, String b, int max) {
+        if (Math.abs(a.length() - b.length()) > max) {
+            return max + 1;
+        }
+
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = i;
+            for (int j = 1; j <= b.length(); j++) {
+                final int substitution = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > max) {
+                return max + 1;
+            }
+            final int[] swapped = previous;
+            previous = current;
+            current = swapped;
+        }
+        return Math.min(previous[b.length()], max + 1);
+    }
+
+    //the first offset + size rows of a page (all of them may come from any single shard) - with ties broken by ID,
+    //so that every shard cuts its rows off where the merge does
+    private static Pageable leadingRowsOf(Pageable pageable) {
+        final Sort sort = pageable.getSort().getOrderFor("id") == null ? pageable.getSort().and(Sort.by("id")) : pageable.getSort();
+        return PageRequest.of(0, Math.toIntExact(pageable.getOffset() + pageable.getPageSize()), sort);
+    }
+
+    //rows from offset to offset + size of all shards' leading rows (each sorted by the given comparator)
+    private static List<UserDto> merge(List<? extends Slice<UserDto>> slices, Comparator<UserDto> comparator, long offset, int size) {
+        return slices.stream()
+                .flatMap(Slice::get)
+                .sorted(comparator)
+                .skip(offset)
+                .limit(size)
+                .collect(Collectors.toList());
+    }
+
+    private static Slice<UserDto> mergedSlice(List<? extends Slice<UserDto>> slices, Comparator<UserDto> comparator, Pageable pageable) {
+        final List<UserDto> content = merge(slices, comparator, pageable.getOffset(), pageable.getPageSize());
+        final boolean hasNext = slices.stream().anyMatch(Slice::hasNext)
+                || slices.stream().mapToLong(Slice::getNumberOfElements).sum() > pageable.getOffset() + content.size();
+        return new SliceImpl<>(content, pageable, hasNext);
+    }
+
+    //in-memory equivalent of the given sort, with ties broken by ID - strings are compared by their UTF-16 code units,
+    //so shards with a collation ordering them differently (e.g. case-insensitively) may make pages overlap a little
+    private static Comparator<UserDto> comparatorOf(Sort sort) {
+        Comparator<UserDto> comparator = (user, otherUser) -> 0;
+        for (Sort.Order order : sort) {
+            Comparator<UserDto> byProperty;
+            switch (order.getProperty()) {
+                case "id":
+                    byProperty = Comparator.comparing(UserDto::getId);
+                    break;
+                case "firstName":
+                    byProperty = Comparator.comparing(UserDto::getFirstName, stringComparator(order));
+                    break;
+                case "lastName":
+                    byProperty = Comparator.comparing(UserDto::getLastName, stringComparator(order));
+                    break;
+                case "version":
+                    byProperty = Comparator.comparing(UserDto::getVersion, Comparator.nullsFirst(Comparator.naturalOrder()));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Users can't be sorted by " + order.getProperty());
+            }
+            comparator = comparator.thenComparing(order.isAscending() ? byProperty : byProperty.reversed());
+        }
+        return comparator.thenComparing(UserDto::getId);
+    }
+
+    private static Comparator<String> stringComparator(Sort.Order order) {
+        return order.isIgnoreCase() ? String.CASE_INSENSITIVE_ORDER : Comparator.naturalOrder();
+    }
+
+    private User saveAndAdvanceWriteGeneration(User user) {
+        final User savedUser = usersRepository.save(user);
+        usersRepository.advanceWriteGeneration();
+        return savedUser;
+    }
+
+    //runs the action after the commit of the current transaction (in the order of registration), or right away
+    //without one - rolled back writes never reach the search index
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    //evicts cached last name lookups affected by a change - both the old and the new last name, when it's changed
+    private void evictLastNames(String... lastNames) {
+        final Cache usersByLastName = cacheManager.getCache(USERS_BY_LAST_NAME_CACHE);
+        final Cache firstNamesByLastName = cacheManager.getCache(FIRST_NAMES_BY_LAST_NAME_CACHE);
+
+        Arrays.stream(lastNames)
+                .filter(Objects::nonNull)
+                .map(User::lastNameKey)
+                .distinct()
+                .forEach(key -> {
+                    usersByLastName.evict(key);
+                    firstNamesByLastName.evict(key);
+                });
     }
 }
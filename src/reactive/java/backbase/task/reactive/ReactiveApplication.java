@@ -0,0 +1,15 @@
+package backbase.task.reactive;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+/**
+ * reactive variant of the app (WebFlux and R2DBC) - the same users API and JSON as the main app, served without
+ * blocking a thread per request (run with "gradle runReactive")
+ */
+@SpringBootApplication
+public class ReactiveApplication {
+    public static void main(String[] args) {
+        SpringApplication.run(ReactiveApplication.class, args);
+    }
+}
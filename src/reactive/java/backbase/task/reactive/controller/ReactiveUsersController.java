@@ -0,0 +1,330 @@
+package backbase.task.reactive.controller;
+
+import backbase.task.controller.KeysetCursor;
+import backbase.task.controller.UserETag;
+import backbase.task.dto.CreateUserDto;
+import backbase.task.dto.CursorPageDto;
+import backbase.task.dto.PatchUserDto;
+import backbase.task.dto.SliceDto;
+import backbase.task.dto.UserDto;
+import backbase.task.dto.UsersLookupDto;
+import backbase.task.reactive.service.ReactiveUsersService;
+import backbase.task.service.UsersExportFormat;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.validation.ConstraintViolationException;
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * the endpoints of UsersController (same paths, parameters, statuses and JSON), served by WebFlux - handlers return
+ * as soon as the request is described, and responses are written once the database emits their users
+ */
+@RestController
+@RequestMapping("/api")
+@Validated
+public class ReactiveUsersController {
+
+    static final int MAX_PAGE_SIZE = 2000;
+
+    static final int MAX_BATCH_SIZE = 10000;
+
+    private final ReactiveUsersService usersService;
+
+    private final int maxLookupIds;
+
+    public ReactiveUsersController(ReactiveUsersService usersService, @Value("${app.users.lookup-max-ids:1000}") int maxLookupIds) {
+        this.usersService = usersService;
+        this.maxLookupIds = maxLookupIds;
+    }
+
+    /**
+     * @return list of all users (with Pageable interface - enabling pagination and sorting)
+     * (304 without reading the listing when the ETag given in If-None-Match is still current - true for all listings below)
+     */
+    @GetMapping("/users")
+    public Mono<ResponseEntity<Page<UserDto>>> findAll(Pageable pageable, ServerWebExchange exchange) {
+
+        return listing(exchange, eTag -> usersService.findAll(pageable).map(page -> ResponseEntity.ok().eTag(eTag).body(page)));
+    }
+
+    /**
+     * count-free variant of findAll (enabled by adding ?count=false to the URL) - skips the SELECT COUNT(*) query,
+     * reporting only whether there is a next page (without the approximate number of users of the main app)
+     */
+    @GetMapping(value = "/users", params = {"count=false", "!after", "!ids"})
+    public Mono<ResponseEntity<SliceDto<UserDto>>> findAllWithoutCount(Pageable pageable, ServerWebExchange exchange) {
+
+        return listing(exchange, eTag -> usersService.findAllSlice(pageable).map(slice -> ResponseEntity.ok().eTag(eTag)
+                .body(new SliceDto<>(slice.getContent(), slice.getNumber(), slice.getSize(), slice.hasNext(), null))));
+    }
+
+    /**
+     * keyset (seek) pagination - each page costs the same regardless of how deep it is
+     * @param after cursor returned as "next_cursor" by the previous page (empty for the first page)
+     * @param size number of users per page
+     * @return page of users ordered by ID, with a cursor to the next page (null on the last page)
+     */
+    @GetMapping(value = "/users", params = {"after", "!ids"})
+    public Mono<ResponseEntity<CursorPageDto<UserDto>>> findAllAfter(@RequestParam String after,
+                                                                     @RequestParam(defaultValue = "20") int size,
+                                                                     ServerWebExchange exchange) {
+
+        final long lastId;
+        try {
+            lastId = KeysetCursor.decode(after);
+        } catch (IllegalArgumentException e) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+
+        return listing(exchange, eTag -> usersService.findAllAfter(lastId, size).map(slice -> {
+            final List<UserDto> users = slice.getContent();
+            final String nextCursor = slice.hasNext() ? KeysetCursor.encode(users.get(users.size() - 1).getId()) : null;
+            return ResponseEntity.ok().eTag(eTag).body(new CursorPageDto<>(users, size, nextCursor));
+        }));
+    }
+
+    /**
+     * @param id id of the requested user
+     * @return requested user with its ETag
+     */
+    @GetMapping("/users/{id}")
+    public Mono<ResponseEntity<UserDto>> findById(@PathVariable(required = true) Long id) {
+        return usersService.findById(id)
+                .map(ReactiveUsersController::okWithETag)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * multi-get - looks up many users with a single query, instead of calling api/users/{id} for each of them
+     * @param ids IDs of users, comma separated (by adding ?ids={id},{id},... to the URL) - up to app.users.lookup-max-ids of them
+     * @return found users in the order of the requested IDs (each user once), with the IDs of missing users as "missing_ids"
+     */
+    @GetMapping(value = "/users", params = {"ids", "!after"})
+    public Mono<ResponseEntity<UsersLookupDto>> findAllById(@RequestParam List<Long> ids, ServerWebExchange exchange) {
+
+        if (!isValidLookup(ids)) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+
+        return listing(exchange, eTag -> lookup(ids).map(users -> ResponseEntity.ok().eTag(eTag).body(users)));
+    }
+
+    /**
+     * variant of the above for lists of IDs too long for a URL
+     * @param ids JSON array of IDs of users
+     * @return found users in the order of the requested IDs (each user once), with the IDs of missing users as "missing_ids"
+     */
+    @PostMapping("/users/lookup")
+    public Mono<ResponseEntity<UsersLookupDto>> lookupUsers(@RequestBody List<Long> ids) {
+
+        if (!isValidLookup(ids)) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+
+        return lookup(ids).map(ResponseEntity::ok);
+    }
+
+    /**
+     * multi-gets (?ids=) can't be paged - combined with a cursor (which would be ambiguous otherwise), they're rejected
+     * with 400; ?count=false is ignored by multi-gets, just like by keyset pages
+     */
+    @GetMapping(value = "/users", params = {"ids", "after"})
+    public Mono<ResponseEntity<Void>> findAllByIdAfter() {
+        return Mono.just(ResponseEntity.badRequest().build());
+    }
+
+    /**
+     * bulk export of all users (ordered by ID), streamed from the database to the response - users are read only as
+     * fast as the client receives them
+     * @param format "ndjson" (one JSON object per line - default) or "csv"
+     */
+    @GetMapping("/users/export")
+    public ResponseEntity<Flux<String>> exportUsers(@RequestParam(defaultValue = "ndjson") String format) {
+
+        final Optional<UsersExportFormat> exportFormat = UsersExportFormat.fromName(format);
+
+        if (exportFormat.isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.get().getMediaType() + ";charset=UTF-8"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(exportFormat.get().getFileName()).build().toString())
+                .body(usersService.export(exportFormat.get()));
+    }
+
+    /**
+     * @param lastName user's last name (by adding ?lastName={lastName} to the URL)
+     * @return list of users with requested last name
+     * with duplicate first and last name pairs (as they represent different users, based on IDs)
+     */
+    @GetMapping("/users-by-lastname")
+    public Mono<ResponseEntity<List<UserDto>>> getUsersByLastName(@RequestParam(required = true) String lastName, ServerWebExchange exchange) {
+
+        if (lastName.isEmpty()) {
+            return Mono.just(ResponseEntity.ok(Collections.emptyList()));
+        }
+
+        return listing(exchange, eTag -> usersService.findByLastName(lastName).collectList()
+                .map(users -> ResponseEntity.ok().eTag(eTag).body(users)));
+    }
+
+    /**
+     * @param lastName user's last name (by adding ?lastName={lastName} to the URL)
+     * @return list of users' first names only for the given last name
+     * with distinct first names for a given last name (in order of their first appearance), computed by the database
+     */
+    @GetMapping("/users-firstnames-by-lastname")
+    public Mono<ResponseEntity<List<String>>> getFirstNamesByLastName(@RequestParam(required = true) String lastName, ServerWebExchange exchange) {
+
+        if (lastName.isEmpty()) {
+            return Mono.just(ResponseEntity.ok(Collections.emptyList()));
+        }
+
+        return listing(exchange, eTag -> usersService.findFirstNamesByLastName(lastName).collectList()
+                .map(firstNames -> ResponseEntity.ok().eTag(eTag).body(firstNames)));
+    }
+
+    /**
+     * @param newUser user's first name and last name
+     * @return added user
+     */
+    @PostMapping("/users")
+    public Mono<ResponseEntity<UserDto>> addUser(@RequestBody @Valid CreateUserDto newUser) {
+        return usersService.save(newUser).map(ResponseEntity::ok);
+    }
+
+    /**
+     * bulk variant of the above - all users are validated first and then inserted in a single transaction
+     * @param newUsers users' first names and last names (up to 10000 users per request)
+     * @return added users with their generated IDs (in the order of the request)
+     */
+    @PostMapping("/users/batch")
+    public Mono<ResponseEntity<List<UserDto>>> addUsers(@RequestBody @Size(min = 1, max = MAX_BATCH_SIZE)
+                                                        List<@NotNull @Valid CreateUserDto> newUsers) {
+        return usersService.saveAll(newUsers).map(ResponseEntity::ok);
+    }
+
+    /**
+     * @param updatedUser user's id, first name and last name (requires providing all user's fields)
+     * @param ifMatch ETag of the user (from its GET) - when given, the user is updated only if it hasn't changed since
+     * @return updated user (with its new ETag, when If-Match was given), 412 if the user has changed in the meantime
+     */
+    @PutMapping("/users/{id}")
+    public Mono<ResponseEntity<UserDto>> updateUser(@RequestBody @Valid CreateUserDto updatedUser, @PathVariable Long id,
+                                                    @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        final Long expectedVersion;
+        try {
+            expectedVersion = UserETag.expectedVersion(ifMatch);
+        } catch (IllegalArgumentException e) {
+            return Mono.just(ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build());
+        }
+
+        return usersService.update(id, updatedUser, expectedVersion)
+                .map(ReactiveUsersController::okWithETag)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * @param updatedUser user's id, first name and last name (doesn't require providing all the user's fields)
+     * @param ifMatch ETag of the user (from its GET) - when given, the user is patched only if it hasn't changed since
+     * @return patched user with its new ETag, 412 if the user has changed in the meantime
+     */
+    @PatchMapping("/users/{id}")
+    public Mono<ResponseEntity<UserDto>> patchUser(@RequestBody @Valid PatchUserDto updatedUser, @PathVariable Long id,
+                                                   @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        final Long expectedVersion;
+        try {
+            expectedVersion = UserETag.expectedVersion(ifMatch);
+        } catch (IllegalArgumentException e) {
+            return Mono.just(ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build());
+        }
+
+        return usersService.patch(id, updatedUser, expectedVersion)
+                .map(ReactiveUsersController::okWithETag)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * @param id id of the user to delete
+     */
+    @DeleteMapping("/users/{id}")
+    public Mono<ResponseEntity<Void>> deleteUser(@PathVariable Long id) {
+        return usersService.deleteById(id)
+                .map(deleted -> deleted ? ResponseEntity.ok().<Void>build() : ResponseEntity.notFound().<Void>build());
+    }
+
+    //listings change only on writes, so they share the ETag derived from the write generation (a single small query, shared
+    //by all app instances) - read before the listing itself, which is read only when the given ETag isn't current
+    private <T> Mono<ResponseEntity<T>> listing(ServerWebExchange exchange, Function<String, Mono<ResponseEntity<T>>> response) {
+        return usersService.writeGeneration()
+                .map(generation -> "\"" + generation + "\"")
+                .flatMap(eTag -> exchange.checkNotModified(eTag) ? Mono.just(notModified(eTag)) : response.apply(eTag));
+    }
+
+    //empty IDs (as in ?ids=1,,2) are converted to nulls
+    private boolean isValidLookup(List<Long> ids) {
+        return !ids.isEmpty() && ids.size() <= maxLookupIds && !ids.contains(null);
+    }
+
+    private Mono<UsersLookupDto> lookup(List<Long> ids) {
+        final List<Long> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));
+
+        return usersService.findAllById(distinctIds).map(users -> {
+            final Set<Long> foundIds = users.stream().map(UserDto::getId).collect(Collectors.toSet());
+            final List<Long> missingIds = distinctIds.stream().filter(id -> !foundIds.contains(id)).collect(Collectors.toList());
+            return new UsersLookupDto(users, missingIds);
+        });
+    }
+
+    private static <T> ResponseEntity<T> notModified(String eTag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+    }
+
+    //single user's response - with its ETag, unless its version isn't known
+    private static ResponseEntity<UserDto> okWithETag(UserDto user) {
+        if (user.getVersion() == null) {
+            return ResponseEntity.ok(user);
+        }
+        return ResponseEntity.ok().eTag(UserETag.of(user.getVersion())).body(user);
+    }
+
+    //user changed since the version given in If-Match
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<Void> handleOptimisticLockingFailure(OptimisticLockingFailureException e) {
+        return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+    }
+
+    //constraint violations of method-validated parameters (e.g. users in a batch) are client errors, just like invalid request bodies
+    @ExceptionHandler(ConstraintViolationException.class)
+    public ResponseEntity<Void> handleConstraintViolation(ConstraintViolationException e) {
+        return ResponseEntity.badRequest().build();
+    }
+}
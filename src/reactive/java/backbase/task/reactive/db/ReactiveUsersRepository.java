@@ -0,0 +1,70 @@
+package backbase.task.reactive.db;
+
+import backbase.task.dto.UserDto;
+import backbase.task.reactive.entity.UserRow;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.data.repository.query.Param;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+//R2DBC counterpart of UsersRepository - the same queries, emitting rows as they're read (and only as fast as they're
+//requested, so backpressure reaches the database driver)
+public interface ReactiveUsersRepository extends R2dbcRepository<UserRow, Long>, ReactiveUsersRepositoryCustom {
+
+    //read-only queries below read UserDto directly (DTO projections) - no entities are created
+
+    //keyset pagination - seeks on the primary key, so no OFFSET scan and no COUNT query is needed
+    Flux<UserDto> findByIdGreaterThan(Long id, Pageable pageable);
+
+    Mono<UserDto> findProjectedById(Long id);
+
+    //multi-get - a primary key lookup per ID in a single statement
+    Flux<UserDto> findProjectedByIdIn(Collection<Long> ids);
+
+    //compares the indexed last_name_key column with the case-folded parameter - returns users without IDs
+    @Query("select first_name, last_name from users where last_name_key = lower(:lastName) order by id")
+    Flux<UserDto> findByLastNameIgnoreCase(@Param("lastName") String lastName);
+
+    //distinct first names (in order of their first appearance) computed by the database - covered by the
+    //(last_name_key, first_name) index
+    @Query("select first_name from users where last_name_key = lower(:lastName) group by first_name order by min(id)")
+    Flux<String> findDistinctFirstNamesByLastNameIgnoreCase(@Param("lastName") String lastName);
+
+    //single UPDATE statements below (without reading the user first) - set the given names (null leaves a name unchanged)
+    //and increment the version; they return the number of updated users - 0 if there is no user with the given id (and version)
+
+    @Modifying
+    @Query("update users set first_name = coalesce(:firstName, first_name), last_name = coalesce(:lastName, last_name), " +
+            "version = version + 1 where id = :id")
+    Mono<Integer> updateNames(@Param("id") long id, @Param("firstName") String firstName, @Param("lastName") String lastName);
+
+    @Modifying
+    @Query("update users set first_name = coalesce(:firstName, first_name), last_name = coalesce(:lastName, last_name), " +
+            "version = version + 1 where id = :id and version = :expectedVersion")
+    Mono<Integer> updateNamesOfVersion(@Param("id") long id, @Param("firstName") String firstName, @Param("lastName") String lastName,
+                                       @Param("expectedVersion") long expectedVersion);
+
+    //single DELETE statement - returns the number of deleted users
+    @Modifying
+    @Query("delete from users where id = :id")
+    Mono<Integer> deleteByIdReturningCount(@Param("id") long id);
+
+    //write generation (see UsersWriteGeneration of the main app) - every write advances one of its slots in its transaction
+
+    //returns the number of advanced slots - 0 if the slot is missing
+    @Modifying
+    @Query("update users_write_generation set generation = generation + 1 where slot = :slot")
+    Mono<Integer> advanceWriteGeneration(@Param("slot") int slot);
+
+    @Query("select coalesce(sum(generation), 0) from users_write_generation")
+    Mono<Long> writeGeneration();
+
+    //all users, read as they're consumed (e.g. by the export, as fast as the client takes them)
+    @Query("select id, first_name, last_name from users order by id")
+    Flux<UserDto> streamAllBy();
+}
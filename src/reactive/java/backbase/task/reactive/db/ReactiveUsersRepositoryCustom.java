@@ -0,0 +1,19 @@
+package backbase.task.reactive.db;
+
+import backbase.task.dto.UserDto;
+import org.springframework.data.domain.Sort;
+import reactor.core.publisher.Flux;
+
+//operations implemented outside of derived queries (see ReactiveUsersRepositoryCustomImpl)
+public interface ReactiveUsersRepositoryCustom {
+
+    /**
+     * page of users without counting all of them - e.g. one more than the page size, to tell whether there is a next page
+     * (which derived queries can't do, as their limit is always the page size)
+     * @param offset number of users to skip
+     * @param limit maximum number of users to return
+     * @param sort order of users
+     * @return users as DTOs
+     */
+    Flux<UserDto> findRange(long offset, int limit, Sort sort);
+}
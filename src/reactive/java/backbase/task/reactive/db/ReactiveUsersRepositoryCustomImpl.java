@@ -0,0 +1,25 @@
+package backbase.task.reactive.db;
+
+import backbase.task.dto.UserDto;
+import backbase.task.reactive.entity.UserRow;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.data.relational.core.query.Query;
+import reactor.core.publisher.Flux;
+
+class ReactiveUsersRepositoryCustomImpl implements ReactiveUsersRepositoryCustom {
+
+    private final R2dbcEntityTemplate template;
+
+    ReactiveUsersRepositoryCustomImpl(R2dbcEntityTemplate template) {
+        this.template = template;
+    }
+
+    @Override
+    public Flux<UserDto> findRange(long offset, int limit, Sort sort) {
+        return template.select(UserRow.class)
+                .as(UserDto.class)
+                .matching(Query.empty().sort(sort).offset(offset).limit(limit))
+                .all();
+    }
+}
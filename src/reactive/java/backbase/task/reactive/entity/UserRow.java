@@ -0,0 +1,72 @@
+//R2DBC counterpart of the User entity - maps the same users table
+package backbase.task.reactive.entity;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.relational.core.mapping.Table;
+
+@Table("users")
+public class UserRow {
+
+    @Id
+    private Long id;
+
+    private String firstName;
+
+    private String lastName;
+
+    //last_name_key is computed by the database (see User) - used in queries only, hence not mapped
+
+    //incremented on every update (also by the UPDATE statements of ReactiveUsersRepository) - exposed as the user's ETag
+    @Version
+    private Long version;
+
+    public UserRow() {
+    }
+
+    public UserRow(String firstName, String lastName) {
+        this.firstName = firstName;
+        this.lastName = lastName;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public void setFirstName(String firstName) {
+        this.firstName = firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public void setLastName(String lastName) {
+        this.lastName = lastName;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    @Override
+    public String toString() {
+        return "UserRow{" +
+                "id=" + id +
+                ", first_name='" + firstName + '\'' +
+                ", last_name='" + lastName + '\'' +
+                '}';
+    }
+}
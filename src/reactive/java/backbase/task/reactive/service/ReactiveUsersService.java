@@ -0,0 +1,239 @@
+package backbase.task.reactive.service;
+
+import backbase.task.dto.CreateUserDto;
+import backbase.task.dto.PatchUserDto;
+import backbase.task.dto.UserDto;
+import backbase.task.reactive.db.ReactiveUsersRepository;
+import backbase.task.reactive.entity.UserRow;
+import backbase.task.service.UsersExportFormat;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * reactive counterpart of UsersService (without its caches, read replica and shards) - every method only describes
+ * the work, which is done once the result is subscribed to; writes advance the write generation (shared with the main
+ * app - see its UsersWriteGeneration) in their transactions
+ */
+@Service
+public class ReactiveUsersService {
+
+    //UsersWriteGeneration.SLOTS of the main app (its entities aren't on the classpath here)
+    private static final int WRITE_GENERATION_SLOTS = 16;
+
+    private final ReactiveUsersRepository usersRepository;
+
+    private final TransactionalOperator transactionalOperator;
+
+    private final ObjectMapper objectMapper;
+
+    public ReactiveUsersService(ReactiveUsersRepository usersRepository, TransactionalOperator transactionalOperator,
+                                ObjectMapper objectMapper) {
+        this.usersRepository = usersRepository;
+        this.transactionalOperator = transactionalOperator;
+        this.objectMapper = objectMapper;
+    }
+
+    public Mono<Page<UserDto>> findAll(Pageable pageable) {
+        return usersRepository.findRange(pageable.getOffset(), pageable.getPageSize(), pageable.getSort())
+                .collectList()
+                .zipWith(usersRepository.count(), (users, count) -> new PageImpl<>(users, pageable, count));
+    }
+
+    //count-free variant of findAll - fetches one extra row to tell whether there is a next page
+    public Mono<Slice<UserDto>> findAllSlice(Pageable pageable) {
+        return usersRepository.findRange(pageable.getOffset(), pageable.getPageSize() + 1, pageable.getSort())
+                .collectList()
+                .map(users -> slice(users, pageable));
+    }
+
+    /**
+     * @return opaque version of all users' data - the same for as long as no user is created, changed or deleted
+     * by any app instance (it must be read before the data it describes, so that it's never newer than them; writes
+     * made around the apps, e.g. by SQL scripts, aren't noticed)
+     */
+    public Mono<String> writeGeneration() {
+        return usersRepository.writeGeneration().map(String::valueOf);
+    }
+
+    public Mono<Slice<UserDto>> findAllAfter(long lastId, int size) {
+        final Pageable pageable = PageRequest.of(0, size + 1, Sort.by("id"));
+        return usersRepository.findByIdGreaterThan(lastId, pageable)
+                .collectList()
+                .map(users -> slice(users, PageRequest.of(0, size, Sort.by("id"))));
+    }
+
+    public Mono<UserDto> findById(long id) {
+        return usersRepository.findProjectedById(id);
+    }
+
+    /**
+     * multi-get - looks up all users with a single query
+     * @param ids IDs of users to find
+     * @return users with the given IDs, in the order of the IDs (without missing users)
+     */
+    public Mono<List<UserDto>> findAllById(List<Long> ids) {
+        return usersRepository.findProjectedByIdIn(ids)
+                .collectMap(UserDto::getId)
+                .map(usersById -> ids.stream()
+                        .filter(usersById::containsKey)
+                        .map(usersById::get)
+                        .collect(Collectors.toList()));
+    }
+
+    public Mono<UserDto> save(CreateUserDto newUser) {
+        return usersRepository.save(new UserRow(newUser.getFirstName(), newUser.getLastName()))
+                .flatMap(user -> advanceWriteGeneration().thenReturn(new UserDto(user.getId(), user.getFirstName(), user.getLastName())))
+                .as(transactionalOperator::transactional);
+    }
+
+    /**
+     * saves all users in a single transaction
+     * @param newUsers users to save
+     * @return saved users with their generated IDs (in the order of the given users)
+     */
+    public Mono<List<UserDto>> saveAll(List<CreateUserDto> newUsers) {
+        return usersRepository.saveAll(newUsers
+                        .stream()
+                        .map(newUser -> new UserRow(newUser.getFirstName(), newUser.getLastName()))
+                        .collect(Collectors.toList()))
+                .map(user -> new UserDto(user.getId(), user.getFirstName(), user.getLastName()))
+                .collectList()
+                .flatMap(users -> advanceWriteGeneration().thenReturn(users))
+                .as(transactionalOperator::transactional);
+    }
+
+    /**
+     * @param id id of the user to update
+     * @param updateUserDto new first and last name
+     * @param expectedVersion version the user must have to be updated (or null to update any version)
+     * @return updated user (with its new version, if the expected one was given), or empty if there is no such user;
+     * OptimisticLockingFailureException when the user has a different version than expected
+     */
+    //single UPDATE statement - the response is built from the request, as it sets every column
+    public Mono<UserDto> update(long id, CreateUserDto updateUserDto, Long expectedVersion) {
+        return updateNames(id, updateUserDto.getFirstName(), updateUserDto.getLastName(), expectedVersion)
+                .flatMap(updated -> updated == 0 ? notUpdated(id, expectedVersion) : advanceWriteGeneration()
+                        .thenReturn(new UserDto(id, updateUserDto.getFirstName(), updateUserDto.getLastName(), nextVersion(expectedVersion))))
+                .as(transactionalOperator::transactional);
+    }
+
+    /**
+     * @param id id of the user to patch
+     * @param patchUserDto first and/or last name to set
+     * @param expectedVersion version the user must have to be patched (or null to patch any version)
+     * @return patched user (with its new version, unless it sets every column and the expected one wasn't given),
+     * or empty if there is no such user; OptimisticLockingFailureException when the user has a different version than expected
+     */
+    //single UPDATE statement of the given columns - the rest of the user is read back in the same transaction,
+    //unless the patch sets every column
+    public Mono<UserDto> patch(long id, PatchUserDto patchUserDto, Long expectedVersion) {
+        final String firstName = patchUserDto.getFirstName();
+        final String lastName = patchUserDto.getLastName();
+
+        if (firstName == null && lastName == null) {
+            return usersRepository.findProjectedById(id)
+                    .flatMap(user -> expectedVersion != null && !expectedVersion.equals(user.getVersion())
+                            ? Mono.error(versionConflict(id, expectedVersion)) : Mono.just(user));
+        }
+
+        return updateNames(id, firstName, lastName, expectedVersion)
+                .flatMap(updated -> {
+                    if (updated == 0) {
+                        return notUpdated(id, expectedVersion);
+                    }
+                    if (firstName != null && lastName != null) {
+                        return advanceWriteGeneration().thenReturn(new UserDto(id, firstName, lastName, nextVersion(expectedVersion)));
+                    }
+                    return advanceWriteGeneration().then(usersRepository.findProjectedById(id));
+                })
+                .as(transactionalOperator::transactional);
+    }
+
+    /**
+     * @param id id of the user to delete
+     * @return true if the user was deleted, false if there was no user with the given id
+     */
+    public Mono<Boolean> deleteById(long id) {
+        return usersRepository.deleteByIdReturningCount(id)
+                .flatMap(deleted -> deleted > 0 ? advanceWriteGeneration().thenReturn(true) : Mono.just(false))
+                .as(transactionalOperator::transactional);
+    }
+
+    public Flux<UserDto> findByLastName(String lastName) {
+        return usersRepository.findByLastNameIgnoreCase(lastName);
+    }
+
+    public Flux<String> findFirstNamesByLastName(String lastName) {
+        return usersRepository.findDistinctFirstNamesByLastNameIgnoreCase(lastName);
+    }
+
+    /**
+     * all users (ordered by ID) as lines of the given format - read from the database only as fast as they're consumed
+     * (written to the response), so memory use doesn't depend on the number of users
+     * @param format format of the export
+     */
+    public Flux<String> export(UsersExportFormat format) {
+        final Flux<String> lines = usersRepository.streamAllBy().handle((user, sink) -> {
+            try {
+                sink.next(format.line(user, objectMapper));
+            } catch (JsonProcessingException e) {
+                sink.error(e);
+            }
+        });
+        return format.header().isEmpty() ? lines : lines.startWith(format.header());
+    }
+
+    private Mono<Integer> updateNames(long id, String firstName, String lastName, Long expectedVersion) {
+        return expectedVersion == null ? usersRepository.updateNames(id, firstName, lastName)
+                : usersRepository.updateNamesOfVersion(id, firstName, lastName, expectedVersion);
+    }
+
+    //advances a slot of the write generation picked at random (so that concurrent writes rarely wait for each other's
+    //row lock) - in the transaction of the write, so that it's committed (and seen) together with it
+    private Mono<Void> advanceWriteGeneration() {
+        return Mono.defer(() -> {
+            final int slot = ThreadLocalRandom.current().nextInt(WRITE_GENERATION_SLOTS);
+            return usersRepository.advanceWriteGeneration(slot).flatMap(advanced -> advanced == 1 ? Mono.<Void>empty()
+                    : Mono.error(new IllegalStateException("Table users_write_generation must have a row for every slot (0 to "
+                    + (WRITE_GENERATION_SLOTS - 1) + "), slot " + slot + " is missing")));
+        });
+    }
+
+    private static Slice<UserDto> slice(List<UserDto> users, Pageable pageable) {
+        final boolean hasNext = users.size() > pageable.getPageSize();
+        return new SliceImpl<>(hasNext ? users.subList(0, pageable.getPageSize()) : users, pageable, hasNext);
+    }
+
+    private static Long nextVersion(Long expectedVersion) {
+        return expectedVersion == null ? null : expectedVersion + 1;
+    }
+
+    //result of an UPDATE that changed no rows - distinguishes a missing user from a version conflict
+    private Mono<UserDto> notUpdated(long id, Long expectedVersion) {
+        if (expectedVersion == null) {
+            return Mono.empty();
+        }
+        return usersRepository.existsById(id)
+                .flatMap(exists -> exists ? Mono.error(versionConflict(id, expectedVersion)) : Mono.empty());
+    }
+
+    private static OptimisticLockingFailureException versionConflict(long id, long expectedVersion) {
+        return new OptimisticLockingFailureException("User " + id + " has been modified - it's not in version " + expectedVersion + " anymore");
+    }
+}
@@ -0,0 +1,307 @@
+package backbase.task.reactive;
+
+import backbase.task.controller.KeysetCursor;
+import backbase.task.dto.CreateUserDto;
+import backbase.task.dto.PatchUserDto;
+import backbase.task.dto.UserDto;
+import backbase.task.dto.UsersLookupDto;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.web.reactive.server.EntityExchangeResult;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//the scenarios of E2ETest (but for the cache metrics, as there are no caches here) run against the reactive app
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class ReactiveE2ETest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private static boolean isInitialized = false;
+
+    @BeforeEach
+    void populateDatabase() {
+        if (isInitialized) return;
+        databaseClient.sql("insert into users (first_name, last_name) VALUES ('Jan', 'Nowak'), ('Anna', 'Nowak'), " +
+                "('Bruce','Lee'), ('Chuck', 'Norris')").then().block();
+        isInitialized = true;
+    }
+
+    UserDto userDTO1 = new UserDto("Jan", "Nowak");
+    UserDto userDTO2 = new UserDto("Anna", "Nowak");
+    UserDto userDTO3 = new UserDto("Bruce", "Lee");
+
+    UserDto userDTO1id = new UserDto(1L, "Jan", "Nowak");
+    UserDto userDTO2id = new UserDto(2L, "Anna", "Nowak");
+    UserDto userDTO3id = new UserDto(3L, "Bruce", "Lee");
+    UserDto userDTO4id = new UserDto(4L, "Chuck", "Norris");
+
+    @Test
+    @Order(1)
+    @DisplayName("\"api/users\" endpoint retrieves all users")
+    public void shouldRetrieveAllUsers() {
+        //when
+        EntityExchangeResult<JsonNode> users = webTestClient.get().uri("/api/users")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(JsonNode.class).returnResult();
+
+        //then
+        assertEquals(List.of(userDTO1id, userDTO2id, userDTO3id, userDTO4id), content(users.getResponseBody()));
+        assertEquals(4, users.getResponseBody().get("totalElements").asLong());
+    }
+
+    @Test
+    @Order(2)
+    @DisplayName("\"api/users/{id}\" endpoint retrieves a correct user for an existing id")
+    public void shouldRetrieveUserById() {
+        //when
+        UserDto user = webTestClient.get().uri("/api/users/1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(UserDto.class).returnResult().getResponseBody();
+
+        //then
+        assertEquals(userDTO1id, user);
+
+        //when
+        user = webTestClient.get().uri("/api/users/3")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(UserDto.class).returnResult().getResponseBody();
+
+        //then
+        assertEquals(userDTO3id, user);
+    }
+
+    @Test
+    @Order(3)
+    @DisplayName("\"api/users-by-lastname\" endpoint retrieves correct users for an existing lastName")
+    public void shouldRetrieveUsersByLastName() {
+        //when
+        List<UserDto> users = webTestClient.get().uri("/api/users-by-lastname?lastName=Nowak")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(new ParameterizedTypeReference<List<UserDto>>() {
+                }).returnResult().getResponseBody();
+
+        //then
+        assertEquals(List.of(userDTO1, userDTO2), users);
+
+        //when
+        users = webTestClient.get().uri("/api/users-by-lastname?lastName=Lee")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(new ParameterizedTypeReference<List<UserDto>>() {
+                }).returnResult().getResponseBody();
+
+        //then
+        assertEquals(List.of(userDTO3), users);
+    }
+
+    @Test
+    @Order(4)
+    @DisplayName("\"api/users-firstnames-by-lastname\" endpoint retrieves correct names for an existing lastName")
+    public void shouldRetrieveFirstNamesByLastName() {
+        //when
+        List<String> firstNames = webTestClient.get().uri("/api/users-firstnames-by-lastname?lastName=Nowak")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(new ParameterizedTypeReference<List<String>>() {
+                }).returnResult().getResponseBody();
+
+        //then
+        assertEquals(List.of(userDTO1.getFirstName(), userDTO2.getFirstName()), firstNames);
+
+        //when
+        firstNames = webTestClient.get().uri("/api/users-firstnames-by-lastname?lastName=Lee")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(new ParameterizedTypeReference<List<String>>() {
+                }).returnResult().getResponseBody();
+
+        //then
+        assertEquals(List.of(userDTO3.getFirstName()), firstNames);
+    }
+
+    @Test
+    @Order(5)
+    @DisplayName("\"api/users\" endpoint creates new user (POST method) when request body is valid")
+    public void shouldProperlyCreateUserWhenValidRequestBody() {
+        //when
+        UserDto user = webTestClient.post().uri("/api/users")
+                .bodyValue(new CreateUserDto("Mariusz", "Pudzianowski"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(UserDto.class).returnResult().getResponseBody();
+
+        //then
+        assertNotNull(user);
+        assertEquals("Mariusz", user.getFirstName());
+        assertEquals("Pudzianowski", user.getLastName());
+        assertNotNull(user.getId());
+    }
+
+    @Test
+    @Order(6)
+    @DisplayName("\"api/users/{id}\" endpoint updates user (PUT method)")
+    public void shouldProperlyUpdateUserWhenExistingIdProvided() {
+        //when
+        UserDto user = webTestClient.put().uri("/api/users/5")
+                .bodyValue(new CreateUserDto("Marian", "Pudzianowski"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(UserDto.class).returnResult().getResponseBody();
+
+        //then
+        assertNotNull(user);
+        assertEquals("Marian", user.getFirstName());
+        assertEquals("Pudzianowski", user.getLastName());
+        assertNotNull(user.getId());
+    }
+
+    @Test
+    @Order(7)
+    @DisplayName("\"api/users/{id}\" endpoint patches user when first name and last name is provided (PATCH method)")
+    public void shouldProperlyPatchUserWhenFullNameProvided() {
+        //when
+        UserDto user = webTestClient.patch().uri("/api/users/5")
+                .bodyValue(new PatchUserDto("Mariusz", "Pudzianowski"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(UserDto.class).returnResult().getResponseBody();
+
+        //then
+        assertNotNull(user);
+        assertEquals("Mariusz", user.getFirstName());
+        assertEquals("Pudzianowski", user.getLastName());
+        assertNotNull(user.getId());
+    }
+
+    @Test
+    @Order(8)
+    @DisplayName("\"api/users\" endpoint DELETEs user valid id is provided")
+    public void shouldDeleteUserWhenValidId() {
+        //when
+        webTestClient.delete().uri("/api/users/1")
+                .exchange()
+
+                //then
+                .expectStatus().isOk();
+    }
+
+    @Test
+    @Order(9)
+    @DisplayName("\"api/users/export\" endpoint streams all users as NDJSON")
+    public void shouldExportAllUsersAsNdjson() {
+        //when
+        EntityExchangeResult<String> response = webTestClient.get().uri("/api/users/export")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).returnResult();
+
+        //then
+        assertEquals(MediaType.parseMediaType("application/x-ndjson;charset=UTF-8"), response.getResponseHeaders().getContentType());
+        assertEquals("{\"id\":2,\"first_name\":\"Anna\",\"last_name\":\"Nowak\"}\n" +
+                "{\"id\":3,\"first_name\":\"Bruce\",\"last_name\":\"Lee\"}\n" +
+                "{\"id\":4,\"first_name\":\"Chuck\",\"last_name\":\"Norris\"}\n" +
+                "{\"id\":5,\"first_name\":\"Mariusz\",\"last_name\":\"Pudzianowski\"}\n", response.getResponseBody());
+    }
+
+    @Test
+    @Order(10)
+    @DisplayName("\"api/users/export\" endpoint streams all users as CSV")
+    public void shouldExportAllUsersAsCsv() {
+        //when
+        EntityExchangeResult<String> response = webTestClient.get().uri("/api/users/export?format=csv")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).returnResult();
+
+        //then
+        assertEquals(MediaType.parseMediaType("text/csv;charset=UTF-8"), response.getResponseHeaders().getContentType());
+        assertEquals("id,first_name,last_name\n" +
+                "2,Anna,Nowak\n" +
+                "3,Bruce,Lee\n" +
+                "4,Chuck,Norris\n" +
+                "5,Mariusz,Pudzianowski\n", response.getResponseBody());
+    }
+
+    @Test
+    @Order(11)
+    @DisplayName("\"api/users\" endpoint answers with 304 until some user changes")
+    public void shouldAnswerNotModifiedUntilUsersChange() {
+        //given
+        String eTag = webTestClient.get().uri("/api/users")
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(String.class).getResponseHeaders().getETag();
+
+        //when
+        webTestClient.get().uri("/api/users").ifNoneMatch(eTag)
+                .exchange()
+
+                //then
+                .expectStatus().isEqualTo(HttpStatus.NOT_MODIFIED);
+
+        //when
+        webTestClient.post().uri("/api/users")
+                .bodyValue(new CreateUserDto("Arnold", "Schwarzenegger"))
+                .exchange()
+                .expectStatus().isOk();
+        EntityExchangeResult<String> changedUsers = webTestClient.get().uri("/api/users").ifNoneMatch(eTag)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).returnResult();
+
+        //then
+        assertNotEquals(eTag, changedUsers.getResponseHeaders().getETag());
+        assertTrue(changedUsers.getResponseBody().contains("Schwarzenegger"));
+    }
+
+    @Test
+    @Order(12)
+    @DisplayName("\"api/users?ids=\" endpoint retrieves requested users in the requested order, listing missing IDs (without a cursor)")
+    public void shouldRetrieveUsersByIds() {
+        //when
+        UsersLookupDto users = webTestClient.get().uri("/api/users?ids=4,1,2,99")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(UsersLookupDto.class).returnResult().getResponseBody();
+
+        //then
+        assertEquals(List.of(new UserDto(4L, "Chuck", "Norris"), new UserDto(2L, "Anna", "Nowak")), users.getUsers());
+        assertEquals(List.of(1L, 99L), users.getMissingIds());
+        //multi-gets can't be paged with a cursor
+        webTestClient.get().uri("/api/users?ids=4,1&after=" + KeysetCursor.encode(1L))
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    private List<UserDto> content(JsonNode page) {
+        return objectMapper.convertValue(page.get("content"), new TypeReference<List<UserDto>>() {
+        });
+    }
+}
@@ -0,0 +1,82 @@
+package backbase.task.reactive.service;
+
+import backbase.task.dto.CreateUserDto;
+import backbase.task.dto.UserDto;
+import backbase.task.reactive.db.ReactiveUsersRepository;
+import backbase.task.service.UsersExportFormat;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.OptimisticLockingFailureException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(properties = "spring.r2dbc.url=r2dbc:h2:mem:///reactive-service;DB_CLOSE_DELAY=-1")
+class ReactiveUsersServiceTest {
+
+    @Autowired
+    private ReactiveUsersService usersService;
+
+    @MockBean
+    private ReactiveUsersRepository usersRepository;
+
+    @Test
+    @DisplayName("Export reads users only as fast as they're consumed")
+    void shouldRequestUsersOnlyAsTheyAreConsumed() {
+        //given
+        final AtomicLong requested = new AtomicLong();
+        when(usersRepository.streamAllBy()).thenReturn(Flux.range(1, 100_000)
+                .map(id -> new UserDto((long) id, "First" + id, "Last" + id))
+                .doOnRequest(requested::addAndGet));
+
+        //when
+        StepVerifier.create(usersService.export(UsersExportFormat.CSV), 3)
+                .expectNext("id,first_name,last_name\n", "1,First1,Last1\n", "2,First2,Last2\n")
+                .thenCancel()
+                .verify();
+
+        //then
+        assertEquals(2, requested.get());
+    }
+
+    @Test
+    @DisplayName("Updating a user of another version fails, updating a missing user finds nothing")
+    void shouldRejectUpdatesOfOtherVersions() {
+        //given
+        when(usersRepository.updateNamesOfVersion(1L, "Jan", "Kowalski", 3L)).thenReturn(Mono.just(0));
+        when(usersRepository.existsById(1L)).thenReturn(Mono.just(true));
+        when(usersRepository.updateNamesOfVersion(99L, "Jan", "Kowalski", 3L)).thenReturn(Mono.just(0));
+        when(usersRepository.existsById(99L)).thenReturn(Mono.just(false));
+
+        //when
+        //then
+        StepVerifier.create(usersService.update(1L, new CreateUserDto("Jan", "Kowalski"), 3L))
+                .expectError(OptimisticLockingFailureException.class)
+                .verify();
+        StepVerifier.create(usersService.update(99L, new CreateUserDto("Jan", "Kowalski"), 3L))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Multi-get returns users in the order of the requested IDs")
+    void shouldReturnUsersInOrderOfIds() {
+        //given
+        when(usersRepository.findProjectedByIdIn(List.of(3L, 1L, 2L))).thenReturn(Flux.just(
+                new UserDto(1L, "Jan", "Nowak"), new UserDto(3L, "Bruce", "Lee")));
+
+        //when
+        //then
+        StepVerifier.create(usersService.findAllById(List.of(3L, 1L, 2L)))
+                .expectNext(List.of(new UserDto(3L, "Bruce", "Lee"), new UserDto(1L, "Jan", "Nowak")))
+                .verifyComplete();
+    }
+}
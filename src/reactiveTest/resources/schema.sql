@@ -0,0 +1,19 @@
+-- H2 version of the users tables of sql-script/UsersDatabase.sql
+CREATE TABLE users (
+  id bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  first_name varchar(50) NOT NULL,
+  last_name varchar(50) NOT NULL,
+  last_name_key varchar(50) GENERATED ALWAYS AS (LOWER(last_name)),
+  last_name_soundex varchar(4) GENERATED ALWAYS AS (LEFT(SOUNDEX(UPPER(last_name)), 4)),
+  version bigint NOT NULL DEFAULT 0
+);
+
+CREATE INDEX idx_users_last_name_key_first_name ON users (last_name_key, first_name);
+CREATE INDEX idx_users_last_name_soundex_last_name_key ON users (last_name_soundex, last_name_key);
+
+CREATE TABLE users_write_generation (
+  slot int NOT NULL PRIMARY KEY,
+  generation bigint NOT NULL
+);
+
+INSERT INTO users_write_generation (slot, generation) SELECT x, 0 FROM system_range(0, 15);
@@ -4,6 +4,7 @@ import backbase.task.controller.HelperPageResponse;
 import backbase.task.dto.CreateUserDto;
 import backbase.task.dto.PatchUserDto;
 import backbase.task.dto.UserDto;
+import backbase.task.dto.UsersLookupDto;
 import backbase.task.entity.User;
 import org.apache.http.client.HttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
@@ -14,8 +15,10 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -24,7 +27,9 @@ import org.springframework.web.client.RestTemplate;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @TestMethodOrder(MethodOrderer.OrderAnnotation.class)
@@ -238,4 +243,152 @@ public class E2ETest {
         //then
         assertEquals(HttpStatus.OK, response.getStatusCode());
     }
+
+    //2 tests for endpoint api/users/export below (GET method)
+    @Test
+    @Order(9)
+    @DisplayName("\"api/users/export\" endpoint streams all users as NDJSON")
+    public void shouldExportAllUsersAsNdjson() {
+        //when
+        ResponseEntity<String> response = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users/export", HttpMethod.GET, null, String.class);
+
+        //then
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(MediaType.parseMediaType("application/x-ndjson;charset=UTF-8"), response.getHeaders().getContentType());
+        assertEquals("{\"id\":2,\"first_name\":\"Anna\",\"last_name\":\"Nowak\"}\n" +
+                "{\"id\":3,\"first_name\":\"Bruce\",\"last_name\":\"Lee\"}\n" +
+                "{\"id\":4,\"first_name\":\"Chuck\",\"last_name\":\"Norris\"}\n" +
+                "{\"id\":5,\"first_name\":\"Mariusz\",\"last_name\":\"Pudzianowski\"}\n", response.getBody());
+    }
+
+    @Test
+    @Order(10)
+    @DisplayName("\"api/users/export\" endpoint streams all users as CSV")
+    public void shouldExportAllUsersAsCsv() {
+        //when
+        ResponseEntity<String> response = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users/export?format=csv", HttpMethod.GET, null, String.class);
+
+        //then
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(MediaType.parseMediaType("text/csv;charset=UTF-8"), response.getHeaders().getContentType());
+        assertEquals("id,first_name,last_name\n" +
+                "2,Anna,Nowak\n" +
+                "3,Bruce,Lee\n" +
+                "4,Chuck,Norris\n" +
+                "5,Mariusz,Pudzianowski\n", response.getBody());
+    }
+
+    //test for cache metrics exposed by actuator below
+    @Test
+    @Order(11)
+    @DisplayName("users cache exposes its hit and miss counters")
+    public void shouldExposeUsersCacheHitsAndMisses() {
+        //when
+        ResponseEntity<String> hits = testRestTemplate
+                .exchange("http://localhost:" + port + "/actuator/metrics/cache.gets?tag=name:users&tag=result:hit", HttpMethod.GET, null, String.class);
+        ResponseEntity<String> misses = testRestTemplate
+                .exchange("http://localhost:" + port + "/actuator/metrics/cache.gets?tag=name:users&tag=result:miss", HttpMethod.GET, null, String.class);
+
+        //then
+        assertEquals(HttpStatus.OK, hits.getStatusCode());
+        assertEquals(HttpStatus.OK, misses.getStatusCode());
+    }
+
+    //test for conditional GET requests below
+    @Test
+    @Order(12)
+    @DisplayName("\"api/users\" endpoint answers with 304 until some user changes")
+    public void shouldAnswerNotModifiedUntilUsersChange() {
+        //given
+        ResponseEntity<String> users = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users", HttpMethod.GET, null, String.class);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch(users.getHeaders().getETag());
+
+        //when
+        ResponseEntity<String> unchangedUsers = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users", HttpMethod.GET, new HttpEntity<>(headers), String.class);
+        testRestTemplate.exchange("http://localhost:" + port + "/api/users", HttpMethod.POST,
+                new HttpEntity<>(new CreateUserDto("Arnold", "Schwarzenegger")), UserDto.class);
+        ResponseEntity<String> changedUsers = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users", HttpMethod.GET, new HttpEntity<>(headers), String.class);
+
+        //then
+        assertEquals(HttpStatus.OK, users.getStatusCode());
+        assertEquals(HttpStatus.NOT_MODIFIED, unchangedUsers.getStatusCode());
+        assertEquals(HttpStatus.OK, changedUsers.getStatusCode());
+        assertNotEquals(users.getHeaders().getETag(), changedUsers.getHeaders().getETag());
+        assertTrue(changedUsers.getBody().contains("Schwarzenegger"));
+    }
+
+    //test for multi-get below
+    @Test
+    @Order(13)
+    @DisplayName("\"api/users?ids=\" endpoint retrieves requested users in the requested order, listing missing IDs")
+    public void shouldRetrieveUsersByIds() {
+        //when
+        ResponseEntity<UsersLookupDto> users = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users?ids=4,1,2,99", HttpMethod.GET, null, UsersLookupDto.class);
+
+        //then
+        assertEquals(HttpStatus.OK, users.getStatusCode());
+        assertEquals(List.of(new UserDto(4L, "Chuck", "Norris"), new UserDto(2L, "Anna", "Nowak")), users.getBody().getUsers());
+        assertEquals(List.of(1L, 99L), users.getBody().getMissingIds());
+    }
+
+    //test for type-ahead search below - of users written through the app (the ones inserted above may be inserted
+    //after the search index is built, so they may not be found)
+    @Test
+    @Order(14)
+    @DisplayName("\"api/users/search\" endpoint finds users by prefixes and substrings of their names, once the index is built")
+    public void shouldSearchUsers() throws InterruptedException {
+        //given
+        ResponseEntity<String> response = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users/search?q=x", HttpMethod.GET, null, String.class);
+        for (int i = 0; i < 100 && response.getStatusCode() == HttpStatus.SERVICE_UNAVAILABLE; i++) {
+            Thread.sleep(100);
+            response = testRestTemplate
+                    .exchange("http://localhost:" + port + "/api/users/search?q=x", HttpMethod.GET, null, String.class);
+        }
+
+        //when
+        List<UserDto> byPrefix = search("pudz");
+        List<UserDto> bySubstrings = search("zenegger ARN");
+        List<UserDto> deleted = search("jan nowak");
+
+        //then
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(List.of(new UserDto(5L, "Mariusz", "Pudzianowski")), byPrefix);
+        assertEquals(List.of(new UserDto(6L, "Arnold", "Schwarzenegger")), bySubstrings);
+        assertEquals(List.of(), deleted);
+    }
+
+    @Test
+    @Order(15)
+    @DisplayName("\"api/users-by-lastname\" endpoint finds users by misspelled last names in fuzzy mode")
+    public void shouldRetrieveUsersBySimilarLastName() {
+        //when
+        ResponseEntity<List<UserDto>> exact = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users-by-lastname?lastName=Nowack", HttpMethod.GET, null, new ParameterizedTypeReference<List<UserDto>>() {
+                });
+        ResponseEntity<List<UserDto>> fuzzy = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users-by-lastname?lastName=Nowack&fuzzy=true", HttpMethod.GET, null, new ParameterizedTypeReference<List<UserDto>>() {
+                });
+        ResponseEntity<List<UserDto>> renamed = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users-by-lastname?lastName=pudzianowsky&fuzzy=true", HttpMethod.GET, null, new ParameterizedTypeReference<List<UserDto>>() {
+                });
+
+        //then
+        assertEquals(List.of(), exact.getBody());
+        assertEquals(List.of(new UserDto("Anna", "Nowak")), fuzzy.getBody());
+        assertEquals(List.of(new UserDto("Mariusz", "Pudzianowski")), renamed.getBody());
+    }
+
+    private List<UserDto> search(String query) {
+        return testRestTemplate.exchange("http://localhost:" + port + "/api/users/search?q={q}", HttpMethod.GET, null,
+                new ParameterizedTypeReference<List<UserDto>>() {
+                }, query).getBody();
+    }
 }
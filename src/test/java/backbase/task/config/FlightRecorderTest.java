@@ -0,0 +1,114 @@
+package backbase.task.config;
+
+import backbase.task.dto.CreateUserDto;
+import backbase.task.dto.UserDto;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Java Flight Recorder events recorded while calling the API (on a database of its own, as it creates users)
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "app.datasource.jdbc-url=jdbc:h2:mem:flightrecorder;DB_CLOSE_DELAY=-1")
+public class FlightRecorderTest {
+
+    @Value(value = "${local.server.port}")
+    private int port;
+
+    @Autowired
+    private TestRestTemplate testRestTemplate;
+
+    @Test
+    @DisplayName("requests, service calls and statements are recorded with user IDs, last name keys and rows - also when they fail")
+    public void shouldRecordEvents(@TempDir Path directory) throws Exception {
+        //given
+        Path file = directory.resolve("users.jfr");
+        UserDto user;
+
+        //when
+        try (Recording recording = new Recording()) {
+            recording.enable(FlightRecorderEvents.REQUEST);
+            recording.enable(FlightRecorderEvents.SERVICE);
+            recording.enable(FlightRecorderEvents.STATEMENT);
+            recording.start();
+
+            user = testRestTemplate.postForObject("http://localhost:" + port + "/api/users", new CreateUserDto("Jan", "Nowak"), UserDto.class);
+            testRestTemplate.getForObject("http://localhost:" + port + "/api/users/" + user.getId(), String.class);
+            testRestTemplate.getForObject("http://localhost:" + port + "/api/users-by-lastname?lastName=NOWAK", String.class);
+            HttpHeaders headers = new HttpHeaders();
+            headers.setIfMatch("\"5\"");
+            testRestTemplate.exchange("http://localhost:" + port + "/api/users/" + user.getId(), HttpMethod.PUT,
+                    new HttpEntity<>(new CreateUserDto("Jan", "Kowalski"), headers), String.class);
+
+            recording.stop();
+            recording.dump(file);
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+
+        //then
+        RecordedEvent findById = only(events, FlightRecorderEvents.REQUEST, "handler", "findById");
+        assertEquals(user.getId(), findById.getLong("userId"));
+        assertEquals("nowak", findById.getString("lastNameKey"));
+        assertEquals(1, findById.getLong("rows"));
+        assertEquals(200, findById.getInt("status"));
+
+        RecordedEvent addUser = only(events, FlightRecorderEvents.REQUEST, "handler", "addUser");
+        assertEquals(user.getId(), addUser.getLong("userId"));
+        assertEquals(200, addUser.getInt("status"));
+        assertNull(addUser.getString("exception"));
+
+        //a version conflict, answered by the exception handler
+        RecordedEvent updateUser = only(events, FlightRecorderEvents.REQUEST, "handler", "updateUser");
+        assertEquals(user.getId(), updateUser.getLong("userId"));
+        assertEquals(412, updateUser.getInt("status"));
+        assertEquals(OptimisticLockingFailureException.class.getName(), updateUser.getString("exception"));
+        RecordedEvent update = only(events, FlightRecorderEvents.SERVICE, "method", "update");
+        assertEquals(OptimisticLockingFailureException.class.getName(), update.getString("exception"));
+
+        RecordedEvent findByLastName = only(events, FlightRecorderEvents.SERVICE, "method", "findByLastName");
+        assertEquals("nowak", findByLastName.getString("lastNameKey"));
+        assertEquals(1, findByLastName.getLong("rows"));
+        assertEquals(0, findByLastName.getLong("userId"));
+        assertTrue(findByLastName.getThread().getJavaName().startsWith("http-nio"));
+
+        List<RecordedEvent> byLastNameStatements = events.stream()
+                .filter(event -> event.getEventType().getName().equals(FlightRecorderEvents.STATEMENT))
+                .filter(event -> event.getString("sql").contains("last_name_key=lower(?)"))
+                .collect(Collectors.toList());
+        assertEquals(1, byLastNameStatements.size());
+        RecordedEvent statement = byLastNameStatements.get(0);
+        assertEquals(1, statement.getLong("rows"));
+        assertTrue(statement.getDuration("databaseTime").compareTo(statement.getDuration()) <= 0);
+        assertTrue(!statement.getStartTime().isBefore(findByLastName.getStartTime())
+                && !statement.getEndTime().isAfter(findByLastName.getEndTime()));
+    }
+
+    private static RecordedEvent only(List<RecordedEvent> events, String name, String field, String value) {
+        List<RecordedEvent> matching = events.stream()
+                .filter(event -> event.getEventType().getName().equals(name))
+                .filter(event -> value.equals(event.getString(field)))
+                .collect(Collectors.toList());
+        assertEquals(1, matching.size(), name + " " + value);
+        return matching.get(0);
+    }
+}
@@ -0,0 +1,82 @@
+package backbase.task.config;
+
+import backbase.task.dto.CreateUserDto;
+import backbase.task.dto.UserDto;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * meters of endpoints, service and repository methods, the connection pool and Hibernate
+ * (on a database of its own, as it creates users)
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "app.datasource.jdbc-url=jdbc:h2:mem:metrics;DB_CLOSE_DELAY=-1")
+public class MetricsTest {
+
+    @Value(value = "${local.server.port}")
+    private int port;
+
+    @Autowired
+    private TestRestTemplate testRestTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    @DisplayName("requests record timers with percentiles, rows, connection pool and Hibernate meters")
+    public void shouldRecordMeters() throws Exception {
+        //when
+        UserDto user = testRestTemplate.postForObject("http://localhost:" + port + "/api/users", new CreateUserDto("Jan", "Nowak"), UserDto.class);
+        testRestTemplate.getForObject("http://localhost:" + port + "/api/users/" + user.getId(), String.class);
+        testRestTemplate.getForObject("http://localhost:" + port + "/api/users", String.class);
+        testRestTemplate.getForObject("http://localhost:" + port + "/api/users-by-lastname?lastName=nowak", String.class);
+        ResponseEntity<String> percentiles = testRestTemplate
+                .getForEntity("http://localhost:" + port + "/actuator/metrics/users.service.percentile", String.class);
+
+        //then
+        Timer endpointTimer = awaitTimer("http.server.requests", "uri", "/api/users-by-lastname");
+        assertEquals(1, endpointTimer.count());
+        assertEquals(3, endpointTimer.takeSnapshot().percentileValues().length);
+
+        Timer serviceTimer = meterRegistry.get(MetricsConfig.SERVICE_TIMER).tag("method", "findAll").timer();
+        assertEquals(1, serviceTimer.count());
+        assertEquals(3, serviceTimer.takeSnapshot().percentileValues().length);
+        assertEquals(1, meterRegistry.get("spring.data.repository.invocations").tag("method", "findAllProjectedBy").timer().count());
+
+        assertEquals(1, meterRegistry.get(MetricsConfig.REPOSITORY_ROWS).tag("method", "findByLastNameIgnoreCase").summary().totalAmount());
+        assertEquals(1, meterRegistry.get(MetricsConfig.REPOSITORY_ROWS).tag("method", "findProjectedById").summary().totalAmount());
+
+        assertTrue(meterRegistry.get("hikaricp.connections.acquire").timer().count() > 0);
+        assertNotNull(meterRegistry.get("hikaricp.connections.active").gauge());
+
+        assertTrue(meterRegistry.get("hibernate.query.executions").functionCounter().count() > 0);
+        assertTrue(meterRegistry.get("hibernate.flushes").functionCounter().count() > 0);
+        assertNotNull(meterRegistry.get("hibernate.entities.loads").functionCounter());
+
+        assertEquals(HttpStatus.OK, percentiles.getStatusCode());
+    }
+
+    //request timers are recorded once the response has been sent, possibly just after the client has received it
+    private Timer awaitTimer(String name, String tagKey, String tagValue) throws InterruptedException {
+        for (int attempt = 0; attempt < 50; attempt++) {
+            Timer timer = meterRegistry.find(name).tag(tagKey, tagValue).timer();
+            if (timer != null && timer.count() > 0) {
+                return timer;
+            }
+            Thread.sleep(20);
+        }
+        return meterRegistry.get(name).tag(tagKey, tagValue).timer();
+    }
+}
@@ -0,0 +1,141 @@
+package backbase.task.config;
+
+import backbase.task.dto.CreateUserDto;
+import backbase.task.dto.PatchUserDto;
+import backbase.task.dto.UserDto;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.cache.CacheManager;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.web.client.RestTemplate;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * read/write split with two H2 databases standing in for the primary and its replica - the replica's data is kept
+ * different on purpose (as if it hadn't caught up with the primary yet), so it's visible which one served a request
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "app.datasource.jdbc-url=jdbc:h2:mem:primary;DB_CLOSE_DELAY=-1",
+        "app.datasource.replica.jdbc-url=jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1;INIT=create table if not exists users ("
+                + "id bigint auto_increment primary key, first_name varchar(255) not null, last_name varchar(255) not null, "
+                + "last_name_key varchar(50) generated always as (lower(last_name)), version bigint default 0 not null)"
+                + "\\\\;" + ShardingTest.WRITE_GENERATION_TABLE,
+        "app.read-your-writes.window=1s"
+})
+public class ReadWriteRoutingTest {
+
+    @Value(value = "${local.server.port}")
+    private int port;
+
+    @Autowired
+    private TestRestTemplate testRestTemplate;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    @Qualifier("appDataSource")
+    private DataSource primaryDataSource;
+
+    @Autowired
+    @Qualifier("replicaDataSource")
+    private DataSource replicaDataSource;
+
+    private JdbcTemplate primary;
+
+    private JdbcTemplate replica;
+
+    private long id;
+
+    @BeforeEach
+    void populateDatabases() {
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+        primary = new JdbcTemplate(primaryDataSource);
+        replica = new JdbcTemplate(replicaDataSource);
+
+        primary.execute("delete from users");
+        replica.execute("delete from users");
+        primary.execute("insert into users (first_name, last_name) values ('Jan', 'Nowak')");
+        id = primary.queryForObject("select max(id) from users", Long.class);
+        replica.update("insert into users (id, first_name, last_name) values (?, 'Jan', 'Kowalski')", id);
+    }
+
+    @Test
+    @DisplayName("read-only requests are served by the replica")
+    public void shouldReadFromReplica() {
+        //when
+        ResponseEntity<UserDto> user = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users/" + id, HttpMethod.GET, null, UserDto.class);
+        ResponseEntity<List<UserDto>> users = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users-by-lastname?lastName=Kowalski", HttpMethod.GET, null,
+                        new ParameterizedTypeReference<List<UserDto>>() {
+                        });
+
+        //then
+        assertEquals(new UserDto(id, "Jan", "Kowalski"), user.getBody());
+        assertEquals(List.of(new UserDto("Jan", "Kowalski")), users.getBody());
+    }
+
+    @Test
+    @DisplayName("writes go to the primary, and the writing client reads from it for a while")
+    public void shouldWriteToPrimaryAndReadOwnWrites() {
+        //when
+        ResponseEntity<UserDto> createdUser = testRestTemplate.exchange("http://localhost:" + port + "/api/users",
+                HttpMethod.POST, new HttpEntity<>(new CreateUserDto("Arnold", "Schwarzenegger")), UserDto.class);
+        long createdId = createdUser.getBody().getId();
+        String cookie = createdUser.getHeaders().getFirst(HttpHeaders.SET_COOKIE);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.COOKIE, cookie.substring(0, cookie.indexOf(';')));
+        ResponseEntity<UserDto> otherClientsRead = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users/" + createdId, HttpMethod.GET, null, UserDto.class);
+        ResponseEntity<UserDto> writingClientsRead = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users/" + createdId, HttpMethod.GET, new HttpEntity<>(headers), UserDto.class);
+
+        //then
+        assertEquals(1, primary.queryForObject("select count(*) from users where id = ?", Integer.class, createdId));
+        assertEquals(0, replica.queryForObject("select count(*) from users where id = ?", Integer.class, createdId));
+        assertNotNull(cookie);
+        assertEquals(HttpStatus.NOT_FOUND, otherClientsRead.getStatusCode());
+        assertEquals(new UserDto(createdId, "Arnold", "Schwarzenegger"), writingClientsRead.getBody());
+    }
+
+    @Test
+    @DisplayName("reads made within a writing request go to the primary, and users cached from the replica meanwhile are evicted once it catches up")
+    public void shouldReadWithinWritingRequestFromPrimary() throws Exception {
+        //given
+        RestTemplate patchRestTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(HttpClientBuilder.create().build()));
+
+        //when
+        UserDto patchedUser = patchRestTemplate.exchange("http://localhost:" + port + "/api/users/" + id,
+                HttpMethod.PATCH, new HttpEntity<>(new PatchUserDto("Janusz", null)), UserDto.class).getBody();
+        UserDto staleUser = testRestTemplate.getForObject("http://localhost:" + port + "/api/users/" + id, UserDto.class);
+        replica.update("update users set first_name = 'Janusz', last_name = 'Nowak' where id = ?", id);
+        Thread.sleep(1500);
+        UserDto replicatedUser = testRestTemplate.getForObject("http://localhost:" + port + "/api/users/" + id, UserDto.class);
+
+        //then
+        assertEquals(new UserDto(id, "Janusz", "Nowak"), patchedUser);
+        assertEquals(new UserDto(id, "Jan", "Kowalski"), staleUser);
+        assertEquals(new UserDto(id, "Janusz", "Nowak"), replicatedUser);
+    }
+}
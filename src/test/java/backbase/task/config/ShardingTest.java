@@ -0,0 +1,221 @@
+package backbase.task.config;
+
+import backbase.task.controller.HelperPageResponse;
+import backbase.task.db.UserShards;
+import backbase.task.dto.CreateUserDto;
+import backbase.task.dto.CursorPageDto;
+import backbase.task.dto.PatchUserDto;
+import backbase.task.dto.UserDto;
+import backbase.task.dto.UsersLookupDto;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.cache.CacheManager;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.web.client.RestTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * sharding with three H2 databases - the primary one (shard 0, with the ID sequence) and two further shards;
+ * IDs are allocated in small blocks, so that several blocks are used
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "app.datasource.jdbc-url=jdbc:h2:mem:shard0;DB_CLOSE_DELAY=-1;"
+                + "INIT=create table if not exists user_id_sequence (next_id bigint not null) as select 1",
+        "app.sharding.shards[0].jdbc-url=jdbc:h2:mem:shard1;DB_CLOSE_DELAY=-1;INIT=" + ShardingTest.USERS_TABLE
+                + "\\\\;" + ShardingTest.WRITE_GENERATION_TABLE,
+        "app.sharding.shards[1].jdbc-url=jdbc:h2:mem:shard2;DB_CLOSE_DELAY=-1;INIT=" + ShardingTest.USERS_TABLE
+                + "\\\\;" + ShardingTest.WRITE_GENERATION_TABLE,
+        "app.sharding.id-block-size=7"
+})
+public class ShardingTest {
+
+    static final String USERS_TABLE = "create table if not exists users (id bigint primary key, first_name varchar(255) not null, "
+            + "last_name varchar(255) not null, last_name_key varchar(50) generated always as (lower(last_name)), "
+            + "version bigint default 0 not null)";
+
+    //with all of its slots (see UsersWriteGeneration) - statements of INIT are separated by "\;" (escaped once more
+    //for the properties above)
+    static final String WRITE_GENERATION_TABLE = "create table if not exists users_write_generation (slot int primary key, "
+            + "generation bigint not null) as select x, 0 from system_range(0, 15)";
+
+    @Value(value = "${local.server.port}")
+    private int port;
+
+    @Autowired
+    private TestRestTemplate testRestTemplate;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private UserShards userShards;
+
+    @Autowired
+    @Qualifier("appDataSource")
+    private DataSource primaryDataSource;
+
+    @Autowired
+    private ShardRoutingDataSource shardRoutingDataSource;
+
+    private final List<JdbcTemplate> shards = new ArrayList<>();
+
+    @BeforeEach
+    void cleanShards() {
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+        shards.clear();
+        shards.add(new JdbcTemplate(primaryDataSource));
+        shardRoutingDataSource.getShards().forEach(shard -> shards.add(new JdbcTemplate(shard)));
+        shards.forEach(shard -> shard.execute("delete from users"));
+    }
+
+    @Test
+    @DisplayName("users created one by one and in batches get unique IDs and are spread over all shards")
+    public void shouldSpreadUsersOverShards() {
+        //when
+        List<UserDto> users = new ArrayList<>(createUsers(30));
+        for (int i = 0; i < 3; i++) {
+            users.add(testRestTemplate.postForObject("http://localhost:" + port + "/api/users",
+                    new CreateUserDto("Single" + i, "User"), UserDto.class));
+        }
+
+        //then
+        assertEquals(3, userShards.count());
+        assertEquals(33, users.stream().map(UserDto::getId).collect(Collectors.toSet()).size());
+        for (UserDto user : users) {
+            JdbcTemplate shard = shards.get(userShards.shardOf(user.getId()));
+            assertEquals(user.getFirstName(),
+                    shard.queryForObject("select first_name from users where id = ?", String.class, user.getId()));
+        }
+        for (JdbcTemplate shard : shards) {
+            assertTrue(shard.queryForObject("select count(*) from users", Integer.class) > 0);
+        }
+    }
+
+    @Test
+    @DisplayName("users are read, updated and deleted on their shards")
+    public void shouldReadAndWriteUsersOnTheirShards() {
+        //given
+        List<UserDto> users = createUsers(9);
+        RestTemplate patchRestTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(HttpClientBuilder.create().build()));
+        long patchedId = users.get(0).getId();
+        long updatedId = users.get(1).getId();
+        long deletedId = users.get(2).getId();
+
+        //when
+        List<UserDto> readUsers = users.stream()
+                .map(user -> testRestTemplate.getForObject("http://localhost:" + port + "/api/users/" + user.getId(), UserDto.class))
+                .collect(Collectors.toList());
+        UserDto patchedUser = patchRestTemplate.exchange("http://localhost:" + port + "/api/users/" + patchedId,
+                HttpMethod.PATCH, new HttpEntity<>(new PatchUserDto(null, "Patched")), UserDto.class).getBody();
+        testRestTemplate.put("http://localhost:" + port + "/api/users/" + updatedId, new CreateUserDto("Updated", "User"));
+        testRestTemplate.delete("http://localhost:" + port + "/api/users/" + deletedId);
+        ResponseEntity<UserDto> deletedUser = testRestTemplate
+                .getForEntity("http://localhost:" + port + "/api/users/" + deletedId, UserDto.class);
+        List<Long> lookedUpIds = users.stream().map(UserDto::getId).sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+        UsersLookupDto lookedUpUsers = testRestTemplate.postForObject("http://localhost:" + port + "/api/users/lookup",
+                lookedUpIds, UsersLookupDto.class);
+
+        //then
+        assertEquals(users, readUsers);
+        assertEquals(new UserDto(patchedId, users.get(0).getFirstName(), "Patched"), patchedUser);
+        assertEquals("Patched", shards.get(userShards.shardOf(patchedId))
+                .queryForObject("select last_name from users where id = ?", String.class, patchedId));
+        assertEquals("Updated", shards.get(userShards.shardOf(updatedId))
+                .queryForObject("select first_name from users where id = ?", String.class, updatedId));
+        assertEquals(HttpStatus.NOT_FOUND, deletedUser.getStatusCode());
+        assertEquals(lookedUpIds.stream().filter(id -> id != deletedId).collect(Collectors.toList()),
+                lookedUpUsers.getUsers().stream().map(UserDto::getId).collect(Collectors.toList()));
+        assertEquals(List.of(deletedId), lookedUpUsers.getMissingIds());
+        assertEquals(8, shards.stream().mapToInt(shard -> shard.queryForObject("select count(*) from users", Integer.class)).sum());
+    }
+
+    @Test
+    @DisplayName("listings, last name lookups and the export gather users from all shards in the right order")
+    public void shouldGatherUsersFromAllShards() {
+        //given
+        List<UserDto> users = createUsers(25);
+        List<Long> ids = users.stream().map(UserDto::getId).sorted().collect(Collectors.toList());
+
+        //when
+        List<Long> keysetIds = new ArrayList<>();
+        String cursor = "";
+        do {
+            CursorPageDto<UserDto> page = testRestTemplate.exchange("http://localhost:" + port + "/api/users?size=4&after=" + cursor,
+                    HttpMethod.GET, null, new ParameterizedTypeReference<CursorPageDto<UserDto>>() {
+                    }).getBody();
+            page.getContent().forEach(user -> keysetIds.add(user.getId()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+
+        HelperPageResponse<UserDto> secondPage = testRestTemplate.exchange(
+                "http://localhost:" + port + "/api/users?page=1&size=6&sort=firstName,desc", HttpMethod.GET, null,
+                new ParameterizedTypeReference<HelperPageResponse<UserDto>>() {
+                }).getBody();
+        List<UserDto> smiths = testRestTemplate.exchange("http://localhost:" + port + "/api/users-by-lastname?lastName=SMITH",
+                HttpMethod.GET, null, new ParameterizedTypeReference<List<UserDto>>() {
+                }).getBody();
+        List<String> smithsFirstNames = testRestTemplate.exchange(
+                "http://localhost:" + port + "/api/users-firstnames-by-lastname?lastName=smith", HttpMethod.GET, null,
+                new ParameterizedTypeReference<List<String>>() {
+                }).getBody();
+        String export = testRestTemplate.getForObject("http://localhost:" + port + "/api/users/export?format=csv", String.class);
+
+        //then
+        assertEquals(ids, keysetIds);
+
+        List<UserDto> byFirstNameDesc = users.stream()
+                .sorted(Comparator.comparing(UserDto::getFirstName).reversed().thenComparing(UserDto::getId))
+                .collect(Collectors.toList());
+        assertEquals(byFirstNameDesc.subList(6, 12), secondPage.getContent());
+        assertEquals(25, secondPage.getTotalElements());
+
+        List<UserDto> expectedSmiths = users.stream()
+                .filter(user -> user.getLastName().equals("Smith"))
+                .sorted(Comparator.comparing(UserDto::getId))
+                .map(user -> new UserDto(user.getFirstName(), user.getLastName()))
+                .collect(Collectors.toList());
+        assertEquals(expectedSmiths, smiths);
+        assertEquals(expectedSmiths.stream().map(UserDto::getFirstName).distinct().collect(Collectors.toList()), smithsFirstNames);
+        assertTrue(smithsFirstNames.size() < smiths.size());
+
+        List<Long> exportedIds = Arrays.stream(export.split("\n"))
+                .skip(1)
+                .map(line -> Long.parseLong(line.substring(0, line.indexOf(','))))
+                .collect(Collectors.toList());
+        assertEquals(ids, exportedIds);
+    }
+
+    //users with first names repeating every 4 users, every third one named Smith
+    private List<UserDto> createUsers(int count) {
+        List<CreateUserDto> newUsers = IntStream.range(0, count)
+                .mapToObj(i -> new CreateUserDto("Name" + (char) ('A' + i % 4), i % 3 == 0 ? "Smith" : "Doe" + i))
+                .collect(Collectors.toList());
+
+        return testRestTemplate.exchange("http://localhost:" + port + "/api/users/batch", HttpMethod.POST, new HttpEntity<>(newUsers),
+                new ParameterizedTypeReference<List<UserDto>>() {
+                }).getBody();
+    }
+}
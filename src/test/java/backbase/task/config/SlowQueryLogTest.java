@@ -0,0 +1,87 @@
+package backbase.task.config;
+
+import backbase.task.dto.CreateUserDto;
+import backbase.task.dto.UserDto;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * slow query log with every statement counted as slow (on a database of its own, as it creates users)
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "app.datasource.jdbc-url=jdbc:h2:mem:slowqueries;DB_CLOSE_DELAY=-1",
+        "app.slow-query-log.threshold=0ms"
+})
+public class SlowQueryLogTest {
+
+    @Value(value = "${local.server.port}")
+    private int port;
+
+    @Autowired
+    private TestRestTemplate testRestTemplate;
+
+    @Autowired
+    private SlowQueryLog slowQueryLog;
+
+    @Test
+    @DisplayName("statements are ranked with their executions and rows, and served by the actuator")
+    public void shouldRankStatements() {
+        //given
+        List<CreateUserDto> newUsers = IntStream.range(0, 5)
+                .mapToObj(i -> new CreateUserDto("Jan" + i, "Kowalski"))
+                .collect(Collectors.toList());
+
+        //when
+        testRestTemplate.postForObject("http://localhost:" + port + "/api/users/batch", new HttpEntity<>(newUsers), String.class);
+        testRestTemplate.getForObject("http://localhost:" + port + "/api/users-by-lastname?lastName=kowalski", String.class);
+        testRestTemplate.getForObject("http://localhost:" + port + "/api/users-by-lastname?lastName=nowak", String.class);
+        ResponseEntity<String> endpoint = testRestTemplate.getForEntity("http://localhost:" + port + "/actuator/slowqueries", String.class);
+
+        //then
+        List<SlowQueryLog.StatementSummary> statements = slowQueryLog.statements();
+        SlowQueryLog.StatementSummary byLastName = statements.stream()
+                .filter(statement -> statement.getStatement().contains("last_name_key=lower(?)"))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(2, byLastName.getExecutions());
+        assertEquals(5, byLastName.getRows());
+        assertTrue(byLastName.getTotalMillis() >= byLastName.getMaxMillis());
+
+        SlowQueryLog.StatementSummary inserts = statements.stream()
+                .filter(statement -> statement.getStatement().startsWith("insert into users ("))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(5, inserts.getRows());
+
+        assertEquals(HttpStatus.OK, endpoint.getStatusCode());
+        assertTrue(endpoint.getBody().contains("last_name_key=lower(?)"));
+    }
+
+    @Test
+    @DisplayName("statements differing only in literals or lengths of IN lists are normalized to one")
+    public void shouldNormalizeStatements() {
+        //when
+        String first = SlowQueryLog.normalize("select * from users where id in (?, ?, ?) and last_name = 'O''Brien'");
+        String second = SlowQueryLog.normalize(" select *  from users\n where id in (?) and last_name = 'Smith' ");
+        String numbers = SlowQueryLog.normalize("select * from users limit 10 offset 20");
+
+        //then
+        assertEquals("select * from users where id in (?) and last_name = ?", first);
+        assertEquals(first, second);
+        assertEquals("select * from users limit ? offset ?", numbers);
+    }
+}
@@ -0,0 +1,223 @@
+package backbase.task.config;
+
+import backbase.task.MainApplication;
+import backbase.task.db.UsersRepository;
+import backbase.task.entity.User;
+import com.zaxxer.hikari.HikariDataSource;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.servlet.Filter;
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * compares serving requests on Tomcat's platform threads with virtual threads (app.virtual-threads.enabled) - many
+ * concurrent clients request cached users by ID (no database) and keyset pages (from a database made to take
+ * STATEMENT_LATENCY per statement, like a remote one) of an app with TOMCAT_THREADS threads and POOL_SIZE connections;
+ * prints how many requests were handled at once and the latencies of both kinds of requests in both modes -
+ * run with "gradle benchmark" on Java 21+ (skipped on older runtimes)
+ */
+@Tag("benchmark")
+class VirtualThreadsBenchmark {
+
+    private static final int CLIENTS = 200;
+    private static final int TOMCAT_THREADS = 20;
+    private static final int POOL_SIZE = 10;
+    private static final Duration STATEMENT_LATENCY = Duration.ofMillis(20);
+    private static final Duration WARMUP = Duration.ofSeconds(5);
+    private static final Duration DURATION = Duration.ofSeconds(15);
+    private static final int USERS = 1_000;
+    private static final int CACHED_USERS = 100;
+
+    private final HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    @Test
+    @DisplayName("Virtual threads vs platform threads - concurrency and tail latency")
+    void compareModes() throws Exception {
+        assumeTrue(Runtime.version().feature() >= 21, "virtual threads need Java 21+, running on " + Runtime.version());
+
+        final Result platformThreads = run(false);
+        final Result virtualThreads = run(true);
+
+        System.out.printf("%-16s %11s %9s %16s %16s %16s %16s%n", "mode", "concurrency", "req/s",
+                "cached p50 ms", "cached p99 ms", "database p50 ms", "database p99 ms");
+        platformThreads.print("platform threads");
+        virtualThreads.print("virtual threads");
+        assertTrue(platformThreads.maxConcurrency <= TOMCAT_THREADS);
+        assertTrue(virtualThreads.maxConcurrency > TOMCAT_THREADS);
+    }
+
+    private Result run(boolean virtualThreads) throws Exception {
+        final String jdbcUrl = "jdbc:h2:mem:virtualthreads-" + virtualThreads + ";DB_CLOSE_DELAY=-1";
+        final AtomicInteger concurrency = new AtomicInteger();
+        final AtomicInteger maxConcurrency = new AtomicInteger();
+
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(MainApplication.class)
+                .initializers(slowDatabase(jdbcUrl), concurrencyFilter(concurrency, maxConcurrency))
+                .run("--server.port=0",
+                        "--app.datasource.jdbc-url=" + jdbcUrl,
+                        "--app.datasource.maximum-pool-size=" + POOL_SIZE,
+                        "--server.tomcat.threads.max=" + TOMCAT_THREADS,
+                        "--app.virtual-threads.enabled=" + virtualThreads,
+                        "--app.slow-query-log.threshold=10s")) {
+            final String url = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+            final List<Long> ids = context.getBean(UsersRepository.class).insertAll(IntStream.range(0, USERS)
+                    .mapToObj(i -> new User("First" + i, "Last" + i))
+                    .collect(Collectors.toList()));
+            final List<Long> cachedIds = ids.subList(0, CACHED_USERS);
+            for (long id : cachedIds) {
+                send(url + "/api/users/" + id);
+            }
+
+            final Result result = new Result();
+            load(url, cachedIds, WARMUP, new Result());
+            maxConcurrency.set(0);
+            load(url, cachedIds, DURATION, result);
+            result.maxConcurrency = maxConcurrency.get();
+            return result;
+        }
+    }
+
+    //every client alternates a cached user and a page from the database, as fast as it can
+    private void load(String url, List<Long> cachedIds, Duration duration, Result result) throws InterruptedException {
+        final ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        final long end = System.nanoTime() + duration.toNanos();
+        for (int client = 0; client < CLIENTS; client++) {
+            clients.execute(() -> {
+                while (System.nanoTime() < end) {
+                    result.cached.recordValue(send(url + "/api/users/" + cachedIds.get(ThreadLocalRandom.current().nextInt(cachedIds.size()))));
+                    result.database.recordValue(send(url + "/api/users?size=20&after="));
+                }
+            });
+        }
+        clients.shutdown();
+        clients.awaitTermination(duration.toSeconds() + 60, TimeUnit.SECONDS);
+        result.seconds = duration.toSeconds();
+    }
+
+    //latency in microseconds
+    private long send(String url) {
+        final long start = System.nanoTime();
+        try {
+            httpClient.send(HttpRequest.newBuilder(URI.create(url)).build(), HttpResponse.BodyHandlers.discarding());
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        return Math.max(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start), 1);
+    }
+
+    //the primary pool's connections, made to take STATEMENT_LATENCY longer per statement
+    private static ApplicationContextInitializer<GenericApplicationContext> slowDatabase(String jdbcUrl) {
+        final JdbcDataSource database = new JdbcDataSource();
+        database.setURL(jdbcUrl);
+        final DataSource slowDatabase = new DelegatingDataSource(database) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                return slow(super.getConnection());
+            }
+
+            @Override
+            public Connection getConnection(String username, String password) throws SQLException {
+                return slow(super.getConnection(username, password));
+            }
+        };
+
+        return context -> context.getBeanFactory().addBeanPostProcessor(new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if ("appDataSource".equals(beanName)) {
+                    ((HikariDataSource) bean).setDataSource(slowDatabase);
+                }
+                return bean;
+            }
+        });
+    }
+
+    private static ApplicationContextInitializer<GenericApplicationContext> concurrencyFilter(AtomicInteger concurrency,
+                                                                                            AtomicInteger maxConcurrency) {
+        return context -> context.registerBean("concurrencyFilter", Filter.class, () -> (request, response, chain) -> {
+            maxConcurrency.accumulateAndGet(concurrency.incrementAndGet(), Math::max);
+            try {
+                chain.doFilter(request, response);
+            } finally {
+                concurrency.decrementAndGet();
+            }
+        });
+    }
+
+    private static Connection slow(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(VirtualThreadsBenchmark.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    final Object result = invoke(connection, method, args);
+                    return result instanceof Statement ? slow((Statement) result, method.getReturnType()) : result;
+                });
+    }
+
+    private static Object slow(Statement statement, Class<?> type) {
+        return Proxy.newProxyInstance(VirtualThreadsBenchmark.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    if (method.getName().startsWith("execute")) {
+                        Thread.sleep(STATEMENT_LATENCY.toMillis());
+                    }
+                    return invoke(statement, method, args);
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    private static final class Result {
+
+        private final Histogram cached = new ConcurrentHistogram(3);
+
+        private final Histogram database = new ConcurrentHistogram(3);
+
+        private int maxConcurrency;
+
+        private long seconds;
+
+        private void print(String mode) {
+            System.out.printf("%-16s %11d %9.1f %16.2f %16.2f %16.2f %16.2f%n", mode, maxConcurrency,
+                    (cached.getTotalCount() + database.getTotalCount()) / (double) seconds,
+                    cached.getValueAtPercentile(50) / 1000.0, cached.getValueAtPercentile(99) / 1000.0,
+                    database.getValueAtPercentile(50) / 1000.0, database.getValueAtPercentile(99) / 1000.0);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package backbase.task.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * connection pools guarded for virtual threads, and creating virtual threads on (or refusing them before) Java 21
+ */
+public class VirtualThreadsTest {
+
+    private HikariDataSource pool;
+
+    @BeforeEach
+    void createPool() {
+        pool = new HikariDataSource();
+        pool.setJdbcUrl("jdbc:h2:mem:virtualthreads;DB_CLOSE_DELAY=-1");
+        pool.setMaximumPoolSize(2);
+        pool.setConnectionTimeout(250);
+    }
+
+    @AfterEach
+    void closePool() {
+        pool.close();
+    }
+
+    @Test
+    @DisplayName("no more threads than the pool has connections hold them at once, the others wait for their turn")
+    public void shouldLimitConnectionsToPoolSize() throws Exception {
+        //given
+        ConnectionLimitingDataSource dataSource = (ConnectionLimitingDataSource) ConnectionLimitingDataSource.of(pool);
+        AtomicInteger held = new AtomicInteger();
+        AtomicInteger maxHeld = new AtomicInteger();
+        ExecutorService threads = Executors.newFixedThreadPool(16);
+
+        //when
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            results.add(threads.submit(() -> {
+                try (Connection connection = dataSource.getConnection()) {
+                    maxHeld.accumulateAndGet(held.incrementAndGet(), Math::max);
+                    connection.createStatement().execute("select 1");
+                    Thread.sleep(10);
+                    held.decrementAndGet();
+                }
+                return null;
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get(10, TimeUnit.SECONDS);
+        }
+        threads.shutdown();
+
+        //then
+        assertEquals(2, maxHeld.get());
+        assertEquals(2, dataSource.availablePermits());
+    }
+
+    @Test
+    @DisplayName("a thread waits no longer than the pool's connection timeout, and closing a connection twice frees it once")
+    public void shouldTimeOutAndReleaseOnce() throws Exception {
+        //given
+        ConnectionLimitingDataSource dataSource = (ConnectionLimitingDataSource) ConnectionLimitingDataSource.of(pool);
+        Connection first = dataSource.getConnection();
+        Connection second = dataSource.getConnection();
+
+        //when
+        long start = System.nanoTime();
+        assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+        long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        first.close();
+        first.close();
+
+        //then
+        assertTrue(waitedMillis >= 200, "waited " + waitedMillis + " ms");
+        assertEquals(1, dataSource.availablePermits());
+        second.close();
+        assertEquals(2, dataSource.availablePermits());
+    }
+
+    @Test
+    @DisplayName("virtual threads are created on Java 21+, and refused with a clear error before")
+    public void shouldCreateVirtualThreadsOnlyOnJava21() throws Exception {
+        if (Runtime.version().feature() < 21) {
+            //then
+            IllegalStateException exception = assertThrows(IllegalStateException.class, VirtualThreadsConfig::newVirtualThreadPerTaskExecutor);
+            assertTrue(exception.getMessage().contains("Java 21"));
+            return;
+        }
+
+        //when
+        ExecutorService executor = VirtualThreadsConfig.newVirtualThreadPerTaskExecutor();
+        Object virtual = executor.submit(() -> Thread.class.getMethod("isVirtual").invoke(Thread.currentThread())).get();
+        executor.shutdown();
+
+        //then
+        assertEquals(Boolean.TRUE, virtual);
+    }
+}
@@ -0,0 +1,186 @@
+package backbase.task.controller;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * latencies (HdrHistogram, in microseconds) and errors of a load test run per endpoint - printed, written as
+ * percentile distributions (.hgrm files, which can be plotted with HdrHistogram's plotter) and as properties
+ * compared with the baseline
+ */
+final class LoadTestReport {
+
+    static final String ALL = "all";
+
+    private static final double[] PERCENTILES = {50, 99, 99.9};
+
+    private static final String[] PERCENTILE_KEYS = {"p50", "p99", "p99.9"};
+
+    //a percentile is compared with the baseline only when at least that many latencies are above it - otherwise it's
+    //about as noisy as the maximum (e.g. p99 of fewer than 1000 requests)
+    private static final int MIN_SAMPLES_ABOVE_PERCENTILE = 10;
+
+    //latencies lower than that don't count as regressions, whatever the tolerance (timer and scheduling noise)
+    private static final double MIN_REGRESSION_MS = 1;
+
+    private final Map<String, String> configuration;
+
+    private final Map<String, Histogram> latencies = new LinkedHashMap<>();
+
+    private final Map<String, LongAdder> errors = new LinkedHashMap<>();
+
+    private long elapsedNanos;
+
+    /**
+     * @param configuration settings of the run - a baseline is only compared with runs of the same settings
+     * @param endpoints endpoints of the run
+     */
+    LoadTestReport(Map<String, String> configuration, List<String> endpoints) {
+        this.configuration = configuration;
+        for (String endpoint : endpoints) {
+            latencies.put(endpoint, new ConcurrentHistogram(3));
+            errors.put(endpoint, new LongAdder());
+        }
+        latencies.put(ALL, new ConcurrentHistogram(3));
+        errors.put(ALL, new LongAdder());
+    }
+
+    void record(String endpoint, long latencyNanos, boolean successful) {
+        final long latencyMicros = Math.max(TimeUnit.NANOSECONDS.toMicros(latencyNanos), 1);
+        latencies.get(endpoint).recordValue(latencyMicros);
+        latencies.get(ALL).recordValue(latencyMicros);
+        if (!successful) {
+            errors.get(endpoint).increment();
+            errors.get(ALL).increment();
+        }
+    }
+
+    //from the first request being due until the last response
+    void finish(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    long errors() {
+        return errors.get(ALL).sum();
+    }
+
+    void print(PrintStream out) {
+        out.printf("%-14s %9s %7s %9s %9s %9s %9s %9s%n", "endpoint", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        latencies.forEach((endpoint, histogram) -> out.printf("%-14s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f%n",
+                endpoint, histogram.getTotalCount(), errors.get(endpoint).sum(), throughput(histogram),
+                millis(histogram, PERCENTILES[0]), millis(histogram, PERCENTILES[1]), millis(histogram, PERCENTILES[2]),
+                histogram.getMaxValue() / 1000.0));
+    }
+
+    //<endpoint>.hgrm percentile distributions and results.properties (which can be copied as the baseline)
+    void write(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        for (Map.Entry<String, Histogram> latency : latencies.entrySet()) {
+            try (PrintStream out = new PrintStream(Files.newOutputStream(directory.resolve(latency.getKey() + ".hgrm")))) {
+                latency.getValue().outputPercentileDistribution(out, 1000.0);
+            }
+        }
+        store(results(), directory.resolve("results.properties"));
+    }
+
+    Properties results() {
+        final Properties results = new Properties();
+        configuration.forEach(results::setProperty);
+        latencies.forEach((endpoint, histogram) -> {
+            results.setProperty(endpoint + ".requests", String.valueOf(histogram.getTotalCount()));
+            results.setProperty(endpoint + ".errors", String.valueOf(errors.get(endpoint).sum()));
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                results.setProperty(endpoint + "." + PERCENTILE_KEYS[i], format(millis(histogram, PERCENTILES[i])));
+            }
+        });
+        results.setProperty(ALL + ".throughput", format(throughput(latencies.get(ALL))));
+        return results;
+    }
+
+    /**
+     * @return regressions of these results from the given baseline - percentiles (in milliseconds) higher, or throughput
+     * lower than the baseline's by more than the tolerance (e.g. 0.5 for 50%), empty if the baseline is of other settings;
+     * percentiles of too few requests aren't compared (longer runs or higher rates compare more of them)
+     */
+    List<String> regressionsFrom(Properties baseline, double tolerance, PrintStream out) {
+        final List<String> regressions = new ArrayList<>();
+        for (String setting : configuration.keySet()) {
+            if (!configuration.get(setting).equals(baseline.getProperty(setting))) {
+                out.printf("Baseline isn't comparable - its %s is %s, not %s%n", setting, baseline.getProperty(setting),
+                        configuration.get(setting));
+                return regressions;
+            }
+        }
+
+        final Properties results = results();
+        for (Map.Entry<String, Histogram> latency : latencies.entrySet()) {
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                final String key = latency.getKey() + "." + PERCENTILE_KEYS[i];
+                final double samplesAbove = latency.getValue().getTotalCount() * (100 - PERCENTILES[i]) / 100;
+                if (baseline.getProperty(key) == null || samplesAbove < MIN_SAMPLES_ABOVE_PERCENTILE) {
+                    continue;
+                }
+                final double expected = Double.parseDouble(baseline.getProperty(key));
+                final double actual = Double.parseDouble(results.getProperty(key));
+                if (actual > expected * (1 + tolerance) && actual - expected > MIN_REGRESSION_MS) {
+                    regressions.add(String.format("%s: %s ms (baseline %s ms)", key, format(actual), format(expected)));
+                }
+            }
+        }
+
+        final String throughputKey = ALL + ".throughput";
+        if (baseline.getProperty(throughputKey) != null) {
+            final double expected = Double.parseDouble(baseline.getProperty(throughputKey));
+            final double actual = Double.parseDouble(results.getProperty(throughputKey));
+            if (actual < expected * (1 - tolerance)) {
+                regressions.add(String.format("%s: %s req/s (baseline %s req/s)", throughputKey, format(actual), format(expected)));
+            }
+        }
+        return regressions;
+    }
+
+    static Properties load(Path file) throws IOException {
+        final Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file)) {
+            properties.load(reader);
+        }
+        return properties;
+    }
+
+    //sorted and without a timestamp, so that a committed baseline only changes where the results do
+    static void store(Properties properties, Path file) throws IOException {
+        final List<String> lines = new ArrayList<>();
+        lines.add("# load test results - gradle loadTest -PloadTest.updateBaseline=true makes them the baseline");
+        properties.stringPropertyNames()
+                .stream()
+                .sorted()
+                .forEach(key -> lines.add(key + "=" + properties.getProperty(key)));
+        Files.write(file, lines);
+    }
+
+    private double throughput(Histogram histogram) {
+        return elapsedNanos == 0 ? 0 : histogram.getTotalCount() * 1e9 / elapsedNanos;
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+}
@@ -1,8 +1,11 @@
 package backbase.task.controller;
 
 import backbase.task.dto.CreateUserDto;
+import backbase.task.dto.CursorPageDto;
 import backbase.task.dto.PatchUserDto;
+import backbase.task.dto.SliceDto;
 import backbase.task.dto.UserDto;
+import backbase.task.dto.UsersLookupDto;
 import backbase.task.entity.User;
 import backbase.task.service.UsersService;
 import org.apache.http.client.HttpClient;
@@ -17,9 +20,13 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -28,9 +35,16 @@ import org.springframework.web.client.RestTemplate;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
@@ -66,15 +80,21 @@ public class UsersControllerTest {
 
     @BeforeEach
     public void mockingUsersService() {
-        when(usersService.findByLastName("Nowak")).thenReturn(List.of(user1, user2));
-        when(usersService.findByLastName("Lee")).thenReturn(List.of(user3));
-        when(usersService.findByLastName("Norris")).thenReturn(List.of(user4));
-        when(usersService.findAll(Mockito.any(Pageable.class))).thenReturn(new PageImpl<User>(List.of(user1, user2, user3, user4)));
-        when(usersService.findById(1L)).thenReturn(Optional.of(user1));
-        when(usersService.findById(3L)).thenReturn(Optional.of(user3));
+        when(usersService.findByLastName("Nowak")).thenReturn(List.of(userDTO1, userDTO2));
+        when(usersService.findByLastName("Lee")).thenReturn(List.of(userDTO3));
+        when(usersService.findByLastName("Norris")).thenReturn(List.of(userDTO4));
+        when(usersService.findFirstNamesByLastName("Nowak")).thenReturn(List.of("Jan", "Anna"));
+        when(usersService.findFirstNamesByLastName("Lee")).thenReturn(List.of("Bruce"));
+        when(usersService.findFirstNamesByLastName("Norris")).thenReturn(List.of("Chuck"));
+        when(usersService.findAll(Mockito.any(Pageable.class))).thenReturn(new PageImpl<UserDto>(List.of(userDTO1id, userDTO2id, userDTO3id, userDTO4id)));
+        when(usersService.findById(1L)).thenReturn(Optional.of(userDTO1id));
+        when(usersService.findById(3L)).thenReturn(Optional.of(userDTO3id));
+        when(usersService.deleteById(1L)).thenReturn(true);
+        when(usersService.writeGeneration()).thenReturn("e1.7");
+        when(usersService.searchVersion()).thenReturn("i1.3");
     }
 
-    //test for endpoint api/users below (GET method)
+    //3 tests for endpoint api/users below (GET method)
     @Test
     @DisplayName("\"api/users\" endpoint retrieves all users")
     public void shouldRetrieveAllUsers() {
@@ -86,9 +106,100 @@ public class UsersControllerTest {
         //then
         assertEquals(HttpStatus.OK, users.getStatusCode());
         assertEquals(List.of(userDTO1id, userDTO2id, userDTO3id, userDTO4id), users.getBody().getContent());
+        assertEquals("\"e1.7\"", users.getHeaders().getETag());
     }
 
-    //2 tests for endpoint api/users/{id} below (GET method)
+    @Test
+    @DisplayName("\"api/users\" endpoint answers with 304 without listing users when no user has changed since the ETag in If-None-Match")
+    public void shouldNotRetrieveAllUsersWhenNotModified() {
+        //when
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch("\"e1.7\"");
+        ResponseEntity<String> users = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users", HttpMethod.GET, new HttpEntity<>(headers), String.class);
+
+        //then
+        assertEquals(HttpStatus.NOT_MODIFIED, users.getStatusCode());
+        assertEquals("\"e1.7\"", users.getHeaders().getETag());
+        assertNull(users.getBody());
+        verify(usersService, never()).findAll(Mockito.any(Pageable.class));
+    }
+
+    @Test
+    @DisplayName("\"api/users\" endpoint retrieves all users when some user has changed since the ETag in If-None-Match")
+    public void shouldRetrieveAllUsersWhenModified() {
+        //when
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch("\"e1.6\"");
+        ResponseEntity<HelperPageResponse<UserDto>> users = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users", HttpMethod.GET, new HttpEntity<>(headers), new ParameterizedTypeReference<HelperPageResponse<UserDto>>() {
+                });
+
+        //then
+        assertEquals(HttpStatus.OK, users.getStatusCode());
+        assertEquals(4, users.getBody().getContent().size());
+    }
+
+    //test for endpoint api/users?count=false below (GET method)
+    @Test
+    @DisplayName("\"api/users?count=false\" endpoint retrieves a slice of users without counting all of them")
+    public void shouldRetrieveUsersSliceWithoutCount() {
+        //given
+        when(usersService.findAllSlice(Mockito.any(Pageable.class))).thenReturn(new SliceImpl<>(List.of(userDTO1id, userDTO2id), PageRequest.of(0, 2), true));
+        when(usersService.approximateCount()).thenReturn(OptionalLong.of(4L));
+
+        //when
+        ResponseEntity<SliceDto<UserDto>> users = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users?count=false&size=2", HttpMethod.GET, null, new ParameterizedTypeReference<SliceDto<UserDto>>() {
+                });
+
+        //then
+        assertEquals(HttpStatus.OK, users.getStatusCode());
+        assertEquals(new SliceDto<>(List.of(userDTO1id, userDTO2id), 0, 2, true, 4L), users.getBody());
+        verify(usersService, never()).findAll(Mockito.any(Pageable.class));
+    }
+
+    //2 tests for endpoint api/users?after={cursor} below (GET method)
+    @Test
+    @DisplayName("\"api/users?after={cursor}\" endpoint retrieves consecutive keyset pages")
+    public void shouldRetrieveUsersPageAfterCursor() {
+        //given
+        when(usersService.findAllAfter(0L, 2)).thenReturn(new SliceImpl<>(List.of(userDTO1id, userDTO2id), PageRequest.of(0, 2), true));
+        when(usersService.findAllAfter(2L, 2)).thenReturn(new SliceImpl<>(List.of(userDTO3id, userDTO4id), PageRequest.of(0, 2), false));
+
+        //when
+        ResponseEntity<CursorPageDto<UserDto>> firstPage = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users?after=&size=2", HttpMethod.GET, null, new ParameterizedTypeReference<CursorPageDto<UserDto>>() {
+                });
+
+        //then
+        assertEquals(HttpStatus.OK, firstPage.getStatusCode());
+        assertEquals(List.of(userDTO1id, userDTO2id), firstPage.getBody().getContent());
+        assertNotNull(firstPage.getBody().getNextCursor());
+
+        //when
+        ResponseEntity<CursorPageDto<UserDto>> secondPage = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users?after=" + firstPage.getBody().getNextCursor() + "&size=2", HttpMethod.GET, null, new ParameterizedTypeReference<CursorPageDto<UserDto>>() {
+                });
+
+        //then
+        assertEquals(HttpStatus.OK, secondPage.getStatusCode());
+        assertEquals(List.of(userDTO3id, userDTO4id), secondPage.getBody().getContent());
+        assertNull(secondPage.getBody().getNextCursor());
+    }
+
+    @Test
+    @DisplayName("\"api/users?after={cursor}\" endpoint properly handles malformed cursor")
+    public void findAllAfterShouldProperlyHandleMalformedCursor() {
+        //when
+        ResponseEntity<Object> users = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users?after=not-a-cursor", HttpMethod.GET, null, Object.class);
+
+        //then
+        assertEquals(HttpStatus.BAD_REQUEST, users.getStatusCode());
+    }
+
+    //4 tests for endpoint api/users/{id} below (GET method)
     @Test
     @DisplayName("\"api/users/{id}\" endpoint retrieves a correct user for an existing id")
     public void shouldRetrieveUserById() {
@@ -121,7 +232,117 @@ public class UsersControllerTest {
         assertEquals(HttpStatus.NOT_FOUND, users.getStatusCode());
     }
 
-    //4 test for endpoint api/users-by-lastname below (GET method)
+    @Test
+    @DisplayName("\"api/users/{id}\" endpoint returns user's version as its ETag")
+    public void findByIdShouldReturnETag() {
+        //given
+        when(usersService.findById(2L)).thenReturn(Optional.of(new UserDto(2L, "Anna", "Nowak", 6L)));
+
+        //when
+        ResponseEntity<UserDto> user = testRestTemplate.exchange(
+                "http://localhost:" + port + "/api/users/2", HttpMethod.GET, null, UserDto.class);
+
+        //then
+        assertEquals(HttpStatus.OK, user.getStatusCode());
+        assertEquals("\"6\"", user.getHeaders().getETag());
+        assertEquals(userDTO2id, user.getBody());
+    }
+
+    @Test
+    @DisplayName("\"api/users/{id}\" endpoint answers with 304 without the user when its ETag is in If-None-Match")
+    public void findByIdShouldNotReturnUnmodifiedUser() {
+        //given
+        when(usersService.findById(2L)).thenReturn(Optional.of(new UserDto(2L, "Anna", "Nowak", 6L)));
+
+        //when
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch("\"6\"");
+        ResponseEntity<String> user = testRestTemplate.exchange(
+                "http://localhost:" + port + "/api/users/2", HttpMethod.GET, new HttpEntity<>(headers), String.class);
+
+        //then
+        assertEquals(HttpStatus.NOT_MODIFIED, user.getStatusCode());
+        assertNull(user.getBody());
+    }
+
+    //4 tests for endpoints api/users?ids={ids} (GET method) and api/users/lookup (POST method) below
+    @Test
+    @DisplayName("\"api/users?ids=\" endpoint retrieves requested users in the requested order, listing missing IDs")
+    public void shouldRetrieveUsersByIds() {
+        //given
+        when(usersService.findAllById(List.of(3L, 9L, 1L))).thenReturn(List.of(userDTO3id, userDTO1id));
+
+        //when
+        ResponseEntity<UsersLookupDto> users = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users?ids=3,9,1,3", HttpMethod.GET, null, UsersLookupDto.class);
+
+        //then
+        assertEquals(HttpStatus.OK, users.getStatusCode());
+        assertEquals(new UsersLookupDto(List.of(userDTO3id, userDTO1id), List.of(9L)), users.getBody());
+        assertEquals("\"e1.7\"", users.getHeaders().getETag());
+    }
+
+    @Test
+    @DisplayName("\"api/users/lookup\" endpoint retrieves requested users in the requested order, listing missing IDs")
+    public void shouldLookUpUsersByIds() {
+        //given
+        when(usersService.findAllById(List.of(4L, 2L, 5L))).thenReturn(List.of(userDTO4id, userDTO2id));
+
+        //when
+        ResponseEntity<UsersLookupDto> users = testRestTemplate.exchange("http://localhost:" + port + "/api/users/lookup",
+                HttpMethod.POST, new HttpEntity<>(List.of(4L, 2L, 5L)), UsersLookupDto.class);
+
+        //then
+        assertEquals(HttpStatus.OK, users.getStatusCode());
+        assertEquals(new UsersLookupDto(List.of(userDTO4id, userDTO2id), List.of(5L)), users.getBody());
+    }
+
+    @Test
+    @DisplayName("\"api/users?ids=\" endpoint properly handles empty, malformed and too many IDs")
+    public void shouldNotRetrieveUsersByInvalidIds() {
+        //when
+        List<Long> tooManyIds = LongStream.rangeClosed(1, 1001).boxed().collect(Collectors.toList());
+        ResponseEntity<String> noIds = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users?ids=", HttpMethod.GET, null, String.class);
+        ResponseEntity<String> emptyId = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users?ids=1,,2", HttpMethod.GET, null, String.class);
+        ResponseEntity<String> malformedId = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users?ids=1,x", HttpMethod.GET, null, String.class);
+        ResponseEntity<String> tooMany = testRestTemplate.exchange("http://localhost:" + port + "/api/users/lookup",
+                HttpMethod.POST, new HttpEntity<>(tooManyIds), String.class);
+
+        //then
+        assertEquals(HttpStatus.BAD_REQUEST, noIds.getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, emptyId.getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, malformedId.getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, tooMany.getStatusCode());
+        verify(usersService, never()).findAllById(Mockito.anyList());
+    }
+
+    @Test
+    @DisplayName("\"api/users?ids=\" endpoint can't be paged with a cursor, and ignores count=false")
+    public void shouldMapCombinedListingParametersToOneHandler() {
+        //given
+        when(usersService.findAllById(List.of(1L))).thenReturn(List.of(userDTO1id));
+
+        //when
+        ResponseEntity<String> withCursor = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users?ids=1,2&after=" + KeysetCursor.encode(1L), HttpMethod.GET, null, String.class);
+        ResponseEntity<String> countFreeWithCursor = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users?count=false&ids=1&after=" + KeysetCursor.encode(1L), HttpMethod.GET, null, String.class);
+        ResponseEntity<UsersLookupDto> countFree = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users?count=false&ids=1", HttpMethod.GET, null, UsersLookupDto.class);
+
+        //then
+        assertEquals(HttpStatus.BAD_REQUEST, withCursor.getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, countFreeWithCursor.getStatusCode());
+        assertEquals(HttpStatus.OK, countFree.getStatusCode());
+        assertEquals(new UsersLookupDto(List.of(userDTO1id), List.of()), countFree.getBody());
+        verify(usersService, never()).findAllSlice(Mockito.any(Pageable.class));
+        verify(usersService, never()).findAllAfter(Mockito.anyLong(), Mockito.anyInt());
+    }
+
+    //6 tests for endpoint api/users-by-lastname below (GET method)
     @Test
     @DisplayName("\"api/users-by-lastname\" endpoint retrieves correct users for an existing lastName")
     public void shouldRetrieveUsersByLastName() {
@@ -144,6 +365,48 @@ public class UsersControllerTest {
         assertEquals(List.of(userDTO3), users.getBody());
     }
 
+    @Test
+    @DisplayName("\"api/users-by-lastname\" endpoint derives its ETag from the users it returns, not from the write generation")
+    public void shouldDeriveUsersByLastNameETagFromUsers() {
+        //given
+        ResponseEntity<String> users = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users-by-lastname?lastName=Nowak", HttpMethod.GET, null, String.class);
+        String eTag = users.getHeaders().getETag();
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch(eTag);
+
+        //when
+        ResponseEntity<String> notModified = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users-by-lastname?lastName=Nowak", HttpMethod.GET, new HttpEntity<>(headers), String.class);
+        //e.g. the cached users evicted after the generation has advanced
+        when(usersService.findByLastName("Nowak")).thenReturn(List.of(userDTO1));
+        ResponseEntity<String> changed = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users-by-lastname?lastName=Nowak", HttpMethod.GET, new HttpEntity<>(headers), String.class);
+
+        //then
+        assertNotEquals("\"e1.7\"", eTag);
+        assertEquals(HttpStatus.NOT_MODIFIED, notModified.getStatusCode());
+        assertEquals(HttpStatus.OK, changed.getStatusCode());
+        assertNotEquals(eTag, changed.getHeaders().getETag());
+    }
+
+    @Test
+    @DisplayName("\"api/users-by-lastname\" endpoint retrieves users with similar last names in fuzzy mode")
+    public void shouldRetrieveUsersBySimilarLastName() {
+        //given
+        when(usersService.findByLastNameFuzzy("Nowack")).thenReturn(List.of(userDTO1, userDTO2));
+
+        //when
+        ResponseEntity<List<UserDto>> users = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users-by-lastname?lastName=Nowack&fuzzy=true", HttpMethod.GET, null, new ParameterizedTypeReference<List<UserDto>>() {
+                });
+
+        //then
+        assertEquals(HttpStatus.OK, users.getStatusCode());
+        assertEquals(List.of(userDTO1, userDTO2), users.getBody());
+        verify(usersService, never()).findByLastName(Mockito.anyString());
+    }
+
     @Test
     @DisplayName("\"api/users-by-lastname\" endpoint properly handles non-existing lastName")
     public void getUsersByLastNameShouldProperlyHandleNonExistingLastName() {
@@ -241,6 +504,57 @@ public class UsersControllerTest {
         assertEquals(HttpStatus.BAD_REQUEST, users.getStatusCode());
     }
 
+    //3 tests for endpoint api/users/search below (GET method)
+    @Test
+    @DisplayName("\"api/users/search\" endpoint retrieves users matching the query, up to the limit")
+    public void shouldSearchUsers() {
+        //given
+        when(usersService.search("now", 5)).thenReturn(Optional.of(List.of(userDTO1id, userDTO2id)));
+
+        //when
+        ResponseEntity<List<UserDto>> users = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users/search?q=now&limit=5", HttpMethod.GET, null, new ParameterizedTypeReference<List<UserDto>>() {
+                });
+
+        //then
+        assertEquals(HttpStatus.OK, users.getStatusCode());
+        assertEquals(List.of(userDTO1id, userDTO2id), users.getBody());
+        assertEquals("\"i1.3\"", users.getHeaders().getETag());
+    }
+
+    @Test
+    @DisplayName("\"api/users/search\" endpoint rejects limits out of range and answers blank queries with no users")
+    public void shouldValidateSearch() {
+        //when
+        ResponseEntity<String> tooManyUsers = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users/search?q=now&limit=" + (UsersController.MAX_SEARCH_LIMIT + 1), HttpMethod.GET, null, String.class);
+        ResponseEntity<String> noUsers = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users/search?q=now&limit=0", HttpMethod.GET, null, String.class);
+        ResponseEntity<String> blankQuery = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users/search?q= ", HttpMethod.GET, null, String.class);
+
+        //then
+        assertEquals(HttpStatus.BAD_REQUEST, tooManyUsers.getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, noUsers.getStatusCode());
+        assertEquals(HttpStatus.OK, blankQuery.getStatusCode());
+        assertEquals("[]", blankQuery.getBody());
+        verify(usersService, never()).search(Mockito.anyString(), Mockito.anyInt());
+    }
+
+    @Test
+    @DisplayName("\"api/users/search\" endpoint answers with 503 until the search index is built")
+    public void shouldNotSearchUntilIndexIsBuilt() {
+        //given
+        when(usersService.search("now", 20)).thenReturn(Optional.empty());
+
+        //when
+        ResponseEntity<String> users = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users/search?q=now", HttpMethod.GET, null, String.class);
+
+        //then
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, users.getStatusCode());
+    }
+
     //4 tests for endpoint for POST method request to api/users below
     @Test
     @DisplayName("\"api/users\" endpoint creates new user (POST method) when request body is valid")
@@ -314,7 +628,41 @@ public class UsersControllerTest {
         assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
     }
 
-    //5 tests for endpoint for PUT method request to api/users/{id} below
+    //2 tests for endpoint for POST method request to api/users/batch below
+    @Test
+    @DisplayName("\"api/users/batch\" endpoint creates new users (POST method) when all users are valid")
+    public void shouldProperlyCreateUsersInBatchWhenValidRequestBody() {
+
+        //given
+        when(usersService.saveAll(Mockito.anyList()))
+                .thenReturn(List.of(new User(5L, "Mariusz", "Pudzianowski"), new User(6L, "Adam", "Malysz")));
+
+        //when
+        HttpEntity<List<CreateUserDto>> request = new HttpEntity<>(List.of(new CreateUserDto("Mariusz", "Pudzianowski"), new CreateUserDto("Adam", "Malysz")));
+        ResponseEntity<List<UserDto>> response = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users/batch", HttpMethod.POST, request, new ParameterizedTypeReference<List<UserDto>>() {
+                });
+
+        //then
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(List.of(new UserDto(5L, "Mariusz", "Pudzianowski"), new UserDto(6L, "Adam", "Malysz")), response.getBody());
+    }
+
+    @Test
+    @DisplayName("\"api/users/batch\" endpoint rejects the whole batch when any user is invalid (POST method)")
+    public void shouldProperlyHandleBatchWithInvalidUser() {
+
+        //when
+        HttpEntity<List<CreateUserDto>> request = new HttpEntity<>(List.of(new CreateUserDto("Mariusz", "Pudzianowski"), new CreateUserDto("Adam", "M")));
+        ResponseEntity<Object> response = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users/batch", HttpMethod.POST, request, Object.class);
+
+        //then
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        verify(usersService, never()).saveAll(Mockito.anyList());
+    }
+
+    //8 tests for endpoint for PUT method request to api/users/{id} below
     @Test
     @DisplayName("\"api/users/{id}\" endpoint updates user (PUT method)")
     public void shouldProperlyUpdateUserWhenExistingIdProvided() {
@@ -322,7 +670,7 @@ public class UsersControllerTest {
         //given
         User user5 = new User(5L, "Marian", "Pudzianowski");
 
-        when(usersService.update(Mockito.any(Long.class), Mockito.any(CreateUserDto.class))).thenReturn(Optional.of(user5));
+        when(usersService.update(Mockito.any(Long.class), Mockito.any(CreateUserDto.class), Mockito.isNull())).thenReturn(Optional.of(new UserDto(5L, user5.getFirstName(), user5.getLastName())));
 
         //when
         HttpEntity<CreateUserDto> request = new HttpEntity<>(new CreateUserDto("Marian", "Pudzianowski"));
@@ -357,7 +705,7 @@ public class UsersControllerTest {
         //given
         User user5 = new User(5L, "Marian", null);
 
-        when(usersService.update(Mockito.any(Long.class), Mockito.any(CreateUserDto.class))).thenReturn(Optional.of(user5));
+        when(usersService.update(Mockito.any(Long.class), Mockito.any(CreateUserDto.class), Mockito.isNull())).thenReturn(Optional.of(new UserDto(5L, user5.getFirstName(), user5.getLastName())));
 
         //when
         HttpEntity<CreateUserDto> request = new HttpEntity<>(new CreateUserDto("Marian", null));
@@ -375,7 +723,7 @@ public class UsersControllerTest {
         //given
         User user5 = new User(5L, "Marian", "P");
 
-        when(usersService.update(Mockito.any(Long.class), Mockito.any(CreateUserDto.class))).thenReturn(Optional.of(user5));
+        when(usersService.update(Mockito.any(Long.class), Mockito.any(CreateUserDto.class), Mockito.isNull())).thenReturn(Optional.of(new UserDto(5L, user5.getFirstName(), user5.getLastName())));
 
         //when
         HttpEntity<CreateUserDto> request = new HttpEntity<>(new CreateUserDto("Marian", "P"));
@@ -393,7 +741,7 @@ public class UsersControllerTest {
         //given
         User user5 = new User(5L, "Marian", "Pudzianowskiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiii");
 
-        when(usersService.update(Mockito.any(Long.class), Mockito.any(CreateUserDto.class))).thenReturn(Optional.of(user5));
+        when(usersService.update(Mockito.any(Long.class), Mockito.any(CreateUserDto.class), Mockito.isNull())).thenReturn(Optional.of(new UserDto(5L, user5.getFirstName(), user5.getLastName())));
 
         //when
         HttpEntity<CreateUserDto> request = new HttpEntity<>(new CreateUserDto("Marian", "Pudzianowskiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiii"));
@@ -404,7 +752,61 @@ public class UsersControllerTest {
         assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
     }
 
-    //4 tests for endpoint for PATCH method request to api/users/{id} below
+    @Test
+    @DisplayName("\"api/users/{id}\" endpoint updates user only in the version given in If-Match and returns its new ETag (PUT method)")
+    public void shouldUpdateUserInVersionFromIfMatch() {
+
+        //given
+        when(usersService.update(Mockito.eq(5L), Mockito.any(CreateUserDto.class), Mockito.eq(3L))).thenReturn(Optional.of(new UserDto(5L, "Marian", "Pudzianowski", 4L)));
+
+        //when
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfMatch("\"3\"");
+        HttpEntity<CreateUserDto> request = new HttpEntity<>(new CreateUserDto("Marian", "Pudzianowski"), headers);
+        ResponseEntity<UserDto> response = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users/5", HttpMethod.PUT, request, UserDto.class);
+
+        //then
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("\"4\"", response.getHeaders().getETag());
+        assertEquals(new UserDto(5L, "Marian", "Pudzianowski"), response.getBody());
+    }
+
+    @Test
+    @DisplayName("\"api/users/{id}\" endpoint returns 412 when user has changed since the version given in If-Match (PUT method)")
+    public void shouldRejectUpdateOfChangedUser() {
+
+        //given
+        when(usersService.update(Mockito.eq(5L), Mockito.any(CreateUserDto.class), Mockito.eq(3L))).thenThrow(new OptimisticLockingFailureException("User 5 has been modified"));
+
+        //when
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfMatch("\"3\"");
+        HttpEntity<CreateUserDto> request = new HttpEntity<>(new CreateUserDto("Marian", "Pudzianowski"), headers);
+        ResponseEntity<UserDto> response = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users/5", HttpMethod.PUT, request, UserDto.class);
+
+        //then
+        assertEquals(HttpStatus.PRECONDITION_FAILED, response.getStatusCode());
+    }
+
+    @Test
+    @DisplayName("\"api/users/{id}\" endpoint returns 412 for If-Match that can't match any user's ETag (PUT method)")
+    public void shouldRejectUpdateWithWeakIfMatch() {
+
+        //when
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfMatch("W/\"3\"");
+        HttpEntity<CreateUserDto> request = new HttpEntity<>(new CreateUserDto("Marian", "Pudzianowski"), headers);
+        ResponseEntity<UserDto> response = testRestTemplate
+                .exchange("http://localhost:" + port + "/api/users/5", HttpMethod.PUT, request, UserDto.class);
+
+        //then
+        assertEquals(HttpStatus.PRECONDITION_FAILED, response.getStatusCode());
+        verify(usersService, never()).update(Mockito.anyLong(), Mockito.any(CreateUserDto.class), Mockito.any());
+    }
+
+    //5 tests for endpoint for PATCH method request to api/users/{id} below
     @Test
     @DisplayName("\"api/users/{id}\" endpoint patches user when first name and last name is provided (PATCH method)")
     public void shouldProperlyPatchUserWhenFullNameProvided() {
@@ -416,7 +818,7 @@ public class UsersControllerTest {
 
         User user5 = new User(5L, "Mariusz", "Pudzianowski");
 
-        when(usersService.patch(Mockito.any(Long.class), Mockito.any(PatchUserDto.class))).thenReturn(Optional.of(user5));
+        when(usersService.patch(Mockito.any(Long.class), Mockito.any(PatchUserDto.class), Mockito.isNull())).thenReturn(Optional.of(new UserDto(5L, user5.getFirstName(), user5.getLastName())));
 
         //when
         HttpEntity<PatchUserDto> request = new HttpEntity<>(new PatchUserDto("Mariusz", "Pudzianowski"));
@@ -442,7 +844,7 @@ public class UsersControllerTest {
 
         User user5 = new User(1L, "Mariusz", null);
 
-        when(usersService.patch(Mockito.any(Long.class), Mockito.any(PatchUserDto.class))).thenReturn(Optional.of(new User(1L, user5.getFirstName(), user1.getLastName())));
+        when(usersService.patch(Mockito.any(Long.class), Mockito.any(PatchUserDto.class), Mockito.isNull())).thenReturn(Optional.of(new UserDto(1L, user5.getFirstName(), user1.getLastName())));
 
         //when
         HttpEntity<PatchUserDto> request = new HttpEntity<>(new PatchUserDto("Mariusz", null));
@@ -468,7 +870,7 @@ public class UsersControllerTest {
 
         User user5 = new User(1L, "M", null);
 
-        when(usersService.patch(Mockito.any(Long.class), Mockito.any(PatchUserDto.class))).thenReturn(Optional.of(new User(1L, user5.getFirstName(), user1.getLastName())));
+        when(usersService.patch(Mockito.any(Long.class), Mockito.any(PatchUserDto.class), Mockito.isNull())).thenReturn(Optional.of(new UserDto(1L, user5.getFirstName(), user1.getLastName())));
 
         //when
         HttpEntity<PatchUserDto> request = new HttpEntity<>(new PatchUserDto("M", null));
@@ -490,7 +892,7 @@ public class UsersControllerTest {
 
         User user5 = new User(1L, "Mariiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiusz", null);
 
-        when(usersService.patch(Mockito.any(Long.class), Mockito.any(PatchUserDto.class))).thenReturn(Optional.of(new User(1L, user5.getFirstName(), user1.getLastName())));
+        when(usersService.patch(Mockito.any(Long.class), Mockito.any(PatchUserDto.class), Mockito.isNull())).thenReturn(Optional.of(new UserDto(1L, user5.getFirstName(), user1.getLastName())));
 
         //when
         HttpEntity<PatchUserDto> request = new HttpEntity<>(new PatchUserDto("Mariiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiiusz", null));
@@ -501,6 +903,28 @@ public class UsersControllerTest {
         assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
     }
 
+    @Test
+    @DisplayName("\"api/users/{id}\" endpoint returns 412 when user has changed since the version given in If-Match (PATCH method)")
+    public void shouldRejectPatchOfChangedUser() {
+
+        //given
+        this.patchRestTemplate = restTemplate.getRestTemplate();
+        HttpClient httpClient = HttpClientBuilder.create().build();
+        this.patchRestTemplate.setRequestFactory(new HttpComponentsClientHttpRequestFactory(httpClient));
+
+        when(usersService.patch(Mockito.eq(1L), Mockito.any(PatchUserDto.class), Mockito.eq(7L))).thenThrow(new OptimisticLockingFailureException("User 1 has been modified"));
+
+        //when
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfMatch("\"7\"");
+        HttpEntity<PatchUserDto> request = new HttpEntity<>(new PatchUserDto("Mariusz", null), headers);
+        ResponseEntity<UserDto> response = patchRestTemplate
+                .exchange("http://localhost:" + port + "/api/users/1", HttpMethod.PATCH, request, UserDto.class);
+
+        //then
+        assertEquals(HttpStatus.PRECONDITION_FAILED, response.getStatusCode());
+    }
+
     //2 tests for endpoint for DELETE method request to api/users/{id} below
     @Test
     @DisplayName("\"api/users\" endpoint DELETEs user valid id is provided")
@@ -0,0 +1,389 @@
+package backbase.task.controller;
+
+import backbase.task.db.UsersRepository;
+import backbase.task.entity.User;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * load test of the api/users* endpoints - run with "gradle loadTest" (on a database of its own, filled with
+ * loadTest.users users with Zipf distributed last names); an open model: requests of a weighted mix of endpoints
+ * arrive at loadTest.rate per second whatever the response times (up to loadTest.clients of them are sent at once,
+ * the others wait), and their latencies are measured from the moment they were due, so that waiting behind slow
+ * responses counts too; after loadTest.warmup seconds the latencies of loadTest.duration seconds are compared with
+ * the baseline (see LoadTestReport)
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "app.datasource.jdbc-url=jdbc:h2:mem:load;DB_CLOSE_DELAY=-1",
+        "app.slow-query-log.threshold=10s"
+})
+@Tag("load")
+class UsersLoadTest {
+
+    private static final int USERS = Integer.getInteger("loadTest.users", 100_000);
+    private static final int RATE = Integer.getInteger("loadTest.rate", 100);
+    private static final int CLIENTS = Integer.getInteger("loadTest.clients", 32);
+    private static final int WARMUP_SECONDS = Integer.getInteger("loadTest.warmup", 10);
+    private static final int DURATION_SECONDS = Integer.getInteger("loadTest.duration", 30);
+    //e.g. "findById:50,byLastName:50" - weights of the given endpoints (the others keep their default weights)
+    private static final String MIX = System.getProperty("loadTest.mix", "");
+    private static final double TOLERANCE = Double.parseDouble(System.getProperty("loadTest.tolerance", "0.5"));
+    private static final String BASELINE = System.getProperty("loadTest.baseline");
+    private static final String REPORTS = System.getProperty("loadTest.reports", "build/reports/load-test");
+    private static final boolean UPDATE_BASELINE = Boolean.getBoolean("loadTest.updateBaseline");
+
+    private static final int PAGE_SIZE = 20;
+    private static final int PAGES = 100;
+    private static final int LOOKUP_SIZE = 20;
+    private static final int BATCH_SIZE = 10;
+
+    private static final List<String> FIRST_NAMES = List.of("Anna", "Maria", "Katarzyna", "Jan", "Piotr", "Krzysztof",
+            "Andrzej", "Tomasz", "Agnieszka", "Barbara", "Emma", "Olivia", "James", "John", "Robert", "Michael",
+            "William", "David", "Mary", "Patricia", "Jennifer", "Linda", "Elizabeth", "Susan", "Jessica", "Sarah");
+
+    @Value(value = "${local.server.port}")
+    private int port;
+
+    @Autowired
+    private UsersRepository usersRepository;
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    private final LastNames lastNames = new LastNames();
+
+    private List<Long> ids;
+
+    private final ConcurrentLinkedQueue<Long> deletedIds = new ConcurrentLinkedQueue<>();
+
+    @Test
+    @DisplayName("endpoints keep their latencies and throughput within the tolerance of the baseline")
+    void shouldKeepUpWithBaseline() throws Exception {
+        //given
+        final Map<Endpoint, Integer> mix = Endpoint.mix(MIX);
+        generateUsers(mix);
+        final ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+
+        //when
+        final LoadTestReport report;
+        try {
+            run(mix, WARMUP_SECONDS, clients);
+            report = run(mix, DURATION_SECONDS, clients);
+        } finally {
+            clients.shutdownNow();
+        }
+
+        //then
+        report.print(System.out);
+        report.write(Paths.get(REPORTS));
+        assertEquals(0, report.errors(), "requests failed");
+
+        if (BASELINE != null && UPDATE_BASELINE) {
+            LoadTestReport.store(report.results(), Paths.get(BASELINE));
+            System.out.println("Baseline updated: " + BASELINE);
+        } else if (BASELINE != null && Files.exists(Paths.get(BASELINE))) {
+            final List<String> regressions = report.regressionsFrom(LoadTestReport.load(Paths.get(BASELINE)), TOLERANCE, System.out);
+            assertTrue(regressions.isEmpty(), "Regressions beyond " + TOLERANCE * 100 + "% of the baseline:\n"
+                    + String.join("\n", regressions));
+        }
+    }
+
+    //some of the users are set aside for deletes (twice as many as the mix is expected to delete),
+    //so that other requests don't run into deleted users
+    private void generateUsers(Map<Endpoint, Integer> mix) {
+        final long start = System.nanoTime();
+        final List<Long> generatedIds = new ArrayList<>(USERS);
+        for (int from = 0; from < USERS; from += 10_000) {
+            generatedIds.addAll(usersRepository.insertAll(IntStream.range(from, Math.min(from + 10_000, USERS))
+                    .mapToObj(i -> new User(randomFirstName(), lastNames.random()))
+                    .collect(Collectors.toList())));
+        }
+        Collections.shuffle(generatedIds);
+
+        final long expectedDeletes = (long) (WARMUP_SECONDS + DURATION_SECONDS) * RATE * mix.getOrDefault(Endpoint.DELETE, 0)
+                / mix.values().stream().mapToInt(Integer::intValue).sum();
+        final int deleted = (int) Math.min(USERS / 2, 2 * expectedDeletes + 100);
+        deletedIds.addAll(generatedIds.subList(0, deleted));
+        ids = new ArrayList<>(generatedIds.subList(deleted, USERS));
+        System.out.printf("Generated %,d users in %,d ms%n", USERS, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private LoadTestReport run(Map<Endpoint, Integer> mix, int seconds, ExecutorService clients) throws InterruptedException {
+        final Map<String, String> configuration = new LinkedHashMap<>();
+        configuration.put("users", String.valueOf(USERS));
+        configuration.put("rate", String.valueOf(RATE));
+        configuration.put("clients", String.valueOf(CLIENTS));
+        configuration.put("duration", String.valueOf(seconds));
+        configuration.put("mix", Endpoint.format(mix));
+        final LoadTestReport report = new LoadTestReport(configuration,
+                mix.keySet().stream().map(endpoint -> endpoint.key).collect(Collectors.toList()));
+
+        final Endpoint[] endpoints = Endpoint.weighted(mix);
+        final int requests = seconds * RATE;
+        final long interval = TimeUnit.SECONDS.toNanos(1) / RATE;
+        final CountDownLatch responses = new CountDownLatch(requests);
+        final AtomicLong lastResponse = new AtomicLong();
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            final long due = start + i * interval;
+            for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+                LockSupport.parkNanos(wait);
+            }
+
+            final Endpoint endpoint = endpoints[ThreadLocalRandom.current().nextInt(endpoints.length)];
+            clients.execute(() -> {
+                boolean successful;
+                try {
+                    final int status = httpClient.send(endpoint.request(this), HttpResponse.BodyHandlers.discarding()).statusCode();
+                    successful = status < 400;
+                } catch (Exception e) {
+                    successful = false;
+                }
+                final long now = System.nanoTime();
+                report.record(endpoint.key, now - due, successful);
+                lastResponse.accumulateAndGet(now, Math::max);
+                responses.countDown();
+            });
+        }
+
+        //a report missing requests still in flight would look better than the run was
+        assertTrue(responses.await(seconds + 60L, TimeUnit.SECONDS),
+                responses.getCount() + " of " + requests + " requests got no response in time");
+        report.finish(lastResponse.get() - start);
+        return report;
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + path)).timeout(Duration.ofSeconds(30));
+    }
+
+    private HttpRequest json(String path, String method, String body) {
+        return request(path)
+                .header("Content-Type", "application/json")
+                .method(method, HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private long randomId() {
+        return ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+    }
+
+    private String randomIds() {
+        return IntStream.range(0, LOOKUP_SIZE).mapToObj(i -> String.valueOf(randomId())).collect(Collectors.joining(","));
+    }
+
+    private static String randomFirstName() {
+        return FIRST_NAMES.get(ThreadLocalRandom.current().nextInt(FIRST_NAMES.size()));
+    }
+
+    private String randomUserJson() {
+        return "{\"first_name\":\"" + randomFirstName() + "\",\"last_name\":\"" + lastNames.random() + "\"}";
+    }
+
+    private static String encoded(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    //endpoints with their default weights (per 100 requests) - the export isn't a part of the default mix
+    private enum Endpoint {
+        FIND_BY_ID("findById", 30) {
+            @Override
+            HttpRequest request(UsersLoadTest test) {
+                return test.request("/api/users/" + test.randomId()).build();
+            }
+        },
+        FIND_ALL_BY_ID("findAllById", 4) {
+            @Override
+            HttpRequest request(UsersLoadTest test) {
+                return test.request("/api/users?ids=" + test.randomIds()).build();
+            }
+        },
+        LOOKUP("lookup", 4) {
+            @Override
+            HttpRequest request(UsersLoadTest test) {
+                return test.json("/api/users/lookup", "POST", "[" + test.randomIds() + "]");
+            }
+        },
+        PAGE("page", 5) {
+            @Override
+            HttpRequest request(UsersLoadTest test) {
+                return test.request("/api/users?size=" + PAGE_SIZE + "&page=" + ThreadLocalRandom.current().nextInt(PAGES)).build();
+            }
+        },
+        SLICE("slice", 5) {
+            @Override
+            HttpRequest request(UsersLoadTest test) {
+                return test.request("/api/users?count=false&size=" + PAGE_SIZE + "&page=" + ThreadLocalRandom.current().nextInt(PAGES))
+                        .build();
+            }
+        },
+        KEYSET("keyset", 8) {
+            @Override
+            HttpRequest request(UsersLoadTest test) {
+                return test.request("/api/users?size=" + PAGE_SIZE + "&after=" + KeysetCursor.encode(test.randomId())).build();
+            }
+        },
+        BY_LAST_NAME("byLastName", 15) {
+            @Override
+            HttpRequest request(UsersLoadTest test) {
+                return test.request("/api/users-by-lastname?lastName=" + encoded(test.lastNames.random())).build();
+            }
+        },
+        FIRST_NAMES("firstNames", 10) {
+            @Override
+            HttpRequest request(UsersLoadTest test) {
+                return test.request("/api/users-firstnames-by-lastname?lastName=" + encoded(test.lastNames.random())).build();
+            }
+        },
+        CREATE("create", 8) {
+            @Override
+            HttpRequest request(UsersLoadTest test) {
+                return test.json("/api/users", "POST", test.randomUserJson());
+            }
+        },
+        CREATE_BATCH("createBatch", 1) {
+            @Override
+            HttpRequest request(UsersLoadTest test) {
+                return test.json("/api/users/batch", "POST", IntStream.range(0, BATCH_SIZE)
+                        .mapToObj(i -> test.randomUserJson())
+                        .collect(Collectors.joining(",", "[", "]")));
+            }
+        },
+        UPDATE("update", 4) {
+            @Override
+            HttpRequest request(UsersLoadTest test) {
+                return test.json("/api/users/" + test.randomId(), "PUT", test.randomUserJson());
+            }
+        },
+        PATCH("patch", 4) {
+            @Override
+            HttpRequest request(UsersLoadTest test) {
+                return test.json("/api/users/" + test.randomId(), "PATCH", "{\"first_name\":\"" + randomFirstName() + "\"}");
+            }
+        },
+        DELETE("delete", 2) {
+            @Override
+            HttpRequest request(UsersLoadTest test) {
+                final Long id = test.deletedIds.poll();
+                return test.request("/api/users/" + (id != null ? id : test.randomId())).DELETE().build();
+            }
+        },
+        EXPORT("export", 0) {
+            @Override
+            HttpRequest request(UsersLoadTest test) {
+                return test.request("/api/users/export?format=ndjson").build();
+            }
+        };
+
+        private final String key;
+
+        private final int defaultWeight;
+
+        Endpoint(String key, int defaultWeight) {
+            this.key = key;
+            this.defaultWeight = defaultWeight;
+        }
+
+        abstract HttpRequest request(UsersLoadTest test);
+
+        //default weights overridden by the given ones ("key:weight,key:weight") - endpoints of weight 0 left out
+        static Map<Endpoint, Integer> mix(String weights) {
+            final Map<Endpoint, Integer> mix = new LinkedHashMap<>();
+            Arrays.stream(values()).forEach(endpoint -> mix.put(endpoint, endpoint.defaultWeight));
+            for (String weight : weights.split(",")) {
+                if (!weight.isBlank()) {
+                    final String[] keyAndWeight = weight.trim().split(":");
+                    final Endpoint endpoint = Arrays.stream(values())
+                            .filter(value -> value.key.equals(keyAndWeight[0]))
+                            .findFirst()
+                            .orElseThrow(() -> new IllegalArgumentException("Unknown endpoint in loadTest.mix: " + keyAndWeight[0]));
+                    mix.put(endpoint, Integer.parseInt(keyAndWeight[1]));
+                }
+            }
+            mix.values().removeIf(weight -> weight <= 0);
+            return mix;
+        }
+
+        static String format(Map<Endpoint, Integer> mix) {
+            return mix.entrySet().stream().map(weight -> weight.getKey().key + ":" + weight.getValue()).collect(Collectors.joining(","));
+        }
+
+        //every endpoint as many times as its weight - a random element is a random endpoint of the mix
+        static Endpoint[] weighted(Map<Endpoint, Integer> mix) {
+            return mix.entrySet()
+                    .stream()
+                    .flatMap(weight -> Collections.nCopies(weight.getValue(), weight.getKey()).stream())
+                    .toArray(Endpoint[]::new);
+        }
+    }
+
+    /**
+     * last names of Zipf distributed frequencies (like real ones - the most common one is about 1% of all the users,
+     * the 10 most common ones less than 5%, and there's a long tail of rare ones), in the proportions both
+     * of the users and of the last names they're looked up by
+     */
+    private static final class LastNames {
+
+        private static final List<String> MOST_COMMON = List.of("Nowak", "Smith", "Kowalski", "Johnson", "Wiśniewski",
+                "Williams", "Wójcik", "Brown", "Kowalczyk", "Jones", "Kamiński", "Garcia", "Lewandowski", "Miller",
+                "Zieliński", "Davis", "Szymański", "Rodriguez", "Woźniak", "Martinez", "Dąbrowski", "Hernandez",
+                "Kozłowski", "Lopez", "Jankowski", "Gonzalez", "Mazur", "Wilson", "Kwiatkowski", "Anderson");
+
+        private static final int DISTINCT = 500_000;
+
+        private static final double EXPONENT = 0.75;
+
+        private final double[] cumulativeFrequencies = new double[DISTINCT];
+
+        private LastNames() {
+            double total = 0;
+            for (int rank = 1; rank <= DISTINCT; rank++) {
+                total += Math.pow(rank, -EXPONENT);
+                cumulativeFrequencies[rank - 1] = total;
+            }
+        }
+
+        private String random() {
+            final double point = ThreadLocalRandom.current().nextDouble(cumulativeFrequencies[DISTINCT - 1]);
+            final int index = Arrays.binarySearch(cumulativeFrequencies, point);
+            final int rank = index >= 0 ? index : -index - 1;
+            return rank < MOST_COMMON.size() ? MOST_COMMON.get(rank) : MOST_COMMON.get(rank % MOST_COMMON.size()) + "-" + rank;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package backbase.task.db;
+
+import backbase.task.entity.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.concurrent.TimeUnit;
+
+import static backbase.task.db.UsersConcurrentUpdateTest.incrementConcurrently;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * throughput of conditional updates of a single user (see UsersConcurrentUpdateTest) by one thread and by many
+ * contending ones - conflicts are retried instead of waiting for locks, so contention mustn't cut throughput
+ * by more than half; run with "gradle benchmark"
+ */
+@DataJpaTest(showSql = false, properties = "spring.datasource.url=jdbc:h2:mem:concurrency-benchmark;DB_CLOSE_DELAY=-1")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Tag("benchmark")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class UsersConcurrentUpdateBenchmark {
+
+    private static final int THREADS = 8;
+    private static final int UPDATES = 8_000;
+
+    @Autowired
+    private UsersRepository usersRepository;
+
+    @AfterEach
+    void cleanDb() {
+        usersRepository.deleteAllInBatch();
+    }
+
+    @Test
+    @DisplayName("Conditional updates of the same user - one thread vs contending threads")
+    void concurrentUpdates() throws Exception {
+        //warm-up
+        updatesPerSecond(THREADS);
+
+        final long singleThreaded = updatesPerSecond(1);
+        final long concurrent = updatesPerSecond(THREADS);
+
+        assertTrue(concurrent * 2 >= singleThreaded, concurrent + " updates/s with " + THREADS + " threads vs "
+                + singleThreaded + " updates/s with one");
+    }
+
+    private long updatesPerSecond(int threads) throws Exception {
+        final long id = usersRepository.save(new User("Count0", "Counter")).getId();
+
+        final long start = System.nanoTime();
+        final long conflicts = incrementConcurrently(usersRepository, id, threads, UPDATES / threads);
+        final long elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        final long updatesPerSecond = UPDATES * 1000L / elapsedMillis;
+        System.out.printf("%d threads: %d updates in %d ms (%d updates/s), %d conflicts retried%n",
+                threads, UPDATES, elapsedMillis, updatesPerSecond, conflicts);
+        return updatesPerSecond;
+    }
+}
@@ -0,0 +1,92 @@
+package backbase.task.db;
+
+import backbase.task.dto.UserDto;
+import backbase.task.entity.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * stress test of optimistic concurrency - many threads increment a counter kept in a single user's first name
+ * with read-modify-write cycles conditional on the version they've read (retrying on conflicts, as clients would on 412);
+ * runs on a pooled database of its own, as the default test database opens a new connection per statement
+ * (its throughput is measured by UsersConcurrentUpdateBenchmark)
+ */
+@DataJpaTest(showSql = false, properties = "spring.datasource.url=jdbc:h2:mem:concurrency;DB_CLOSE_DELAY=-1")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class UsersConcurrentUpdateTest {
+
+    private static final int THREADS = 8;
+    private static final int UPDATES_PER_THREAD = 100;
+
+    @Autowired
+    private UsersRepository usersRepository;
+
+    @AfterEach
+    void cleanDb() {
+        usersRepository.deleteAllInBatch();
+    }
+
+    @Test
+    @DisplayName("Concurrent conditional updates of the same user don't lose any update and never block")
+    void shouldNotLoseConcurrentUpdates() throws Exception {
+        long id = usersRepository.save(new User("Count0", "Counter")).getId();
+
+        incrementConcurrently(usersRepository, id, THREADS, UPDATES_PER_THREAD);
+
+        int updates = THREADS * UPDATES_PER_THREAD;
+        UserDto user = usersRepository.findProjectedById(id).get();
+        assertEquals("Count" + updates, user.getFirstName());
+        assertEquals(updates, user.getVersion());
+    }
+
+    /**
+     * increments the counter of the given user the given number of times in each of the given number of threads
+     * @return number of conflicts retried
+     */
+    static long incrementConcurrently(UsersRepository usersRepository, long id, int threads, int updatesPerThread) throws Exception {
+        AtomicLong conflicts = new AtomicLong();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                workers.add(executor.submit(() -> {
+                    for (int update = 0; update < updatesPerThread; ) {
+                        UserDto user = usersRepository.findProjectedById(id).get();
+                        long count = Long.parseLong(user.getFirstName().substring("Count".length()));
+
+                        if (usersRepository.updateNames(id, "Count" + (count + 1), null, user.getVersion()) == 1) {
+                            update++;
+                        } else {
+                            conflicts.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return conflicts.get();
+    }
+}
@@ -0,0 +1,102 @@
+package backbase.task.db;
+
+import backbase.task.dto.UserDto;
+import backbase.task.entity.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * compares bytes allocated per request by the read paths returning managed entities (mapped to UserDto afterwards)
+ * with the ones building UserDto directly in the query - run with "gradle benchmark"
+ */
+@DataJpaTest
+@Tag("benchmark")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class UsersProjectionAllocationBenchmark {
+
+    private static final int USERS = 10_000;
+    private static final int WARMUP_REQUESTS = 500;
+    private static final int MEASURED_REQUESTS = 2_000;
+    private static final Pageable PAGE = PageRequest.of(10, 100, Sort.by("id"));
+
+    private final com.sun.management.ThreadMXBean threadMXBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Autowired
+    private UsersRepository usersRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    void addUsers() {
+        if (usersRepository.count() == 0) {
+            usersRepository.insertAll(IntStream.range(0, USERS)
+                    .mapToObj(i -> new User("First" + i, "Last" + (i % 500)))
+                    .collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    @DisplayName("Page of users - entities vs DTO projection")
+    void pageOfUsers() {
+        compare("findAll(Pageable)",
+                () -> usersRepository.findAll(PAGE)
+                        .map(user -> new UserDto(user.getId(), user.getFirstName(), user.getLastName())),
+                () -> usersRepository.findAllProjectedBy(PAGE));
+    }
+
+    @Test
+    @DisplayName("User by ID - entity vs DTO projection")
+    void userById() {
+        compare("findById",
+                () -> usersRepository.findById(1234L)
+                        .map(user -> new UserDto(user.getId(), user.getFirstName(), user.getLastName())),
+                () -> usersRepository.findProjectedById(1234L));
+    }
+
+    private void compare(String name, Supplier<?> entityRequest, Supplier<?> projectionRequest) {
+        final long entityBytes = bytesPerRequest(entityRequest);
+        final long projectionBytes = bytesPerRequest(projectionRequest);
+
+        System.out.printf("%s: entities %,d B/request, DTO projection %,d B/request (%.1f%% less)%n",
+                name, entityBytes, projectionBytes, 100.0 * (entityBytes - projectionBytes) / entityBytes);
+        assertTrue(projectionBytes < entityBytes);
+    }
+
+    //every request runs in its own read-only transaction (i.e. its own persistence context), like an HTTP request would
+    private long bytesPerRequest(Supplier<?> request) {
+        final TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+
+        for (int i = 0; i < WARMUP_REQUESTS; i++) {
+            transaction.execute(status -> request.get());
+        }
+
+        final long threadId = Thread.currentThread().getId();
+        final long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_REQUESTS; i++) {
+            transaction.execute(status -> request.get());
+        }
+        return (threadMXBean.getThreadAllocatedBytes(threadId) - before) / MEASURED_REQUESTS;
+    }
+}
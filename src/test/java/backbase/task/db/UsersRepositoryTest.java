@@ -1,18 +1,25 @@
 package backbase.task.db;
 
+import backbase.task.dto.UserDto;
 import backbase.task.entity.User;
 import org.junit.jupiter.api.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.jdbc.core.JdbcTemplate;
 
+import java.util.Comparator;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @DataJpaTest
@@ -62,14 +69,189 @@ class UsersRepositoryTest {
     @Order(2)
     @DisplayName("Method findByLastNameIgnoreCase works properly")
     void shouldFindUsersByLastName() throws Exception {
-        User retrievedUser = usersRepository.findByLastNameIgnoreCase("Nowak").get(0);
-        assertEquals(5, retrievedUser.getId());
+        UserDto retrievedUser = usersRepository.findByLastNameIgnoreCase("Nowak").get(0);
+        assertNull(retrievedUser.getId());
         assertEquals("Jan", retrievedUser.getFirstName());
         assertEquals("Nowak", retrievedUser.getLastName());
 
-        User retrievedUser2 = usersRepository.findByLastNameIgnoreCase("Lee").get(0);
-        assertEquals(7, retrievedUser2.getId());
+        UserDto retrievedUser2 = usersRepository.findByLastNameIgnoreCase("Lee").get(0);
+        assertNull(retrievedUser2.getId());
         assertEquals("Bruce", retrievedUser2.getFirstName());
         assertEquals("Lee", retrievedUser2.getLastName());
     }
+
+    @Test
+    @Order(3)
+    @DisplayName("Method findByIdGreaterThan works properly")
+    void shouldFindUsersAfterGivenId() throws Exception {
+        long firstId = usersRepository.findAll(Sort.by("id")).get(0).getId();
+
+        Slice<UserDto> firstSlice = usersRepository.findByIdGreaterThan(0L, PageRequest.of(0, 3, Sort.by("id")));
+        assertEquals(List.of("Jan", "Anna", "Bruce"), firstSlice.map(UserDto::getFirstName).getContent());
+        assertTrue(firstSlice.hasNext());
+
+        Slice<UserDto> lastSlice = usersRepository.findByIdGreaterThan(firstId + 2, PageRequest.of(0, 3, Sort.by("id")));
+        assertEquals(List.of("Chuck"), lastSlice.map(UserDto::getFirstName).getContent());
+        assertFalse(lastSlice.hasNext());
+    }
+
+    @Test
+    @Order(4)
+    @DisplayName("Method findAllBy works properly")
+    void shouldFindSliceOfUsers() throws Exception {
+        Slice<UserDto> firstSlice = usersRepository.findAllBy(PageRequest.of(0, 3, Sort.by("firstName")));
+        assertEquals(List.of("Anna", "Bruce", "Chuck"), firstSlice.map(UserDto::getFirstName).getContent());
+        assertTrue(firstSlice.hasNext());
+
+        Slice<UserDto> lastSlice = usersRepository.findAllBy(PageRequest.of(1, 3, Sort.by("firstName")));
+        assertEquals(List.of("Jan"), lastSlice.map(UserDto::getFirstName).getContent());
+        assertFalse(lastSlice.hasNext());
+    }
+
+    @Test
+    @Order(5)
+    @DisplayName("Method insertAll works properly")
+    void shouldInsertAllUsersInBatches() throws Exception {
+        List<User> newUsers = IntStream.range(0, 1234)
+                .mapToObj(i -> new User("First" + i, "Last" + i))
+                .collect(Collectors.toList());
+
+        List<Long> ids = usersRepository.insertAll(newUsers);
+
+        assertEquals(1234, ids.size());
+        assertEquals(1234, ids.stream().distinct().count());
+        assertEquals(1238, usersRepository.count());
+        assertEquals("First1233", usersRepository.findById(ids.get(1233)).get().getFirstName());
+    }
+
+    @Test
+    @Order(6)
+    @DisplayName("Method findByLastNameIgnoreCase ignores case and uses the last name index")
+    void shouldFindUsersByLastNameIgnoringCaseWithIndex() throws Exception {
+        List<UserDto> users = usersRepository.findByLastNameIgnoreCase("nOWAK");
+        assertEquals(List.of(new UserDto("Jan", "Nowak"), new UserDto("Anna", "Nowak")), users);
+
+        String plan = jdbcTemplate.queryForObject("explain select * from users where last_name_key = lower('nOWAK')", String.class);
+        assertTrue(plan.toLowerCase().contains("idx_users_last_name_key_first_name"), plan);
+    }
+
+    @Test
+    @Order(7)
+    @DisplayName("Method findDistinctFirstNamesByLastNameIgnoreCase works properly")
+    void shouldFindDistinctFirstNamesByLastName() throws Exception {
+        jdbcTemplate.execute("insert into users (first_name, last_name) VALUES ('Jan', 'NOWAK');");
+
+        assertEquals(List.of("Jan", "Anna"), usersRepository.findDistinctFirstNamesByLastNameIgnoreCase("nowak"));
+        assertEquals(List.of("Bruce"), usersRepository.findDistinctFirstNamesByLastNameIgnoreCase("Lee"));
+        assertEquals(List.of(), usersRepository.findDistinctFirstNamesByLastNameIgnoreCase("Nonexisting"));
+    }
+
+    @Test
+    @Order(8)
+    @DisplayName("Methods findAllProjectedBy and findProjectedById work properly")
+    void shouldFindUserDtos() throws Exception {
+        Page<UserDto> page = usersRepository.findAllProjectedBy(PageRequest.of(0, 3, Sort.by("lastName", "firstName")));
+        assertEquals(List.of("Lee", "Norris", "Nowak"), page.map(UserDto::getLastName).getContent());
+        assertEquals(4, page.getTotalElements());
+
+        UserDto firstUser = page.getContent().get(0);
+        assertEquals(firstUser, usersRepository.findProjectedById(firstUser.getId()).get());
+        assertTrue(usersRepository.findProjectedById(-1L).isEmpty());
+    }
+
+    @Test
+    @Order(9)
+    @DisplayName("Methods findLastNameForUpdateById and deleteByIdReturningCount work properly")
+    void shouldDeleteUserById() throws Exception {
+        long id = usersRepository.findAll(Sort.by("id")).get(0).getId();
+
+        assertEquals(Optional.of("Nowak"), usersRepository.findLastNameForUpdateById(id));
+        assertEquals(1, usersRepository.deleteByIdReturningCount(id));
+        assertEquals(0, usersRepository.deleteByIdReturningCount(id));
+        assertEquals(3, usersRepository.count());
+        assertEquals(Optional.empty(), usersRepository.findLastNameForUpdateById(id));
+    }
+
+    @Test
+    @Order(10)
+    @DisplayName("Method updateNames updates only the given names")
+    void shouldUpdateNamesById() throws Exception {
+        long id = usersRepository.findAll(Sort.by("id")).get(0).getId();
+
+        assertEquals(1, usersRepository.updateNames(id, "Fred", null, null));
+        assertEquals(new UserDto(id, "Fred", "Nowak"), usersRepository.findProjectedById(id).get());
+        assertEquals(1, usersRepository.updateNames(id, null, "Flintstone", null));
+        assertEquals(new UserDto(id, "Fred", "Flintstone"), usersRepository.findProjectedById(id).get());
+        assertEquals(List.of("Fred"), usersRepository.findDistinctFirstNamesByLastNameIgnoreCase("flintstone"));
+        assertEquals(0, usersRepository.updateNames(-1L, "Fred", "Flintstone", null));
+    }
+
+    @Test
+    @Order(11)
+    @DisplayName("Method updateNames increments the version and updates only the expected one")
+    void shouldUpdateNamesOnlyInExpectedVersion() throws Exception {
+        long id = usersRepository.findAll(Sort.by("id")).get(0).getId();
+        assertEquals(0L, usersRepository.findProjectedById(id).get().getVersion());
+
+        assertEquals(1, usersRepository.updateNames(id, "Fred", null, 0L));
+        assertEquals(0, usersRepository.updateNames(id, "Wilma", null, 0L));
+        assertEquals(1, usersRepository.updateNames(id, null, "Flintstone", null));
+
+        UserDto updatedUser = usersRepository.findProjectedById(id).get();
+        assertEquals(new UserDto(id, "Fred", "Flintstone"), updatedUser);
+        assertEquals(2L, updatedUser.getVersion());
+    }
+
+    @Test
+    @Order(12)
+    @DisplayName("Method findProjectedByIdIn finds all existing users with given IDs")
+    void shouldFindUsersByIds() throws Exception {
+        List<User> users = usersRepository.findAll(Sort.by("id"));
+        long firstId = users.get(0).getId();
+        long lastId = users.get(3).getId();
+
+        List<UserDto> retrievedUsers = usersRepository.findProjectedByIdIn(List.of(lastId, firstId, -1L));
+        retrievedUsers.sort(Comparator.comparing(UserDto::getId));
+
+        assertEquals(List.of(new UserDto(firstId, "Jan", "Nowak"), new UserDto(lastId, "Chuck", "Norris")), retrievedUsers);
+    }
+
+    @Test
+    @Order(13)
+    @DisplayName("Method findLastNameKeysSoundingLike finds distinct last names by their phonetic keys, kept up to date by the database")
+    void shouldFindLastNamesSoundingLike() throws Exception {
+        jdbcTemplate.execute("insert into users (first_name, last_name) VALUES ('Adam', 'Nowack'), ('Ewa', 'NOWAK');");
+        long id = usersRepository.findAll(Sort.by("id")).get(2).getId();
+
+        List<String> lastNames = usersRepository.findLastNameKeysSoundingLike("nowac");
+        lastNames.sort(Comparator.naturalOrder());
+        assertEquals(List.of("nowack", "nowak"), lastNames);
+        assertEquals(List.of("lee"), usersRepository.findLastNameKeysSoundingLike("Lea"));
+
+        assertEquals(1, usersRepository.updateNames(id, null, "Leigh", null));
+        assertEquals(List.of(), usersRepository.findLastNameKeysSoundingLike("Lea"));
+        assertEquals(List.of("leigh"), usersRepository.findLastNameKeysSoundingLike("Leak"));
+
+        String plan = jdbcTemplate.queryForObject("explain select distinct last_name_key from users where last_name_soundex = left(soundex(upper('Lea')), 4)", String.class);
+        assertTrue(plan.toLowerCase().contains("idx_users_last_name_soundex_last_name_key"), plan);
+    }
+
+    @Test
+    @Order(14)
+    @DisplayName("Write methods advance the write generation in their transaction, unless they change no users")
+    void shouldAdvanceWriteGenerationOnWrites() throws Exception {
+        long id = usersRepository.findAll(Sort.by("id")).get(0).getId();
+        long initial = usersRepository.writeGeneration();
+
+        assertEquals(0, usersRepository.updateNames(-1L, "Fred", null, null));
+        assertEquals(0, usersRepository.deleteByIdReturningCount(-1L));
+        assertEquals(initial, usersRepository.writeGeneration());
+
+        usersRepository.insertAll(List.of(new User("Fred", "Flintstone"), new User("Wilma", "Flintstone")));
+        assertEquals(initial + 1, usersRepository.writeGeneration());
+        usersRepository.updateNames(id, "Fred", null, null);
+        assertEquals(initial + 2, usersRepository.writeGeneration());
+        usersRepository.deleteByIdReturningCount(id);
+        assertEquals(initial + 3, usersRepository.writeGeneration());
+    }
 }
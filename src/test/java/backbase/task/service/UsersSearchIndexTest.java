@@ -0,0 +1,190 @@
+package backbase.task.service;
+
+import backbase.task.dto.UserDto;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.LongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class UsersSearchIndexTest {
+
+    private final UsersSearchIndex index = new UsersSearchIndex(true);
+
+    @Test
+    @DisplayName("Search finds nothing until the index is built")
+    void shouldNotSearchUntilBuilt() {
+        //given
+        index.put(1L, "Jan", "Nowak");
+
+        //when
+        //then
+        assertEquals(Optional.empty(), index.search("now", 10));
+    }
+
+    @Test
+    @DisplayName("Equal names rank before prefixes, prefixes before substrings - case-insensitively, up to the limit")
+    void shouldRankExactMatchesThenPrefixesThenSubstrings() {
+        //given
+        index.build(pages(List.of(
+                new UserDto(1L, "Jan", "Kowalczyk"),
+                new UserDto(2L, "Anna", "Nowak"),
+                new UserDto(3L, "Piotr", "Kow"),
+                new UserDto(4L, "Kowal", "Nowak"),
+                new UserDto(5L, "Ewa", "Makowski"),
+                new UserDto(6L, "Adam", "Kowalski"),
+                new UserDto(7L, "Jan", "Kowal")), 2));
+
+        //when
+        //then
+        assertEquals(ids(3, 4, 7, 1, 6, 5), search("KOW", 10));
+        assertEquals(ids(3, 4, 7), search("kow", 3));
+        assertEquals(ids(4, 7, 1, 6), search("kowal", 10));
+        //shorter terms are matched by prefix only
+        assertEquals(ids(2, 4), search("no", 10));
+        assertEquals(ids(), search("ow", 10));
+        assertEquals(ids(), search("  ", 10));
+    }
+
+    @Test
+    @DisplayName("Every other term of a query must match the first or last name of a user")
+    void shouldFilterByOtherTerms() {
+        //given
+        index.build(pages(List.of(
+                new UserDto(1L, "Jan", "Kowalski"),
+                new UserDto(2L, "Janina", "Kowalska"),
+                new UserDto(3L, "Adam", "Kowalski")), 10));
+
+        //when
+        //then
+        //ranked by the term starting the names of fewer users
+        assertEquals(ids(1, 2), search("kowal jan", 10));
+        assertEquals(ids(2, 1, 3), search("kowal", 10));
+        assertEquals(ids(2), search("nina kowal", 10));
+        assertEquals(ids(1, 3), search("kowalski", 10));
+        assertEquals(List.of(new UserDto(2L, "Janina", "Kowalska")), index.search("ska jani", 10).orElseThrow());
+    }
+
+    @Test
+    @DisplayName("Other terms shorter than 3 letters match names by prefix only, like the term users are found by")
+    void shouldMatchShortOtherTermsByPrefix() {
+        //given
+        index.build(pages(List.of(
+                new UserDto(1L, "Jan", "Kowalczyk"),
+                new UserDto(2L, "Anna", "Kowalska"),
+                new UserDto(3L, "Anna", "Nowak"),
+                new UserDto(4L, "Andrzej", "Lis")), 10));
+
+        //when
+        //then
+        //"kowal" starts the names of fewer users than "an", so users are found by it and filtered by "an"
+        assertEquals(ids(2), search("kowal an", 10));
+        assertEquals(ids(2), search("kowal nna", 10));
+        assertEquals(ids(1, 2), search("kowal", 10));
+    }
+
+    @Test
+    @DisplayName("Added, renamed and deleted users are searched by their current names")
+    void shouldSearchUpdatedUsers() {
+        //given
+        index.build(pages(List.of(new UserDto(1L, "Jan", "Nowak"), new UserDto(2L, "Anna", "Nowak")), 10));
+
+        //when
+        index.put(3L, "Adam", "Nowakowski");
+        index.put(1L, "Jan", "Kowalski");
+        index.remove(2L);
+
+        //then
+        assertEquals(ids(3), search("nowak", 10));
+        assertEquals(ids(1), search("kowal", 10));
+        assertEquals(List.of(new UserDto(1L, "Jan", "Kowalski")), index.search("jan", 10).orElseThrow());
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    @DisplayName("Users written while the index is being built aren't overwritten by older pages")
+    void shouldKeepWritesMadeWhileBuilding() {
+        //given
+        final List<UserDto> users = List.of(
+                new UserDto(1L, "Jan", "Nowak"),
+                new UserDto(2L, "Anna", "Nowak"),
+                new UserDto(3L, "Bruce", "Lee"),
+                new UserDto(4L, "Chuck", "Norris"));
+        final LongFunction<Slice<UserDto>> pages = pages(users, 2);
+
+        //when
+        index.build(lastId -> {
+            if (lastId == 0) {
+                //written after the first page was read, but before it's added
+                index.put(1L, "Jan", "Kowalski");
+                //and before the second page is read
+                index.remove(3L);
+                index.put(4L, "Chuck", "Lee");
+            }
+            return pages.apply(lastId);
+        });
+
+        //then
+        assertEquals(ids(1), search("kowalski", 10));
+        assertEquals(ids(2), search("nowak", 10));
+        assertEquals(ids(4), search("lee", 10));
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    @DisplayName("Many users can be added and removed in any order")
+    void shouldAddAndRemoveManyUsers() {
+        //given
+        index.build(pages(List.of(), 10));
+        LongStream.rangeClosed(1, 10_000).map(id -> 10_001 - id).forEach(id -> index.put(id, "First" + id % 10, "Last" + id % 7));
+
+        //when
+        LongStream.rangeClosed(1, 10_000).filter(id -> id % 2 == 0).forEach(index::remove);
+
+        //then
+        assertEquals(5_000, index.size());
+        assertEquals(ids(3, 13, 23), search("first3 last", 3));
+        assertEquals(LongStream.rangeClosed(1, 10_000).filter(id -> id % 2 == 1 && id % 10 == 3 && id % 7 == 5)
+                .boxed().limit(100).collect(Collectors.toList()), search("first3 last5", 100));
+    }
+
+    @Test
+    @DisplayName("Disabled index is never built")
+    void shouldNotBuildWhenDisabled() {
+        //given
+        final UsersSearchIndex disabledIndex = new UsersSearchIndex(false);
+
+        //when
+        disabledIndex.buildInBackground(pages(List.of(new UserDto(1L, "Jan", "Nowak")), 10));
+        disabledIndex.put(2L, "Anna", "Nowak");
+
+        //then
+        assertEquals(Optional.empty(), disabledIndex.search("nowak", 10));
+        assertEquals(0, disabledIndex.size());
+    }
+
+    private List<Long> search(String query, int limit) {
+        return index.search(query, limit).orElseThrow().stream().map(UserDto::getId).collect(Collectors.toList());
+    }
+
+    private static List<Long> ids(long... ids) {
+        return LongStream.of(ids).boxed().collect(Collectors.toList());
+    }
+
+    //keyset pages of the given users (ordered by ID), like the ones of UsersService.findAllAfter
+    private static LongFunction<Slice<UserDto>> pages(List<UserDto> users, int size) {
+        return lastId -> {
+            final List<UserDto> usersAfter = users.stream().filter(user -> user.getId() > lastId).collect(Collectors.toList());
+            final boolean hasNext = usersAfter.size() > size;
+            return new SliceImpl<>(hasNext ? usersAfter.subList(0, size) : usersAfter, PageRequest.of(0, size), hasNext);
+        };
+    }
+}
@@ -3,7 +3,9 @@ package backbase.task.service;
 import backbase.task.db.UsersRepository;
 import backbase.task.dto.CreateUserDto;
 import backbase.task.dto.PatchUserDto;
+import backbase.task.dto.UserDto;
 import backbase.task.entity.User;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -11,13 +13,30 @@ import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.*;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
+import static backbase.task.config.CacheConfig.USERS_CACHE;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
@@ -30,55 +49,316 @@ class UsersServiceTest {
     @MockBean
     private UsersRepository usersRepository;
 
+    @MockBean
+    private UsersSearchIndex searchIndex;
+
+    @Autowired
+    private CacheManager cacheManager;
+
     User user1 = new User(1L, "Jan", "Nowak");
     User user2 = new User(2L, "Anna", "Nowak");
     User user3 = new User(3L, "Bruce", "Lee");
     User user4 = new User(4L, "Chuck", "Norris");
 
+    UserDto userDTO1 = new UserDto("Jan", "Nowak");
+    UserDto userDTO2 = new UserDto("Anna", "Nowak");
+    UserDto userDTO3 = new UserDto("Bruce", "Lee");
+    UserDto userDTO4 = new UserDto("Chuck", "Norris");
+
+    UserDto userDTO1id = new UserDto(1L, "Jan", "Nowak");
+    UserDto userDTO2id = new UserDto(2L, "Anna", "Nowak");
+    UserDto userDTO3id = new UserDto(3L, "Bruce", "Lee");
+    UserDto userDTO4id = new UserDto(4L, "Chuck", "Norris");
+
+    @BeforeEach
+    public void clearingCaches() {
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+    }
+
     @BeforeEach
     public void mockingUsersRepository() {
-        when(usersRepository.findAll(Mockito.any(Pageable.class))).thenReturn(new PageImpl<User>(List.of(user1, user2, user3, user4)));
+        when(usersRepository.findAllProjectedBy(Mockito.any(Pageable.class))).thenReturn(new PageImpl<UserDto>(List.of(userDTO1id, userDTO2id, userDTO3id, userDTO4id)));
         when(usersRepository.findAll()).thenReturn(List.of(user1, user2, user3, user4));
         when(usersRepository.findById(user1.getId())).thenReturn(Optional.of(user1));
-        when(usersRepository.findByLastNameIgnoreCase(user1.getLastName())).thenReturn(List.of(user1, user2));
-        when(usersRepository.findByLastNameIgnoreCase(user2.getLastName())).thenReturn(List.of(user1, user2));
-        when(usersRepository.findByLastNameIgnoreCase(user3.getLastName())).thenReturn(List.of(user3));
-        when(usersRepository.findByLastNameIgnoreCase(user4.getLastName())).thenReturn(List.of(user4));
+        when(usersRepository.findProjectedById(user1.getId())).thenReturn(Optional.of(userDTO1id));
+        when(usersRepository.findByLastNameIgnoreCase(user1.getLastName())).thenReturn(List.of(userDTO1, userDTO2));
+        when(usersRepository.findByLastNameIgnoreCase(user2.getLastName())).thenReturn(List.of(userDTO1, userDTO2));
+        when(usersRepository.findByLastNameIgnoreCase(user3.getLastName())).thenReturn(List.of(userDTO3));
+        when(usersRepository.findByLastNameIgnoreCase(user4.getLastName())).thenReturn(List.of(userDTO4));
+        when(usersRepository.findDistinctFirstNamesByLastNameIgnoreCase(user1.getLastName())).thenReturn(List.of("Jan", "Anna"));
     }
 
     @Test
     @DisplayName("Method findAll works properly")
     public void shouldFindAllUsers() {
-        Page<User> retrievedPage = usersService.findAll(PageRequest.of(0, 20, Sort.unsorted()));
-        List<User> users = retrievedPage.get().collect(Collectors.toList());
+        Page<UserDto> retrievedPage = usersService.findAll(PageRequest.of(0, 20, Sort.unsorted()));
+        List<UserDto> users = retrievedPage.get().collect(Collectors.toList());
 
         assertEquals(4, users.size());
-        assertEquals(List.of(user1, user2, user3, user4), users);
+        assertEquals(List.of(userDTO1id, userDTO2id, userDTO3id, userDTO4id), users);
     }
 
     @Test
     @DisplayName("Method findById works properly")
     public void shouldFindUserById() {
-        Optional<User> foundUser = usersService.findById(1L);
-        assertEquals(user1, foundUser.get());
+        Optional<UserDto> foundUser = usersService.findById(1L);
+        assertEquals(userDTO1id, foundUser.get());
+    }
+
+    @Test
+    @DisplayName("Method findAllById looks users up in chunks and returns them in the order of the given IDs")
+    public void shouldFindUsersByIdsInChunks() {
+        List<Long> ids = LongStream.rangeClosed(1, UsersService.LOOKUP_CHUNK_SIZE + 1).boxed().collect(Collectors.toList());
+        Collections.reverse(ids);
+        when(usersRepository.findProjectedByIdIn(Mockito.anyCollection())).thenAnswer(invocation -> {
+            Collection<Long> chunk = invocation.getArgument(0);
+            return List.of(userDTO1id, userDTO3id).stream().filter(user -> chunk.contains(user.getId())).collect(Collectors.toList());
+        });
+
+        List<UserDto> users = usersService.findAllById(ids);
+
+        assertEquals(List.of(userDTO3id, userDTO1id), users);
+        verify(usersRepository, times(2)).findProjectedByIdIn(Mockito.anyCollection());
+    }
+
+    @Test
+    @DisplayName("Method findById serves repeated lookups from the cache")
+    public void shouldCacheUserById() {
+        Cache usersCache = ((TransactionAwareCacheDecorator) cacheManager.getCache(USERS_CACHE)).getTargetCache();
+        CacheStats statsBefore = ((CaffeineCache) usersCache).getNativeCache().stats();
+
+        assertEquals(userDTO1id, usersService.findById(1L).get());
+        assertEquals(userDTO1id, usersService.findById(1L).get());
+        assertTrue(usersService.findById(99L).isEmpty());
+        assertTrue(usersService.findById(99L).isEmpty());
+
+        verify(usersRepository, times(1)).findProjectedById(1L);
+        verify(usersRepository, times(1)).findProjectedById(99L);
+
+        CacheStats stats = ((CaffeineCache) usersCache).getNativeCache().stats().minus(statsBefore);
+        assertEquals(2, stats.hitCount());
+        assertEquals(2, stats.missCount());
+    }
+
+    @Test
+    @DisplayName("Methods changing users evict them from the findById cache")
+    public void shouldEvictCachedUserOnChanges() {
+        when(usersRepository.updateNames(Mockito.eq(1L), Mockito.any(), Mockito.any(), Mockito.isNull())).thenReturn(1);
+
+        usersService.findById(1L);
+        usersService.patch(1L, new PatchUserDto("Fred", "Nowak"), null);
+        usersService.findById(1L);
+        usersService.update(1L, new CreateUserDto("Fred", "Flintstone"), null);
+        usersService.findById(1L);
+        usersService.deleteById(1L);
+        usersService.findById(1L);
+
+        verify(usersRepository, times(4)).findProjectedById(1L);
+    }
+
+    @Test
+    @DisplayName("Method save evicts a cached \"not found\" entry for the new user")
+    public void shouldEvictCachedMissingUserOnSave() {
+        User user5 = new User(5L, "Arnold", "Schwarzeneger");
+        when(usersRepository.save(Mockito.any(User.class))).thenReturn(user5);
+        when(usersRepository.findProjectedById(5L)).thenReturn(Optional.empty()).thenReturn(Optional.of(new UserDto(5L, "Arnold", "Schwarzeneger")));
+
+        assertTrue(usersService.findById(5L).isEmpty());
+        usersService.save(new User("Arnold", "Schwarzeneger"));
+        assertEquals(new UserDto(5L, "Arnold", "Schwarzeneger"), usersService.findById(5L).get());
+    }
+
+    @Test
+    @DisplayName("Eviction of a user waits for its in-flight load, so a stale user is never left in the cache")
+    public void shouldNotCacheStaleUserLoadedConcurrentlyWithPatch() throws Exception {
+        CountDownLatch loadStarted = new CountDownLatch(1);
+        CountDownLatch patchCommitted = new CountDownLatch(1);
+        UserDto patchedUser = new UserDto(1L, "Fred", "Nowak");
+        when(usersRepository.findProjectedById(1L)).thenAnswer(invocation -> {
+            loadStarted.countDown();
+            patchCommitted.await(5, TimeUnit.SECONDS);
+            return Optional.of(userDTO1id);
+        }).thenReturn(Optional.of(patchedUser));
+        when(usersRepository.updateNames(1L, "Fred", null, null)).thenAnswer(invocation -> {
+            patchCommitted.countDown();
+            return 1;
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Optional<UserDto>> staleRead = executor.submit(() -> usersService.findById(1L));
+            loadStarted.await(5, TimeUnit.SECONDS);
+            Future<Optional<UserDto>> patch = executor.submit(() -> usersService.patch(1L, new PatchUserDto("Fred", null), null));
+
+            assertEquals(userDTO1id, staleRead.get(5, TimeUnit.SECONDS).get());
+            patch.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(patchedUser, usersService.findById(1L).get());
+    }
+
+    @Test
+    @DisplayName("Last name lookups are cached regardless of the last name's case")
+    public void shouldCacheLookupsByLastName() {
+        assertEquals(List.of(userDTO1, userDTO2), usersService.findByLastName("Nowak"));
+        assertEquals(List.of(userDTO1, userDTO2), usersService.findByLastName("nOWAK"));
+        assertEquals(List.of("Jan", "Anna"), usersService.findFirstNamesByLastName("Nowak"));
+        assertEquals(List.of("Jan", "Anna"), usersService.findFirstNamesByLastName("NOWAK"));
+
+        verify(usersRepository, times(1)).findByLastNameIgnoreCase(Mockito.anyString());
+        verify(usersRepository, times(1)).findDistinctFirstNamesByLastNameIgnoreCase(Mockito.anyString());
+    }
+
+    @Test
+    @DisplayName("Fuzzy last name lookups return users with names sounding alike and a few letters away, closest first")
+    public void shouldFindUsersBySimilarLastNames() {
+        //given
+        when(usersRepository.findLastNameKeysSoundingLike("Kowalsky")).thenReturn(List.of("kowalski", "kohlhase", "kowalsky", "kowalczyk"));
+        when(usersRepository.findWithIdsByLastNameKeyIn(Set.of("kowalski", "kowalsky"))).thenReturn(List.of(
+                new UserDto(1L, "Jan", "Kowalski"), new UserDto(2L, "Anna", "Kowalsky"), new UserDto(3L, "Adam", "KOWALSKI")));
+
+        //when
+        //then
+        assertEquals(List.of(new UserDto("Anna", "Kowalsky"), new UserDto("Jan", "Kowalski"), new UserDto("Adam", "KOWALSKI")),
+                usersService.findByLastNameFuzzy("Kowalsky"));
+        assertEquals(List.of(), usersService.findByLastNameFuzzy("Smyth"));
+        verify(usersRepository, never()).findWithIdsByLastNameKeyIn(Set.of());
+    }
+
+    @Test
+    @DisplayName("Edit distances are exact up to the bound, and just over it beyond the bound")
+    public void shouldComputeBoundedEditDistances() {
+        assertEquals(0, UsersService.editDistance("nowak", "nowak", 2));
+        assertEquals(1, UsersService.editDistance("nowak", "novak", 2));
+        assertEquals(1, UsersService.editDistance("smyth", "smith", 1));
+        assertEquals(2, UsersService.editDistance("nowak", "nowacki", 2));
+        assertEquals(3, UsersService.editDistance("kowalsky", "kowalczyk", 2));
+        assertEquals(3, UsersService.editDistance("kowalsky", "kohlhase", 2));
+        assertEquals(2, UsersService.editDistance("kowalsky", "kohlhase", 1));
+        assertEquals(3, UsersService.editDistance("lee", "leighton", 2));
+        assertEquals(List.of(0, 1, 1, 2, 2), List.of("li", "lee", "smyth", "kowalsky", "pudzianowski").stream()
+                .map(UsersService::maxEditDistance).collect(Collectors.toList()));
+    }
+
+    @Test
+    @DisplayName("Renaming a user evicts cached lookups of both the old and the new last name only")
+    public void shouldEvictOldAndNewLastNameOnRename() {
+        when(usersRepository.updateNames(1L, null, "LEE", null)).thenReturn(1);
+        when(usersRepository.findLastNameForUpdateById(1L)).thenReturn(Optional.of("Nowak"));
+        when(usersRepository.findProjectedById(1L)).thenReturn(Optional.of(new UserDto(1L, "Jan", "LEE")));
+        usersService.findByLastName("Nowak");
+        usersService.findByLastName("Lee");
+        usersService.findByLastName("Norris");
+        usersService.findFirstNamesByLastName("Nowak");
+
+        usersService.patch(1L, new PatchUserDto(null, "LEE"), null);
+        usersService.findByLastName("Nowak");
+        usersService.findByLastName("Lee");
+        usersService.findByLastName("Norris");
+        usersService.findFirstNamesByLastName("Nowak");
+
+        verify(usersRepository, times(2)).findByLastNameIgnoreCase("Nowak");
+        verify(usersRepository, times(2)).findByLastNameIgnoreCase("Lee");
+        verify(usersRepository, times(1)).findByLastNameIgnoreCase("Norris");
+        verify(usersRepository, times(2)).findDistinctFirstNamesByLastNameIgnoreCase("Nowak");
+    }
+
+    @Test
+    @DisplayName("Updating a user evicts the old last name read from the database, without looking the user up in the cache")
+    public void shouldEvictOldLastNameOnUpdate() {
+        when(usersRepository.updateNames(3L, "Bruce", "Willis", null)).thenReturn(1);
+        when(usersRepository.findLastNameForUpdateById(3L)).thenReturn(Optional.of("Lee"));
+        usersService.findByLastName("Lee");
+        usersService.findByLastName("Norris");
+        CacheStats usersCacheStats = usersCacheStats();
+
+        usersService.update(3L, new CreateUserDto("Bruce", "Willis"), null);
+        usersService.findByLastName("Lee");
+        usersService.findByLastName("Norris");
+
+        assertEquals(usersCacheStats, usersCacheStats());
+        verify(usersRepository, times(2)).findByLastNameIgnoreCase("Lee");
+        verify(usersRepository, times(1)).findByLastNameIgnoreCase("Norris");
+    }
+
+    @Test
+    @DisplayName("Creating and deleting users evicts cached lookups of their last names only")
+    public void shouldEvictLastNameOnCreateAndDelete() {
+        when(usersRepository.save(Mockito.any(User.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(usersRepository.deleteByIdReturningCount(1L)).thenReturn(1);
+        when(usersRepository.findLastNameForUpdateById(1L)).thenReturn(Optional.of("Nowak"));
+        usersService.findByLastName("Lee");
+        usersService.findByLastName("Nowak");
+        usersService.findByLastName("Norris");
+
+        usersService.save(new User(5L, "Brandon", "Lee"));
+        usersService.deleteById(1L);
+        usersService.findByLastName("Lee");
+        usersService.findByLastName("Nowak");
+        usersService.findByLastName("Norris");
+
+        verify(usersRepository, times(2)).findByLastNameIgnoreCase("Lee");
+        verify(usersRepository, times(2)).findByLastNameIgnoreCase("Nowak");
+        verify(usersRepository, times(1)).findByLastNameIgnoreCase("Norris");
+    }
+
+    @Test
+    @DisplayName("Deleting a user evicts the last name read from the database, without looking the user up in the cache")
+    public void shouldEvictLastNameOfDeletedUserOnly() {
+        when(usersRepository.deleteByIdReturningCount(1L)).thenReturn(1);
+        when(usersRepository.findLastNameForUpdateById(1L)).thenReturn(Optional.of("NOWAK"));
+        usersService.findByLastName("Nowak");
+        usersService.findByLastName("Norris");
+        CacheStats usersCacheStats = usersCacheStats();
+
+        assertTrue(usersService.deleteById(1L));
+        assertFalse(usersService.deleteById(99L));
+        usersService.findByLastName("Nowak");
+        usersService.findByLastName("Norris");
+
+        assertEquals(usersCacheStats, usersCacheStats());
+        verify(usersRepository, never()).findProjectedById(1L);
+        verify(usersRepository, times(2)).findByLastNameIgnoreCase("Nowak");
+        verify(usersRepository, times(1)).findByLastNameIgnoreCase("Norris");
     }
 
     @Test
     @DisplayName("Method findByLastName works properly")
     public void shouldFindUsersByLastName() {
-        List<User> foundUsers = usersService.findByLastName("Nowak");
-        assertEquals(List.of(user1, user2), foundUsers);
+        List<UserDto> foundUsers = usersService.findByLastName("Nowak");
+        assertEquals(List.of(userDTO1, userDTO2), foundUsers);
+    }
+
+    @Test
+    @DisplayName("Method findFirstNamesByLastName works properly")
+    public void shouldFindFirstNamesByLastName() {
+        List<String> foundFirstNames = usersService.findFirstNamesByLastName("Nowak");
+        assertEquals(List.of("Jan", "Anna"), foundFirstNames);
     }
 
     @Test
     @DisplayName("Method save works properly")
     public void shouldSaveUser() {
         User user5 = new User(5L, "Arnold", "Schwarzeneger");
+        when(usersRepository.save(user5)).thenReturn(user5);
 
         usersService.save(user5);
         verify(usersRepository, times(1)).save(user5);
     }
 
+    @Test
+    @DisplayName("Method saveAll works properly")
+    public void shouldSaveAllUsers() {
+        List<User> newUsers = List.of(new User("Arnold", "Schwarzeneger"), new User("Sylvester", "Stallone"));
+        when(usersRepository.insertAll(newUsers)).thenReturn(List.of(5L, 6L));
+
+        List<User> savedUsers = usersService.saveAll(newUsers);
+        assertEquals(List.of(5L, 6L), savedUsers.stream().map(User::getId).collect(Collectors.toList()));
+        assertEquals(List.of("Arnold", "Sylvester"), savedUsers.stream().map(User::getFirstName).collect(Collectors.toList()));
+    }
+
     @Test
     @DisplayName("Method update works properly")
     public void shouldUpdateUser() {
@@ -86,12 +366,15 @@ class UsersServiceTest {
         createUserDto.setFirstName("Fred");
         createUserDto.setLastName("Flintstone");
 
-        when(usersRepository.save(Mockito.any(User.class))).thenReturn(user1);
+        when(usersRepository.updateNames(1L, "Fred", "Flintstone", null)).thenReturn(1);
+
+        Optional<UserDto> updatedUser = usersService.update(1L, createUserDto, null);
+        assertEquals(new UserDto(1L, "Fred", "Flintstone"), updatedUser.get());
+        assertTrue(usersService.update(99L, createUserDto, null).isEmpty());
 
-        Optional<User> updatedUser = usersService.update(1L, createUserDto);
-        assertTrue(updatedUser.isPresent());
-        assertEquals("Fred", updatedUser.get().getFirstName());
-        assertEquals("Flintstone", updatedUser.get().getLastName());
+        verify(usersRepository, never()).findById(Mockito.anyLong());
+        verify(usersRepository, never()).findProjectedById(Mockito.anyLong());
+        verify(usersRepository, never()).save(Mockito.any(User.class));
     }
 
     @Test
@@ -100,20 +383,89 @@ class UsersServiceTest {
         PatchUserDto patchUserDto = new PatchUserDto();
         patchUserDto.setFirstName("Fred");
 
-        when(usersRepository.save(Mockito.any(User.class))).thenReturn(user1);
+        when(usersRepository.updateNames(1L, "Fred", null, null)).thenReturn(1);
+        when(usersRepository.findProjectedById(1L)).thenReturn(Optional.of(new UserDto(1L, "Fred", user1.getLastName())));
 
-        Optional<User> patchedUser = usersService.patch(1L, patchUserDto);
+        Optional<UserDto> patchedUser = usersService.patch(1L, patchUserDto, null);
         assertTrue(patchedUser.isPresent());
         assertEquals("Fred", patchedUser.get().getFirstName());
         assertEquals(user1.getLastName(), patchedUser.get().getLastName());
+        assertTrue(usersService.patch(99L, patchUserDto, null).isEmpty());
+
+        verify(usersRepository, never()).findById(Mockito.anyLong());
+        verify(usersRepository, never()).save(Mockito.any(User.class));
+    }
+
+    @Test
+    @DisplayName("Methods update and patch change only the expected version of the user")
+    public void shouldUpdateOnlyExpectedVersion() {
+        when(usersRepository.updateNames(1L, "Fred", "Flintstone", 3L)).thenReturn(1);
+        when(usersRepository.existsById(1L)).thenReturn(true);
+
+        assertEquals(4L, usersService.update(1L, new CreateUserDto("Fred", "Flintstone"), 3L).get().getVersion());
+        assertThrows(OptimisticLockingFailureException.class, () -> usersService.update(1L, new CreateUserDto("Fred", "Flintstone"), 2L));
+        assertThrows(OptimisticLockingFailureException.class, () -> usersService.patch(1L, new PatchUserDto("Fred", null), 2L));
+        assertTrue(usersService.update(99L, new CreateUserDto("Fred", "Flintstone"), 2L).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Write generation is read from the database, and advanced by saves (other writes advance it in the repository)")
+    public void shouldAdvanceWriteGenerationOnWrites() {
+        when(usersRepository.save(Mockito.any(User.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(usersRepository.writeGeneration()).thenReturn(7L, 8L);
+
+        String initial = usersService.writeGeneration();
+        usersService.findById(1L);
+        usersService.findByLastName("Nowak");
+        verify(usersRepository, never()).advanceWriteGeneration();
+
+        usersService.save(new User(5L, "Brandon", "Lee"));
+        verify(usersRepository).advanceWriteGeneration();
+        assertEquals("7", initial);
+        assertEquals("8", usersService.writeGeneration());
+    }
+
+    @Test
+    @DisplayName("Successful writes keep the search index up to date")
+    public void shouldUpdateSearchIndexOnWrites() {
+        when(usersRepository.save(Mockito.any(User.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(usersRepository.insertAll(Mockito.anyList())).thenReturn(List.of(6L));
+        when(usersRepository.updateNames(1L, "Fred", "Flintstone", null)).thenReturn(1);
+        when(usersRepository.updateNames(2L, "Wilma", null, null)).thenReturn(1);
+        when(usersRepository.findProjectedById(2L)).thenReturn(Optional.of(new UserDto(2L, "Wilma", "Nowak")));
+        when(usersRepository.deleteByIdReturningCount(3L)).thenReturn(1);
+
+        usersService.save(new User(5L, "Brandon", "Lee"));
+        usersService.saveAll(List.of(new User("Arnold", "Schwarzenegger")));
+        usersService.update(1L, new CreateUserDto("Fred", "Flintstone"), null);
+        usersService.patch(2L, new PatchUserDto("Wilma", null), null);
+        usersService.deleteById(3L);
+        usersService.update(99L, new CreateUserDto("Fred", "Flintstone"), null);
+        usersService.deleteById(99L);
+
+        verify(searchIndex).put(5L, "Brandon", "Lee");
+        verify(searchIndex).put(6L, "Arnold", "Schwarzenegger");
+        verify(searchIndex).put(1L, "Fred", "Flintstone");
+        verify(searchIndex).put(2L, "Wilma", "Nowak");
+        verify(searchIndex).remove(3L);
+        verifyNoMoreInteractions(searchIndex);
     }
 
     @Test
     @DisplayName("Method delete works properly")
     public void shouldDeleteUser() {
+        when(usersRepository.deleteByIdReturningCount(1L)).thenReturn(1);
 
-        usersService.deleteById(1L);
+        assertTrue(usersService.deleteById(1L));
+        assertFalse(usersService.deleteById(99L));
+
+        verify(usersRepository, times(1)).deleteByIdReturningCount(1L);
+        verify(usersRepository, never()).findById(Mockito.anyLong());
+        verify(usersRepository, never()).deleteById(Mockito.anyLong());
+    }
 
-        verify(usersRepository, times(1)).deleteById(1L);
+    private CacheStats usersCacheStats() {
+        Cache usersCache = ((TransactionAwareCacheDecorator) cacheManager.getCache(USERS_CACHE)).getTargetCache();
+        return ((CaffeineCache) usersCache).getNativeCache().stats();
     }
 }